@@ -26,42 +26,164 @@ import opennlp.tools.util.Span;
 
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.opennlp.tools.NLPAnalysisCache;
 import org.apache.lucene.analysis.opennlp.tools.NLPChunkerOp;
+import org.apache.lucene.analysis.opennlp.tools.NLPLanguageModels;
+import org.apache.lucene.analysis.opennlp.tools.NLPLemmatizerOp;
+import org.apache.lucene.analysis.opennlp.tools.NLPModelRegistry;
+import org.apache.lucene.analysis.opennlp.tools.NLPNERPrefilter;
 import org.apache.lucene.analysis.opennlp.tools.NLPNERTaggerOp;
 import org.apache.lucene.analysis.opennlp.tools.NLPPOSTaggerOp;
+import org.apache.lucene.analysis.opennlp.tools.NLPTagVocabulary;
+import org.apache.lucene.analysis.opennlp.tokenattributes.LanguageAttribute;
+import org.apache.lucene.analysis.opennlp.tokenattributes.PartOfSpeechAttribute;
+import org.apache.lucene.analysis.opennlp.tokenattributes.TagIdAttribute;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.FlagsAttribute;
+import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
 import org.apache.lucene.util.AttributeSource;
+import org.apache.lucene.util.BytesRef;
 
 /**
  * Run OpenNLP sentence-processing tools
  * OpenNLP Tokenizer- removed sentence detection
  * Optional: POS tagger or phrase chunker. These tag all terms.
  * Optional: one or more Named Entity Resolution taggers. These tag only some terms.
+ * Model-based and gazetteer-based taggers are merged; later taggers win on overlaps.
+ * A tagger with a prefilter runs sentence by sentence and skips the sentences in which the
+ * prefilter finds no entity candidate.
  * 
  * Use file names as keys for cached models.
  * 
+ * The options below are set with a {@link Builder}.
+ * 
+ * Optional: also write the POS tags to {@link PartOfSpeechAttribute}. With a chunker, this gives
+ * both the chunk label (in TypeAttribute) and the POS tag of each token from a single tagging pass.
+ * 
+ * Optional: a lemmatizer. Terms are replaced by their lemma using the POS tags computed here,
+ * without a separate OpenNLPLemmatizerFilter stage. Keywords are left alone.
+ * 
+ * Optional: a tag vocabulary. The final tag of each token is also written as a small
+ * integer id in {@link TagIdAttribute}, and optionally as a one-byte payload or as flags.
+ * Optional: a set of tag ids to keep. Other tokens are dropped before they are copied
+ * out of the buffer; their position increments are carried over to the next kept token.
+ * 
+ * Optional: a cache of the tagged tokens of short inputs, keyed by the input terms, offsets
+ * and position increments, for query analysis. Cached tokens are kept as captured attribute
+ * states, which concurrent streams restore without tagging.
+ * 
+ * Optional: a registry of models by language, in place of fixed ops. The models are picked
+ * by the {@link LanguageAttribute} of the first token, else the default language.
+ * 
+ * Optional: a cache of the tags of sentences, keyed by their terms, for re-analysis of edited
+ * documents. The input is tagged one sentence at a time, ending at sentence break terms, and
+ * only sentences missing from the cache are tagged.
+ * 
  * Hacks:
  * hack #1: EN POS tagger sometimes tags last word as a period if no period at the end
  * hack #2: tokenizer needs to split words with punctuation and it doesn't
  */
 public final class OpenNLPFilter extends TokenFilter {
   
+  /** Where tag ids are written in addition to {@link TagIdAttribute}. */
+  public enum TagEncoding {
+    NONE, PAYLOAD, FLAGS
+  }
+  
+  /**
+   * Tagged tokens of an input, as immutable attribute states that concurrent streams can
+   * restore; never modified once cached.
+   */
+  public static final class CachedTokens {
+    final AttributeSource.State[] states;
+    // read by keepTags without restoring the state of dropped tokens
+    final int[] tagIds;
+    final int[] positionIncrements;
+    
+    CachedTokens(List<AttributeSource> attrs) {
+      int length = attrs.size();
+      states = new AttributeSource.State[length];
+      tagIds = new int[length];
+      positionIncrements = new int[length];
+      for (int i = 0; i < length; i++) {
+        AttributeSource source = attrs.get(i);
+        states[i] = source.captureState();
+        tagIds[i] = source.hasAttribute(TagIdAttribute.class) ? source.getAttribute(TagIdAttribute.class).getTagId() : 0;
+        positionIncrements[i] = source.getAttribute(PositionIncrementAttribute.class).getPositionIncrement();
+      }
+    }
+  }
+  
+  /** Tags of the tokens of a sentence; never modified once cached. */
+  public static final class SentenceTags {
+    final String[] types;
+    final String[] pos;
+    final String[] terms;
+    
+    SentenceTags(List<AttributeSource> attrs, boolean withPOS, boolean withTerms) {
+      int length = attrs.size();
+      types = new String[length];
+      pos = withPOS ? new String[length] : null;
+      terms = withTerms ? new String[length] : null;
+      for (int i = 0; i < length; i++) {
+        AttributeSource source = attrs.get(i);
+        types[i] = source.getAttribute(TypeAttribute.class).type();
+        if (pos != null) {
+          pos[i] = source.getAttribute(PartOfSpeechAttribute.class).getPartOfSpeech();
+        }
+        if (terms != null) {
+          terms[i] = source.getAttribute(CharTermAttribute.class).toString();
+        }
+      }
+    }
+    
+    void copyTo(List<AttributeSource> attrs) {
+      for (int i = 0; i < types.length; i++) {
+        AttributeSource source = attrs.get(i);
+        source.getAttribute(TypeAttribute.class).setType(types[i]);
+        if (pos != null) {
+          source.getAttribute(PartOfSpeechAttribute.class).setPartOfSpeech(pos[i]);
+        }
+        if (terms != null) {
+          source.getAttribute(CharTermAttribute.class).setEmpty().append(terms[i]);
+        }
+      }
+    }
+  }
+  
   // TODO: if there's an ICU for this, that's great
   private static String SENTENCE_BREAK = "[.?!]";
   
-  private final boolean doPOS;
-  private final boolean doChunking;
-  private final boolean doNER;
+  private boolean doPOS;
+  private boolean doChunking;
+  private boolean doNER;
+  private final boolean emitPOS;
   
   // cloned attrs of all tokens
   private List<AttributeSource> tokenAttrs = new ArrayList<>();
   boolean first = true;
   int tokenNum = 0;
+  int skippedPositions = 0;
 
-  private final NLPPOSTaggerOp posTaggerOp;
-  private final NLPChunkerOp chunkerOp;
-  private final List<NLPNERTaggerOp> nerTaggerOps;
+  private NLPPOSTaggerOp posTaggerOp;
+  private NLPChunkerOp chunkerOp;
+  private List<NLPNERTaggerOp> nerTaggerOps;
+  private final NLPModelRegistry<NLPLanguageModels> languageModels;
+  private NLPLanguageModels currentModels = null;
+  private final NLPLemmatizerOp lemmatizerOp;
+  private final NLPTagVocabulary tagVocabulary;
+  private final TagEncoding tagEncoding;
+  private final boolean[] keepTagIds;
+  private final NLPAnalysisCache<String,CachedTokens> analysisCache;
+  // tokens of the current input replayed from the analysis cache, else null
+  private CachedTokens replayed = null;
+  private final int maxCachedTokens;
+  private final NLPAnalysisCache<String,SentenceTags> sentenceCache;
+  private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
   private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
   private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
 
@@ -70,10 +192,139 @@ public final class OpenNLPFilter extends TokenFilter {
                        NLPPOSTaggerOp posTaggerOp,
                        NLPChunkerOp chunkerOp,
                        ArrayList<NLPNERTaggerOp> nerTaggerOps) throws IOException {
+    this(input, new Builder().posTagger(posTaggerOp).chunker(chunkerOp).nerTaggers(nerTaggerOps));
+  }
+
+  /** Options of an {@link OpenNLPFilter}; all are optional. A builder can create several filters. */
+  public static final class Builder {
+    private NLPPOSTaggerOp posTaggerOp = null;
+    private NLPChunkerOp chunkerOp = null;
+    private List<NLPNERTaggerOp> nerTaggerOps = null;
+    private NLPModelRegistry<NLPLanguageModels> languageModels = null;
+    private boolean emitPOS = false;
+    private NLPLemmatizerOp lemmatizerOp = null;
+    private NLPTagVocabulary tagVocabulary = null;
+    private TagEncoding tagEncoding = TagEncoding.NONE;
+    private boolean[] keepTagIds = null;
+    private NLPAnalysisCache<String,CachedTokens> analysisCache = null;
+    private int maxCachedTokens = 0;
+    private NLPAnalysisCache<String,SentenceTags> sentenceCache = null;
+
+    public Builder posTagger(NLPPOSTaggerOp posTaggerOp) {
+      this.posTaggerOp = posTaggerOp;
+      return this;
+    }
+
+    public Builder chunker(NLPChunkerOp chunkerOp) {
+      this.chunkerOp = chunkerOp;
+      return this;
+    }
+
+    /** Taggers merged in order: later taggers win where they found an entity. */
+    public Builder nerTaggers(List<NLPNERTaggerOp> nerTaggerOps) {
+      this.nerTaggerOps = nerTaggerOps;
+      return this;
+    }
+
+    /**
+     * Selects POS tagger, chunker and NER models by language, see {@link NLPModelRegistry}.
+     * Replaces the taggers, and excludes the lemmatizer, tag ids and analysis cache.
+     */
+    public Builder languageModels(NLPModelRegistry<NLPLanguageModels> languageModels) {
+      this.languageModels = languageModels;
+      return this;
+    }
+
+    /** Write POS tags to {@link PartOfSpeechAttribute}. Requires a POS tagger or language models. */
+    public Builder emitPOS(boolean emitPOS) {
+      this.emitPOS = emitPOS;
+      return this;
+    }
+
+    /** Replace terms by their lemma. Requires a POS tagger. */
+    public Builder lemmatizer(NLPLemmatizerOp lemmatizerOp) {
+      this.lemmatizerOp = lemmatizerOp;
+      return this;
+    }
+
+    /**
+     * @param tagVocabulary vocabulary of the last tagger in the chain, whose tags end up in the
+     *                      TypeAttribute. If null, no tag ids are written.
+     * @param tagEncoding where tag ids are written besides {@link TagIdAttribute}
+     */
+    public Builder tagIds(NLPTagVocabulary tagVocabulary, TagEncoding tagEncoding) {
+      this.tagVocabulary = tagVocabulary;
+      this.tagEncoding = tagEncoding;
+      return this;
+    }
+
+    /** Indexed by tag id, true for the tags to emit. If null, all tokens are emitted. Requires tag ids. */
+    public Builder keepTagIds(boolean[] keepTagIds) {
+      this.keepTagIds = keepTagIds;
+      return this;
+    }
+
+    /** Caches the tagged tokens of inputs of at most maxCachedTokens tokens. */
+    public Builder analysisCache(NLPAnalysisCache<String,CachedTokens> analysisCache, int maxCachedTokens) {
+      this.analysisCache = analysisCache;
+      this.maxCachedTokens = maxCachedTokens;
+      return this;
+    }
+
+    /** Tags the input sentence by sentence and caches the tags of each sentence. */
+    public Builder sentenceCache(NLPAnalysisCache<String,SentenceTags> sentenceCache) {
+      this.sentenceCache = sentenceCache;
+      return this;
+    }
+
+    public OpenNLPFilter build(TokenStream input) throws IOException {
+      return new OpenNLPFilter(input, this);
+    }
+  }
+
+  private OpenNLPFilter(TokenStream input, Builder builder) throws IOException {
     super(input);
-    this.posTaggerOp = posTaggerOp;
-    this.chunkerOp = chunkerOp;
-    this.nerTaggerOps = nerTaggerOps;
+    if (builder.languageModels != null && (builder.posTaggerOp != null || builder.chunkerOp != null
+        || builder.nerTaggerOps != null || builder.lemmatizerOp != null || builder.tagVocabulary != null
+        || builder.analysisCache != null)) {
+      throw new IllegalArgumentException("OpenNLPFilter: language models replace the taggers,"
+          + " and exclude the lemmatizer, tag ids and analysis cache");
+    }
+    if (builder.keepTagIds != null && builder.tagVocabulary == null) {
+      throw new IllegalArgumentException("OpenNLPFilter: keeping tokens by tag requires a tag vocabulary");
+    }
+    if (builder.emitPOS && builder.posTaggerOp == null && builder.languageModels == null) {
+      throw new IllegalArgumentException("OpenNLPFilter: emitting POS tags requires a POS tagger");
+    }
+    if (builder.lemmatizerOp != null && builder.posTaggerOp == null) {
+      throw new IllegalArgumentException("OpenNLPFilter: lemmatizing requires a POS tagger");
+    }
+    this.posTaggerOp = builder.posTaggerOp;
+    this.chunkerOp = builder.chunkerOp;
+    this.nerTaggerOps = builder.nerTaggerOps;
+    this.languageModels = builder.languageModels;
+    this.emitPOS = builder.emitPOS;
+    if (emitPOS) {
+      addAttribute(PartOfSpeechAttribute.class);
+    }
+    this.lemmatizerOp = builder.lemmatizerOp;
+    if (lemmatizerOp != null) {
+      addAttribute(KeywordAttribute.class);
+    }
+    this.tagVocabulary = builder.tagVocabulary;
+    this.tagEncoding = tagVocabulary == null ? TagEncoding.NONE : builder.tagEncoding;
+    this.keepTagIds = builder.keepTagIds;
+    this.analysisCache = builder.analysisCache;
+    this.maxCachedTokens = builder.maxCachedTokens;
+    this.sentenceCache = builder.sentenceCache;
+    if (tagVocabulary != null) {
+      addAttribute(TagIdAttribute.class);
+    }
+    if (this.tagEncoding == TagEncoding.PAYLOAD) {
+      addAttribute(PayloadAttribute.class);
+    } else if (this.tagEncoding == TagEncoding.FLAGS) {
+      addAttribute(FlagsAttribute.class);
+    }
     boolean havePOS = (posTaggerOp != null);
     doChunking = (chunkerOp != null);
     doPOS = doChunking ? false : havePOS;
@@ -88,15 +339,51 @@ public final class OpenNLPFilter extends TokenFilter {
       if (words.length == 0) {
         return false;
       }
-      createTags(words);
+      if (languageModels != null) {
+        selectLanguage();
+      }
+      String cacheKey = analysisCache != null && words.length <= maxCachedTokens ? cacheKey(words) : null;
+      replayed = cacheKey == null ? null : analysisCache.get(cacheKey);
+      if (replayed == null) {
+        if (sentenceCache != null) {
+          tagSentences(words);
+        } else {
+          createTags(words, tokenAttrs);
+        }
+        if (tagVocabulary != null) {
+          assignTagIds(words.length);
+        }
+        if (cacheKey != null) {
+          analysisCache.put(cacheKey, new CachedTokens(tokenAttrs));
+        }
+      }
       first = false;
       tokenNum = 0;
     }
-    if (tokenNum == tokenAttrs.size()) {
-      return false;
+    int tokenCount = replayed != null ? replayed.states.length : tokenAttrs.size();
+    while (tokenNum < tokenCount) {
+      int i = tokenNum++;
+      if (replayed != null) {
+        if (keepTagIds != null && !keepTagIds[replayed.tagIds[i]]) {
+          skippedPositions += replayed.positionIncrements[i];
+          continue;
+        }
+        restoreState(replayed.states[i]);
+      } else {
+        AttributeSource attrs = tokenAttrs.get(i);
+        if (keepTagIds != null && !keepTagIds[attrs.getAttribute(TagIdAttribute.class).getTagId()]) {
+          skippedPositions += attrs.getAttribute(PositionIncrementAttribute.class).getPositionIncrement();
+          continue;
+        }
+        attrs.copyTo(this);
+      }
+      if (skippedPositions != 0) {
+        posIncAtt.setPositionIncrement(posIncAtt.getPositionIncrement() + skippedPositions);
+        skippedPositions = 0;
+      }
+      return true;
     }
-    tokenAttrs.get(tokenNum++).copyTo(this);
-    return true;
+    return false;
   }
   
   private String[] walkTokens() throws IOException {
@@ -108,25 +395,163 @@ public final class OpenNLPFilter extends TokenFilter {
     return wordList.toArray(new String[wordList.size()]);
   }
   
-  private void createTags(String[] words) {
+  // switches ops if the language of this input differs from the previous one
+  private void selectLanguage() throws IOException {
+    AttributeSource attrs = tokenAttrs.get(0);
+    String language = attrs.hasAttribute(LanguageAttribute.class)
+        ? attrs.getAttribute(LanguageAttribute.class).getLanguage() : null;
+    NLPLanguageModels models = languageModels.get(languageModels.resolve(language));
+    if (models != currentModels) {
+      posTaggerOp = models.createPOSTagger();
+      chunkerOp = models.createChunker();
+      nerTaggerOps = models.createNERTaggers();
+      doChunking = (chunkerOp != null);
+      doPOS = doChunking ? false : posTaggerOp != null;
+      doNER = ! nerTaggerOps.isEmpty();
+      currentModels = models;
+    }
+  }
+  
+  private String cacheKey(String[] words) {
+    StringBuilder key = new StringBuilder();
+    for (int i = 0; i < words.length; i++) {
+      AttributeSource attrs = tokenAttrs.get(i);
+      OffsetAttribute offsets = attrs.getAttribute(OffsetAttribute.class);
+      key.append(words[i]).append('\u0000')
+          .append(offsets.startOffset()).append(',').append(offsets.endOffset()).append(',')
+          .append(attrs.getAttribute(PositionIncrementAttribute.class).getPositionIncrement()).append('\u0000');
+    }
+    return key.toString();
+  }
+  
+  // tags each sentence, ending at a sentence break term, or reuses its cached tags
+  private void tagSentences(String[] words) {
+    List<String[]> missing = new ArrayList<>();
+    List<Integer> missingStarts = new ArrayList<>();
+    List<String> missingKeys = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i < words.length; i++) {
+      if (i == words.length - 1 || (words[i].length() == 1 && words[i].matches(SENTENCE_BREAK))) {
+        List<AttributeSource> attrs = tokenAttrs.subList(start, i + 1);
+        String[] sentence = Arrays.copyOfRange(words, start, i + 1);
+        String key = sentenceKey(sentence, attrs);
+        SentenceTags cached = sentenceCache.get(key);
+        if (cached != null) {
+          cached.copyTo(attrs);
+        } else {
+          missing.add(sentence);
+          missingStarts.add(start);
+          missingKeys.add(key);
+        }
+        start = i + 1;
+      }
+    }
+    if (missing.isEmpty()) {
+      return;
+    }
+    // POS tag the missing sentences together, so that a batch tagger gets them all at once
+    String[][] pos = null;
+    if (doPOS || doChunking) {
+      String[][] appended = new String[missing.size()][];
+      for (int j = 0; j < appended.length; j++) {
+        appended[j] = appendDot(missing.get(j));
+      }
+      pos = posTaggerOp.getPOSTags(appended);
+    }
+    for (int j = 0; j < missing.size(); j++) {
+      String[] sentence = missing.get(j);
+      int from = missingStarts.get(j);
+      List<AttributeSource> attrs = tokenAttrs.subList(from, from + sentence.length);
+      createTags(sentence, attrs, pos == null ? null : pos[j]);
+      sentenceCache.put(missingKeys.get(j), new SentenceTags(attrs, emitPOS, lemmatizerOp != null));
+    }
+  }
+  
+  // terms, and keyword flags when they decide what is lemmatized; offsets are left out, they move with edits
+  private String sentenceKey(String[] sentence, List<AttributeSource> attrs) {
+    StringBuilder key = new StringBuilder();
+    if (currentModels != null) {
+      key.append(currentModels.getLanguage()).append('\u0000');
+    }
+    for (int i = 0; i < sentence.length; i++) {
+      key.append(sentence[i]).append('\u0000');
+      if (lemmatizerOp != null && attrs.get(i).getAttribute(KeywordAttribute.class).isKeyword()) {
+        key.append('\u0001');
+      }
+    }
+    return key.toString();
+  }
+  
+  private void createTags(String[] words, List<AttributeSource> attrs) {
+    createTags(words, attrs, null);
+  }
+  
+  /** @param pos POS tags of the words with {@link #appendDot}, or null to tag them here */
+  private void createTags(String[] words, List<AttributeSource> attrs, String[] pos) {
     String[] appended = appendDot(words);
     if (doPOS) {
-      String[] tags = assignPOS(appended);
-      assignTokenTypes(tags, words.length);
+      pos = pos != null ? pos : assignPOS(appended);
+      assignTokenTypes(pos, attrs);
     }
     else if (doChunking) {
-      String[] pos = assignPOS(appended);
+      pos = pos != null ? pos : assignPOS(appended);
       String[] tags = createChunks(words, pos);
-      assignTokenTypes(tags, words.length);
+      assignTokenTypes(tags, attrs);
     }  
+    if (emitPOS && pos != null) {
+      assignPartsOfSpeech(pos, attrs);
+    }
+    if (lemmatizerOp != null) {
+      lemmatize(words, pos, attrs);
+    }
     if (doNER) {
+      // merge the taggers' entities: later taggers win where they found one
+      String[] nerTags = null;
+      List<Integer> sentenceStarts = null;
+      List<NLPNERPrefilter.Signals> signals = null;
       for(NLPNERTaggerOp op: nerTaggerOps) {
-        String[] tags = createAllNER(op, appended);
-        assignTokenTypes(tags, words.length);
+        NLPNERPrefilter prefilter = op.getPrefilter();
+        if (prefilter == null) {
+          nerTags = createAllNER(op, appended, 0, nerTags, appended.length);
+          continue;
+        }
+        // prefiltered taggers run on each sentence with a candidate, scanned once for all of them
+        if (sentenceStarts == null) {
+          sentenceStarts = sentenceStarts(appended);
+          signals = new ArrayList<>(sentenceStarts.size() - 1);
+          for (int j = 0; j < sentenceStarts.size() - 1; j++) {
+            signals.add(NLPNERPrefilter.scan(
+                Arrays.copyOfRange(appended, sentenceStarts.get(j), sentenceStarts.get(j + 1))));
+          }
+        }
+        for (int j = 0; j < signals.size(); j++) {
+          if (prefilter.accept(signals.get(j))) {
+            nerTags = createAllNER(op, signals.get(j).getWords(), sentenceStarts.get(j), nerTags, appended.length);
+          }
+        }
+      }
+      if (nerTags == null && ! nerTaggerOps.isEmpty()) {
+        nerTags = new String[appended.length];
+      }
+      if (nerTags != null) {
+        assignTokenTypes(nerTags, attrs);
       }
     }
   }
   
+  // start of each sentence, ending at a sentence break term, then the length of the words
+  private static List<Integer> sentenceStarts(String[] words) {
+    List<Integer> starts = new ArrayList<>();
+    starts.add(0);
+    for (int i = 0; i < words.length - 1; i++) {
+      if (words[i].length() == 1 && words[i].matches(SENTENCE_BREAK)) {
+        starts.add(i + 1);
+      }
+    }
+    starts.add(words.length);
+    return starts;
+  }
+  
   // Hack #1: taggers expect a sentence break as the final term.
   // This does not make it into the attribute set lists.
   private String[] appendDot(String[] words) {
@@ -143,9 +568,40 @@ public final class OpenNLPFilter extends TokenFilter {
     return words;
   }
 
-  private void assignTokenTypes(String[] tags, int length) {
+  private void assignTokenTypes(String[] tags, List<AttributeSource> attrs) {
+    for (int i = 0 ; i < attrs.size() ; ++i) {
+      attrs.get(i).getAttribute(TypeAttribute.class).setType(tags[i]);
+    }
+  }
+
+  // lemmatize straight from the word and POS arrays, in place of a downstream OpenNLPLemmatizerFilter
+  private void lemmatize(String[] words, String[] pos, List<AttributeSource> attrs) {
+    for (int i = 0 ; i < words.length ; ++i) {
+      AttributeSource source = attrs.get(i);
+      if ( ! source.getAttribute(KeywordAttribute.class).isKeyword()) {
+        String lemma = lemmatizerOp.lemmatize(words[i], pos[i]);
+        source.getAttribute(CharTermAttribute.class).setEmpty().append(lemma);
+      }
+    }
+  }
+
+  private void assignPartsOfSpeech(String[] tags, List<AttributeSource> attrs) {
+    for (int i = 0 ; i < attrs.size() ; ++i) {
+      attrs.get(i).getAttribute(PartOfSpeechAttribute.class).setPartOfSpeech(tags[i]);
+    }
+  }
+
+  private void assignTagIds(int length) {
     for (int i = 0 ; i < length ; ++i) {
-      tokenAttrs.get(i).getAttribute(TypeAttribute.class).setType(tags[i]);
+      AttributeSource attrs = tokenAttrs.get(i);
+      int tagId = tagVocabulary.getId(attrs.getAttribute(TypeAttribute.class).type());
+      attrs.getAttribute(TagIdAttribute.class).setTagId(tagId);
+      if (tagEncoding == TagEncoding.PAYLOAD) {
+        BytesRef payload = tagId == NLPTagVocabulary.NO_TAG ? null : new BytesRef(new byte[] { (byte) tagId });
+        attrs.getAttribute(PayloadAttribute.class).setPayload(payload);
+      } else if (tagEncoding == TagEncoding.FLAGS) {
+        attrs.getAttribute(FlagsAttribute.class).setFlags(tagId);
+      }
     }
   }
 
@@ -157,27 +613,37 @@ public final class OpenNLPFilter extends TokenFilter {
     return chunkerOp.getChunks(words, pos, null);
   }
   
-  private String[] createAllNER(NLPNERTaggerOp nerTagger, String[] words) {
+  /**
+   * @param offset position of the first word in the tags
+   * @param length number of tags, used when nerTags is null
+   */
+  private String[] createAllNER(NLPNERTaggerOp nerTagger, String[] words, int offset, String[] nerTags, int length) {
     Span[] nerSpans = nerTagger.getNames(words);
-    String[] nerTags = new String[words.length];
-    if (nerSpans.length == 0) {
-      return nerTags;
+    if (nerTags == null) {
+      nerTags = new String[length];
     }
-    String tag = nerSpans[0].getType();
     for(int i = 0; i < nerSpans.length; i++) {
       Span tagged = nerSpans[i];
       for(int j = tagged.getStart(); j < tagged.getEnd(); j++) {
-        nerTags[j] = tag;
+        nerTags[offset + j] = tagged.getType();
       }
     }
     return nerTags;
   }
   
+  @Override
+  public void end() throws IOException {
+    super.end();
+    posIncAtt.setPositionIncrement(posIncAtt.getPositionIncrement() + skippedPositions);
+  }
+  
   @Override
   public void reset() throws IOException {
     super.reset();
     tokenNum = 0;
+    skippedPositions = 0;
     first = true;
+    replayed = null;
     tokenAttrs.clear();
   }
 }
@@ -17,14 +17,31 @@
 
 package org.apache.lucene.analysis.opennlp;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.opennlp.tools.NLPAnalysisCache;
+import org.apache.lucene.analysis.opennlp.tools.NLPBatchPOSTagger;
 import org.apache.lucene.analysis.opennlp.tools.NLPChunkerOp;
+import org.apache.lucene.analysis.opennlp.tools.NLPLanguageModels;
+import org.apache.lucene.analysis.opennlp.tools.NLPLemmatizerOp;
+import org.apache.lucene.analysis.opennlp.tools.NLPModelQuantizer;
+import org.apache.lucene.analysis.opennlp.tools.NLPModelRegistry;
+import org.apache.lucene.analysis.opennlp.tools.NLPModelStats;
+import org.apache.lucene.analysis.opennlp.tools.NLPNERPrefilter;
 import org.apache.lucene.analysis.opennlp.tools.NLPNERTaggerOp;
 import org.apache.lucene.analysis.opennlp.tools.NLPPOSTaggerOp;
+import org.apache.lucene.analysis.opennlp.tools.NLPSharedFeatureGenerator;
+import org.apache.lucene.analysis.opennlp.tools.NLPTagVocabulary;
 import org.apache.lucene.analysis.opennlp.tools.OpenNLPOpsFactory;
 import org.apache.lucene.analysis.util.ResourceLoader;
 import org.apache.lucene.analysis.util.ResourceLoaderAware;
@@ -37,77 +54,506 @@ import org.apache.lucene.analysis.util.TokenFilterFactory;
  *   &lt;analyzer&gt;
  *   &lt;tokenizer class="solr.OpenNLPFilterFactory"
  *     &lt;posTaggerModel="filename"/&gt;
+ *     &lt;posTaggerBeamSize="n"/&gt;
+ *     &lt;batchTaggerThreads="n"/&gt;
+ *     &lt;batchTaggerWindowMicros="n"/&gt;
+ *     &lt;batchTaggerMaxBatch="n"/&gt;
  *     &lt;chunkerModel="filename"/&gt;
+ *     &lt;chunkerBeamSize="n"/&gt;
  *     &lt;nerTaggerModels="filename,filename,...,filename"/&gt;
+ *     &lt;nerPrefilters="prefilter,prefilter,...,prefilter"/&gt;
+ *     &lt;quantization="none|float|int16|int8"/&gt;
+ *     &lt;shareNERFeatures="true"/&gt;
+ *     &lt;gazetteers="filename,filename,...,filename"/&gt;
+ *     &lt;gazetteerIgnoreCase="true"/&gt;
+ *     &lt;emitPOS="true"/&gt;
+ *     &lt;lemmaDictionary="filename"/&gt;
+ *     &lt;tagEncoding="payload|flags"/&gt;
+ *     &lt;keepTags="tag,tag,...,tag"/&gt; or &lt;dropTags="tag,tag,...,tag"/&gt;
+ *     &lt;warmupIterations="n"/&gt;
+ *     &lt;warmupText="text"/&gt;
+ *     &lt;analysisCacheSize="n"/&gt;
+ *     &lt;analysisCacheMaxLength="n"/&gt;
+ *     &lt;sentenceCacheSize="n"/&gt;
+ *     &lt;languageModels="filename"/&gt;
+ *     &lt;defaultLanguage="xx"/&gt;
+ *     &lt;languageIdleSeconds="n"/&gt;
  *   /&gt;
  *   &lt;/analyzer&gt;
  * &lt;/fieldType&gt;</pre>
  * <p>posTaggerModel/chunkerModel/nerTaggerModels are optional.</p>
  * <p>0 or more NER tagger models are accepted. They are run in sequence.</p>
+ * <p>nerPrefilters gives one prefilter per NER model, or a single one for all of them. A model
+ * is not run on a sentence in which its prefilter finds no candidate. A prefilter is "none" or a
+ * '+'-joined list of capitalized, digit and triggers:filename, see
+ * {@link org.apache.lucene.analysis.opennlp.tools.NLPNERPrefilter}. Counts of skipped sentences are
+ * available from {@link #getNERPrefilters()}.</p>
+ * <p>quantization stores the parameters of the POS, chunker and NER models as floats, or as
+ * 16/8-bit fixed point values with one scale per outcome, to cut their heap usage at some cost
+ * in accuracy and speed, see {@link NLPModelQuantizer}. Quantized models are cached apart from
+ * unquantized ones. Only maxent and perceptron models can be quantized.</p>
+ * <p>shareNERFeatures=true computes the token-level context features once per text and reuses
+ * them for every NER model. Only enable it when all nerTaggerModels were trained with the same
+ * feature generator definition (for example, all with the default one).</p>
+ * <p>0 or more gazetteers are accepted. Each is compiled once into a shared automaton
+ * ({@link org.apache.lucene.analysis.opennlp.tools.NLPGazetteer}) and run after the NER models,
+ * with the same span/type output. Entities of all NER taggers are merged, later taggers winning
+ * on overlaps. Gazetteer lines are phrase[tab]type.</p>
+ * <p>posTaggerBeamSize/chunkerBeamSize override the beam size of the model, trading accuracy
+ * for throughput. 1 selects greedy decoding. Only maxent/perceptron models support this.</p>
+ * <p>batchTaggerThreads &gt; 0 sends POS tagging to a node-wide
+ * {@link org.apache.lucene.analysis.opennlp.tools.NLPBatchPOSTagger} with that many worker threads,
+ * shared by all filters with the same model and settings. Workers tag the queued texts together;
+ * while several analyses are tagging at once, they collect more for up to batchTaggerWindowMicros
+ * (default 200) or batchTaggerMaxBatch texts (default 64). With sentenceCacheSize, all the sentences
+ * of a text are submitted together. Meant for bulk indexing with many concurrent analyses. The
+ * threads stop once every factory using them is closed, see {@link #close()}, and otherwise after
+ * a minute without work, so the factories of a closed or reloaded Solr core, which nothing
+ * closes, leave none running.</p>
+ * <p>emitPOS=true also writes the POS tag of each token to
+ * {@link org.apache.lucene.analysis.opennlp.tokenattributes.PartOfSpeechAttribute}, which
+ * {@link OpenNLPLemmatizerFilter} prefers over the type. With a chunker, this gives chunk labels
+ * and POS tags from one tagging pass. Requires posTaggerModel.</p>
+ * <p>lemmaDictionary lemmatizes terms with the POS tags computed by this filter, in place of a
+ * separate {@link OpenNLPLemmatizerFilterFactory} stage. The dictionary has the same format.
+ * Requires posTaggerModel. A compiled dictionary, see {@link OpenNLPLemmatizerFilterFactory},
+ * is memory-mapped under the same conditions: a local file, absolute or relative to the conf directory.</p>
+ * <p>When any tagger is configured, the tag of each token is also written as an integer id
+ * in {@link org.apache.lucene.analysis.opennlp.tokenattributes.TagIdAttribute}. Ids come from the
+ * tag vocabulary of the last tagger run (NER, else chunker, else POS), see {@link #getTagVocabulary()}.
+ * tagEncoding=payload additionally writes the id as a one-byte payload (at most 255 tags),
+ * tagEncoding=flags writes it into the FlagsAttribute.</p>
+ * <p>keepTags/dropTags filter tokens on the same final tag, in place of a downstream TypeTokenFilter.
+ * At most one of them may be given, and a tagger must be configured. With keepTags, untagged tokens
+ * are dropped; with dropTags, they are kept.</p>
+ * <p>warmupIterations &gt; 0 runs warmupText (default: a short English sample), split on
+ * whitespace, through this filter that many times once the models are loaded, so the first
+ * requests do not run interpreted tagging code. The warm-up bypasses the analysis and sentence caches.</p>
+ * <p>analysisCacheSize &gt; 0 caches the tagged tokens of up to that many inputs (least recently
+ * used first out), for inputs of at most analysisCacheMaxLength tokens (default 256). Inputs are
+ * matched on their terms, offsets and position increments, and a hit replays the cached tokens
+ * without running any tagger. Meant for query analyzers; the cache belongs to this factory, so to
+ * one field type. Hit counts are available from {@link #getAnalysisCache()}.</p>
+ * <p>sentenceCacheSize &gt; 0 tags the input one sentence at a time, a sentence ending at a
+ * ".", "?" or "!" term, and caches the tags of up to that many sentences, keyed by their terms.
+ * Meant for indexing documents that are updated with small edits: only the changed sentences of
+ * a re-sent document are tagged again. Tags may differ at sentence edges from those of the whole
+ * input tagged at once. Hit counts are available from {@link #getSentenceCache()}.</p>
+ * <p>languageModels gives per-language POS tagger, chunker and NER models in a properties file
+ * (see {@link NLPLanguageModels}), selected by the language that
+ * {@link OpenNLPTokenizerFactory} writes with its own languageModels parameter, else by
+ * defaultLanguage. Models are loaded on first use and dropped after languageIdleSeconds
+ * (default 3600, 0 to keep them) without use, and all of them by {@link #close()} or once the
+ * factory is no longer referenced. It replaces the model parameters and can only be
+ * combined with emitPOS, sentenceCacheSize and warmup.</p>
  */
-public class OpenNLPFilterFactory extends TokenFilterFactory implements ResourceLoaderAware {
+public class OpenNLPFilterFactory extends TokenFilterFactory implements ResourceLoaderAware, Closeable {
   public static final String POS_TAGGER_MODEL = "posTaggerModel";
+  public static final String POS_TAGGER_BEAM_SIZE = "posTaggerBeamSize";
+  public static final String BATCH_TAGGER_THREADS = "batchTaggerThreads";
+  public static final String BATCH_TAGGER_WINDOW_MICROS = "batchTaggerWindowMicros";
+  public static final String BATCH_TAGGER_MAX_BATCH = "batchTaggerMaxBatch";
   public static final String CHUNKER_MODEL = "chunkerModel";
+  public static final String CHUNKER_BEAM_SIZE = "chunkerBeamSize";
   public static final String NER_TAGGER_MODELS = "nerTaggerModels";
+  public static final String NER_PREFILTERS = "nerPrefilters";
+  public static final String QUANTIZATION = "quantization";
+  public static final String SHARE_NER_FEATURES = "shareNERFeatures";
+  public static final String GAZETTEERS = "gazetteers";
+  public static final String GAZETTEER_IGNORE_CASE = "gazetteerIgnoreCase";
+  public static final String EMIT_POS = "emitPOS";
+  public static final String LEMMA_DICTIONARY = "lemmaDictionary";
+  public static final String TAG_ENCODING = "tagEncoding";
+  public static final String KEEP_TAGS = "keepTags";
+  public static final String DROP_TAGS = "dropTags";
+  public static final String WARMUP_TEXT = "warmupText";
+  public static final String WARMUP_ITERATIONS = "warmupIterations";
+  public static final String ANALYSIS_CACHE_SIZE = "analysisCacheSize";
+  public static final String ANALYSIS_CACHE_MAX_LENGTH = "analysisCacheMaxLength";
+  public static final String SENTENCE_CACHE_SIZE = "sentenceCacheSize";
+  public static final String LANGUAGE_MODELS = "languageModels";
+  public static final String DEFAULT_LANGUAGE = "defaultLanguage";
+  public static final String LANGUAGE_IDLE_SECONDS = "languageIdleSeconds";
 
   private final String posTaggerModelFile;
+  private final int posTaggerBeamSize;
+  private final int batchTaggerThreads;
+  private final int batchTaggerWindowMicros;
+  private final int batchTaggerMaxBatch;
+  private volatile NLPBatchPOSTagger batchTagger = null;
   private final String chunkerModelFile;
+  private final int chunkerBeamSize;
   private final String[] nerTaggerModelFiles;
+  private final NLPModelQuantizer.Quantization quantization;
+  // cache names of the models, which depend on the quantization
+  private final String posTaggerModelName;
+  private final String chunkerModelName;
+  private final String[] nerTaggerModelNames;
+  private final NLPNERPrefilter[] nerPrefilters;
+  private final boolean shareNERFeatures;
+  private final String[] gazetteerFiles;
+  private final boolean gazetteerIgnoreCase;
+  private final boolean emitPOS;
+  private final String lemmaDictionaryFile;
+  private final OpenNLPFilter.TagEncoding tagEncoding;
+  private final Set<String> keepTags;
+  private final Set<String> dropTags;
+  private NLPTagVocabulary tagVocabulary = null;
+  private boolean[] keepTagIds = null;
+  private final String warmupText;
+  private final int warmupIterations;
+  private final NLPAnalysisCache<String,OpenNLPFilter.CachedTokens> analysisCache;
+  private final int analysisCacheMaxLength;
+  private final NLPAnalysisCache<String,OpenNLPFilter.SentenceTags> sentenceCache;
+  private final String languageModelsFile;
+  private final String defaultLanguage;
+  private final int languageIdleSeconds;
+  private NLPModelRegistry<NLPLanguageModels> languageModels = null;
   
   public OpenNLPFilterFactory(Map<String,String> args) {
     super(args);
     posTaggerModelFile = get(args, POS_TAGGER_MODEL);
+    posTaggerBeamSize = getInt(args, POS_TAGGER_BEAM_SIZE, 0);
+    batchTaggerThreads = getInt(args, BATCH_TAGGER_THREADS, 0);
+    batchTaggerWindowMicros = getInt(args, BATCH_TAGGER_WINDOW_MICROS, 200);
+    batchTaggerMaxBatch = getInt(args, BATCH_TAGGER_MAX_BATCH, 64);
+    if (batchTaggerThreads < 0 || batchTaggerWindowMicros < 0 || batchTaggerMaxBatch < 1) {
+      throw new IllegalArgumentException("Configuration Error: " + BATCH_TAGGER_THREADS + " and "
+          + BATCH_TAGGER_WINDOW_MICROS + " must not be negative, " + BATCH_TAGGER_MAX_BATCH + " must be positive.");
+    }
+    if (batchTaggerThreads > 0 && posTaggerModelFile == null) {
+      throw new IllegalArgumentException("Configuration Error: " + BATCH_TAGGER_THREADS + " requires " + POS_TAGGER_MODEL + ".");
+    }
     chunkerModelFile = get(args, CHUNKER_MODEL);
+    chunkerBeamSize = getInt(args, CHUNKER_BEAM_SIZE, 0);
+    if (posTaggerBeamSize < 0 || chunkerBeamSize < 0) {
+      throw new IllegalArgumentException("Configuration Error: beam sizes must be positive");
+    }
     String fileList = get(args, NER_TAGGER_MODELS);
     nerTaggerModelFiles = fileList == null ? new String[0] : fileList.split(",");
+    nerPrefilters = createNERPrefilters(get(args, NER_PREFILTERS));
+    String quantizationName = get(args, QUANTIZATION, "none");
+    try {
+      quantization = NLPModelQuantizer.Quantization.parse(quantizationName);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Configuration Error: " + QUANTIZATION
+          + " must be one of none, float, int16, int8; got " + quantizationName);
+    }
+    posTaggerModelName = posTaggerModelFile == null ? null : OpenNLPOpsFactory.modelName(posTaggerModelFile, quantization);
+    chunkerModelName = chunkerModelFile == null ? null : OpenNLPOpsFactory.modelName(chunkerModelFile, quantization);
+    nerTaggerModelNames = new String[nerTaggerModelFiles.length];
+    for (int i = 0; i < nerTaggerModelFiles.length; i++) {
+      nerTaggerModelNames[i] = OpenNLPOpsFactory.modelName(nerTaggerModelFiles[i], quantization);
+    }
+    shareNERFeatures = getBoolean(args, SHARE_NER_FEATURES, false);
+    fileList = get(args, GAZETTEERS);
+    gazetteerFiles = fileList == null ? new String[0] : fileList.split(",");
+    gazetteerIgnoreCase = getBoolean(args, GAZETTEER_IGNORE_CASE, false);
+    emitPOS = getBoolean(args, EMIT_POS, false);
+    languageModelsFile = get(args, LANGUAGE_MODELS);
+    defaultLanguage = get(args, DEFAULT_LANGUAGE);
+    languageIdleSeconds = getInt(args, LANGUAGE_IDLE_SECONDS, 3600);
+    if (emitPOS && posTaggerModelFile == null && languageModelsFile == null) {
+      throw new IllegalArgumentException("Configuration Error: " + EMIT_POS + " requires " + POS_TAGGER_MODEL + ".");
+    }
+    lemmaDictionaryFile = get(args, LEMMA_DICTIONARY);
+    if (lemmaDictionaryFile != null && posTaggerModelFile == null) {
+      throw new IllegalArgumentException("Configuration Error: " + LEMMA_DICTIONARY + " requires " + POS_TAGGER_MODEL + ".");
+    }
+    String encoding = get(args, TAG_ENCODING);
+    try {
+      tagEncoding = encoding == null ? OpenNLPFilter.TagEncoding.NONE
+          : OpenNLPFilter.TagEncoding.valueOf(encoding.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Configuration Error: " + TAG_ENCODING
+          + " must be one of payload, flags; got " + encoding);
+    }
+    keepTags = getSet(args, KEEP_TAGS);
+    dropTags = getSet(args, DROP_TAGS);
+    if (keepTags != null && dropTags != null) {
+      throw new IllegalArgumentException("Configuration Error: only one of " + KEEP_TAGS + " and " + DROP_TAGS + " may be specified.");
+    }
+    if ((keepTags != null || dropTags != null)
+        && posTaggerModelFile == null && chunkerModelFile == null
+        && nerTaggerModelFiles.length == 0 && gazetteerFiles.length == 0) {
+      throw new IllegalArgumentException("Configuration Error: " + KEEP_TAGS + "/" + DROP_TAGS + " require a tagger model.");
+    }
+    warmupText = get(args, WARMUP_TEXT, OpenNLPWarmup.DEFAULT_TEXT);
+    warmupIterations = getInt(args, WARMUP_ITERATIONS, 0);
+    if (warmupIterations < 0) {
+      throw new IllegalArgumentException("Configuration Error: " + WARMUP_ITERATIONS + " must not be negative.");
+    }
+    int analysisCacheSize = getInt(args, ANALYSIS_CACHE_SIZE, 0);
+    analysisCacheMaxLength = getInt(args, ANALYSIS_CACHE_MAX_LENGTH, 256);
+    if (analysisCacheSize < 0 || analysisCacheMaxLength < 0) {
+      throw new IllegalArgumentException("Configuration Error: " + ANALYSIS_CACHE_SIZE + " and "
+          + ANALYSIS_CACHE_MAX_LENGTH + " must not be negative.");
+    }
+    analysisCache = analysisCacheSize == 0 ? null : new NLPAnalysisCache<>(analysisCacheSize);
+    int sentenceCacheSize = getInt(args, SENTENCE_CACHE_SIZE, 0);
+    if (sentenceCacheSize < 0) {
+      throw new IllegalArgumentException("Configuration Error: " + SENTENCE_CACHE_SIZE + " must not be negative.");
+    }
+    sentenceCache = sentenceCacheSize == 0 ? null : new NLPAnalysisCache<>(sentenceCacheSize);
+    if (languageModelsFile != null && (posTaggerModelFile != null || chunkerModelFile != null
+        || nerTaggerModelFiles.length > 0 || gazetteerFiles.length > 0 || lemmaDictionaryFile != null
+        || tagEncoding != OpenNLPFilter.TagEncoding.NONE || keepTags != null || dropTags != null
+        || analysisCache != null || quantization != NLPModelQuantizer.Quantization.NONE)) {
+      throw new IllegalArgumentException("Configuration Error: " + LANGUAGE_MODELS
+          + " can only be combined with " + EMIT_POS + ", " + SENTENCE_CACHE_SIZE + " and warmup parameters.");
+    }
+    if (languageModelsFile == null && defaultLanguage != null) {
+      throw new IllegalArgumentException("Configuration Error: " + DEFAULT_LANGUAGE + " requires " + LANGUAGE_MODELS + ".");
+    }
+    if (languageIdleSeconds < 0) {
+      throw new IllegalArgumentException("Configuration Error: " + LANGUAGE_IDLE_SECONDS + " must not be negative.");
+    }
     if (!args.isEmpty()) {
       throw new IllegalArgumentException("Unknown parameters: " + args);
     }
   }
   
+  private NLPNERPrefilter[] createNERPrefilters(String specifications) {
+    NLPNERPrefilter[] prefilters = new NLPNERPrefilter[nerTaggerModelFiles.length];
+    if (specifications == null) {
+      return prefilters;
+    }
+    String[] specs = specifications.split(",");
+    if (specs.length != 1 && specs.length != nerTaggerModelFiles.length) {
+      throw new IllegalArgumentException("Configuration Error: " + NER_PREFILTERS
+          + " must have one entry, or one per NER tagger model.");
+    }
+    for (int i = 0; i < prefilters.length; i++) {
+      String spec = specs[specs.length == 1 ? 0 : i].trim();
+      if (spec.equals(NLPNERPrefilter.NONE)) {
+        continue;
+      }
+      // a single spec is shared, so are its counters
+      prefilters[i] = (specs.length == 1 && i > 0) ? prefilters[0] : new NLPNERPrefilter(spec);
+    }
+    return prefilters;
+  }
+  
   @Override
   public OpenNLPFilter create(TokenStream in) {
+    return create(in, true);
+  }
+  
+  /** @param cached false for filters that must not read or fill the analysis and sentence caches */
+  private OpenNLPFilter create(TokenStream in, boolean cached) {
     try {
+      OpenNLPFilter.Builder builder = new OpenNLPFilter.Builder().emitPOS(emitPOS);
+      if (cached) {
+        builder.sentenceCache(sentenceCache);
+      }
+      if (languageModels != null) {
+        return builder.languageModels(languageModels).build(in);
+      }
       NLPPOSTaggerOp posTaggerOp = null;
       NLPChunkerOp chunkerOp = null;
       ArrayList<NLPNERTaggerOp> nerTaggerOps = null;
+      NLPLemmatizerOp lemmatizerOp = null;
       
       if (posTaggerModelFile != null) {
-        posTaggerOp = OpenNLPOpsFactory.getPOSTagger(posTaggerModelFile);
+        NLPBatchPOSTagger batchTagger = this.batchTagger;
+        posTaggerOp = batchTagger != null
+            ? OpenNLPOpsFactory.getPOSTagger(posTaggerModelName, batchTagger)
+            : OpenNLPOpsFactory.getPOSTagger(posTaggerModelName, posTaggerBeamSize);
       }
       if (chunkerModelFile != null) {
-        chunkerOp = OpenNLPOpsFactory.getChunker(chunkerModelFile);
+        chunkerOp = OpenNLPOpsFactory.getChunker(chunkerModelName, chunkerBeamSize);
       }
       if (nerTaggerModelFiles != null) {
         nerTaggerOps = new ArrayList<NLPNERTaggerOp>();
-        for (String file: nerTaggerModelFiles) {
-          NLPNERTaggerOp op = OpenNLPOpsFactory.getNERTagger(file);
+        NLPSharedFeatureGenerator sharedFeatures = null;
+        if (shareNERFeatures && nerTaggerModelFiles.length > 1) {
+          sharedFeatures = OpenNLPOpsFactory.getSharedFeatureGenerator(nerTaggerModelNames[0]);
+        }
+        for (int i = 0; i < nerTaggerModelFiles.length; i++) {
+          NLPNERTaggerOp op = OpenNLPOpsFactory.getNERTagger(nerTaggerModelNames[i], nerPrefilters[i], sharedFeatures);
           nerTaggerOps.add(op);
         }
+        for (String file: gazetteerFiles) {
+          nerTaggerOps.add(OpenNLPOpsFactory.getGazetteerTagger(file, gazetteerIgnoreCase));
+        }
       }
-      return new OpenNLPFilter(in, posTaggerOp, chunkerOp, nerTaggerOps);
+      if (lemmaDictionaryFile != null) {
+        lemmatizerOp = OpenNLPOpsFactory.getLemmatizer(lemmaDictionaryFile);
+      }
+      return builder.posTagger(posTaggerOp).chunker(chunkerOp).nerTaggers(nerTaggerOps).lemmatizer(lemmatizerOp)
+          .tagIds(tagVocabulary, tagEncoding).keepTagIds(keepTagIds)
+          .analysisCache(cached ? analysisCache : null, analysisCacheMaxLength).build(in);
     } catch (IOException e) {
       throw new IllegalArgumentException(e);
     }
   }
   
+  /** 
+   * Vocabulary of the tags written to TypeAttribute by the last tagger in this chain 
+   * (the union of all NER taggers, if any), or null if no tagger is configured.
+   * Available once {@link #inform} has loaded the models.
+   */
+  public NLPTagVocabulary getTagVocabulary() {
+    return tagVocabulary;
+  }
+  
+  /** NER prefilters with their skip counters, one per NER tagger model, null where none is configured. */
+  public NLPNERPrefilter[] getNERPrefilters() {
+    return nerPrefilters;
+  }
+  
+  /**
+   * Keys of the cached models and dictionaries used by this factory, see {@link NLPModelStats#key},
+   * including those of the languages currently loaded.
+   */
+  public List<String> getModelKeys() {
+    List<String> keys = new ArrayList<>();
+    if (posTaggerModelFile != null) {
+      keys.add(NLPModelStats.key(NLPModelStats.POS, posTaggerModelName));
+    }
+    if (chunkerModelFile != null) {
+      keys.add(NLPModelStats.key(NLPModelStats.CHUNKER, chunkerModelName));
+    }
+    for (String name: nerTaggerModelNames) {
+      keys.add(NLPModelStats.key(NLPModelStats.NER, name));
+    }
+    for (String file: gazetteerFiles) {
+      keys.add(NLPModelStats.key(NLPModelStats.GAZETTEER, OpenNLPOpsFactory.gazetteerKey(file, gazetteerIgnoreCase)));
+    }
+    if (lemmaDictionaryFile != null) {
+      keys.add(NLPModelStats.key(NLPModelStats.LEMMAS, lemmaDictionaryFile));
+    }
+    if (languageModels != null) {
+      for (NLPLanguageModels models: languageModels.getLoadedModels()) {
+        keys.addAll(models.getModelKeys());
+      }
+    }
+    return keys;
+  }
+  
+  /** Batch POS tagger with its batch counts, or null if not configured or closed. */
+  public NLPBatchPOSTagger getBatchTagger() {
+    return batchTagger;
+  }
+  
+  /** Per-language models with their load and eviction counts, or null if not configured. */
+  public NLPModelRegistry<NLPLanguageModels> getLanguageModels() {
+    return languageModels;
+  }
+  
+  /** Cache of tagged tokens with its hit counts, or null if not configured. */
+  public NLPAnalysisCache<String,OpenNLPFilter.CachedTokens> getAnalysisCache() {
+    return analysisCache;
+  }
+  
+  /** Cache of sentence tags with its hit counts, or null if not configured. */
+  public NLPAnalysisCache<String,OpenNLPFilter.SentenceTags> getSentenceCache() {
+    return sentenceCache;
+  }
+  
+  private NLPTagVocabulary createTagVocabulary() {
+    if (nerTaggerModelFiles.length > 0 || gazetteerFiles.length > 0) {
+      List<NLPTagVocabulary> vocabularies = new ArrayList<>();
+      for (String name: nerTaggerModelNames) {
+        vocabularies.add(OpenNLPOpsFactory.getNERTagVocabulary(name));
+      }
+      for (String file: gazetteerFiles) {
+        vocabularies.add(OpenNLPOpsFactory.getGazetteerTagVocabulary(file, gazetteerIgnoreCase));
+      }
+      return NLPTagVocabulary.union(vocabularies);
+    }
+    if (chunkerModelFile != null) {
+      return OpenNLPOpsFactory.getChunkerTagVocabulary(chunkerModelName);
+    }
+    if (posTaggerModelFile != null) {
+      return OpenNLPOpsFactory.getPOSTagVocabulary(posTaggerModelName);
+    }
+    return null;
+  }
+  
+  private boolean[] createKeepTagIds(NLPTagVocabulary vocabulary) {
+    boolean keep = keepTags != null;
+    Set<String> tags = keep ? keepTags : dropTags;
+    boolean[] keepIds = new boolean[vocabulary.size() + 1];
+    for (int id = 0; id < keepIds.length; id++) {
+      keepIds[id] = tags.contains(vocabulary.getTag(id)) == keep;
+    }
+    return keepIds;
+  }
+  
   @Override
   public void inform(ResourceLoader loader) {
     try {
+      if (languageModelsFile != null) {
+        Map<String,Map<String,String>> config;
+        try (InputStream in = loader.openResource(languageModelsFile)) {
+          config = NLPLanguageModels.readConfig(in);
+        }
+        languageModels = new NLPModelRegistry<>(config.keySet(), defaultLanguage,
+            language -> NLPLanguageModels.loadTaggerModels(language, config.get(language), loader),
+            languageIdleSeconds * 1000L);
+      }
       // load and register read-only models in cache with file/resource names
       if (posTaggerModelFile != null) {
-        OpenNLPOpsFactory.getPOSTaggerModel(posTaggerModelFile, loader.openResource(posTaggerModelFile));
+        OpenNLPOpsFactory.getPOSTaggerModel(posTaggerModelName, loader.openResource(posTaggerModelFile), quantization);
+      }
+      if (batchTaggerThreads > 0 && batchTagger == null) {
+        batchTagger = OpenNLPOpsFactory.acquireBatchPOSTagger(posTaggerModelName, posTaggerBeamSize,
+            batchTaggerThreads, batchTaggerWindowMicros, batchTaggerMaxBatch);
       }
       if (chunkerModelFile != null) {
-        OpenNLPOpsFactory.getChunkerModel(chunkerModelFile, loader.openResource(chunkerModelFile));
+        OpenNLPOpsFactory.getChunkerModel(chunkerModelName, loader.openResource(chunkerModelFile), quantization);
       }
       if (nerTaggerModelFiles != null) {
-        for (String file: nerTaggerModelFiles) {
-          OpenNLPOpsFactory.getNERTaggerModel(file, loader.openResource(file));
+        for (int i = 0; i < nerTaggerModelFiles.length; i++) {
+          OpenNLPOpsFactory.getNERTaggerModel(nerTaggerModelNames[i], loader.openResource(nerTaggerModelFiles[i]), quantization);
         }
       }
+      for (int i = 0; i < nerPrefilters.length; i++) {
+        NLPNERPrefilter prefilter = nerPrefilters[i];
+        boolean shared = i > 0 && prefilter == nerPrefilters[i - 1];
+        if (prefilter != null && prefilter.getTriggersFile() != null && !shared) {
+          prefilter.loadTriggers(loader.openResource(prefilter.getTriggersFile()));
+        }
+      }
+      for (String file: gazetteerFiles) {
+        OpenNLPOpsFactory.getGazetteer(file, gazetteerIgnoreCase, loader.openResource(file));
+      }
+      if (lemmaDictionaryFile != null) {
+        OpenNLPOpsFactory.loadLemmatizerDictionary(lemmaDictionaryFile,
+            OpenNLPLocalFiles.localFile(lemmaDictionaryFile, loader), loader);
+      }
+      tagVocabulary = createTagVocabulary();
+      if (tagEncoding == OpenNLPFilter.TagEncoding.PAYLOAD && tagVocabulary != null && tagVocabulary.size() > 255) {
+        throw new IllegalArgumentException("Configuration Error: " + TAG_ENCODING + "=payload supports at most 255 tags, model has "
+            + tagVocabulary.size());
+      }
+      if (keepTags != null || dropTags != null) {
+        keepTagIds = createKeepTagIds(tagVocabulary);
+      }
+      if (warmupIterations > 0) {
+        // a cached sample would be tagged once and replayed, and would skew the hit counts
+        Tokenizer source = new WhitespaceTokenizer();
+        OpenNLPWarmup.run(source, create(source, false), warmupText, warmupIterations);
+      }
     } catch (IOException e) {
       throw new IllegalArgumentException(e);
     }
   }
+  
+  /**
+   * Releases the batch POS tagger, whose threads stop once no factory uses it, and drops the
+   * per-language models. Filters created afterwards tag on their own.
+   */
+  @Override
+  public synchronized void close() {
+    if (languageModels != null) {
+      languageModels.close();
+    }
+    if (batchTagger != null) {
+      batchTagger = null;
+      OpenNLPOpsFactory.releaseBatchPOSTagger(posTaggerModelName, posTaggerBeamSize,
+          batchTaggerThreads, batchTaggerWindowMicros, batchTaggerMaxBatch);
+    }
+  }
 }
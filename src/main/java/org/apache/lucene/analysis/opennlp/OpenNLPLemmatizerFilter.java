@@ -22,26 +22,34 @@ import java.io.IOException;
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.opennlp.tools.NLPLemmatizerOp;
+import org.apache.lucene.analysis.opennlp.tokenattributes.PartOfSpeechAttribute;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
 import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
 
+/**
+ * Lemmatize terms by their part-of-speech tag. The tag is taken from {@link PartOfSpeechAttribute}
+ * when an upstream filter set it, otherwise from the {@link TypeAttribute}.
+ */
 public class OpenNLPLemmatizerFilter extends TokenFilter {
   private final NLPLemmatizerOp lemmatizerOp;
   private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
   private final TypeAttribute typeAtt = addAttribute(TypeAttribute.class);
   private final KeywordAttribute keywordAttr = addAttribute(KeywordAttribute.class);
+  private final PartOfSpeechAttribute posAtt;
 
   public OpenNLPLemmatizerFilter(TokenStream input, NLPLemmatizerOp lemmatizerOp) throws IOException {
     super(input);
     this.lemmatizerOp = lemmatizerOp;
+    posAtt = hasAttribute(PartOfSpeechAttribute.class) ? getAttribute(PartOfSpeechAttribute.class) : null;
   }
 
   @Override
   public final boolean incrementToken() throws IOException {
     if (input.incrementToken()) {
       if ( ! keywordAttr.isKeyword()) {
-        String lemma = lemmatizerOp.lemmatize(termAtt.toString(), typeAtt.type());
+        String posTag = posAtt == null ? null : posAtt.getPartOfSpeech();
+        String lemma = lemmatizerOp.lemmatize(termAtt.toString(), posTag == null ? typeAtt.type() : posTag);
         termAtt.setEmpty().append(lemma);
       }
       return true;
@@ -18,10 +18,15 @@
 package org.apache.lucene.analysis.opennlp;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
 import org.apache.lucene.analysis.opennlp.tools.NLPLemmatizerOp;
+import org.apache.lucene.analysis.opennlp.tools.NLPModelStats;
 import org.apache.lucene.analysis.opennlp.tools.OpenNLPOpsFactory;
 import org.apache.lucene.analysis.util.ResourceLoader;
 import org.apache.lucene.analysis.util.ResourceLoaderAware;
@@ -37,20 +42,40 @@ import org.apache.lucene.analysis.util.TokenFilterFactory;
  *                tokenizerModel="filename"/&gt;
  *     /&gt;
  *     &lt;filter class="solr.OpenNLPLemmatizerFilterFactory"
- *             dictionary="filename"/&gt;
+ *             dictionary="filename"
+ *             warmupIterations="n"
+ *             warmupText="text"/&gt;
  *   &lt;/analyzer&gt;
  * &lt;/fieldType&gt;</pre>
  * <p>Dictionary-based lemmatizer</p>
  * <p>dictionary file must be one entry per line, in the form word[tab]lemma[tab]part-of-speech</p>
+ * <p>The dictionary may also be compiled with
+ * {@link org.apache.lucene.analysis.opennlp.tools.NLPCompiledLemmaDictionary}, which is detected
+ * from its header. A compiled dictionary is memory-mapped when it is a local file, given
+ * as an absolute path or, in Solr, as a path relative to the core's conf directory: it then
+ * takes no heap, loads instantly and is shared by all processes through the page cache. From
+ * the classpath or ZooKeeper, it is read into off-heap memory instead. A text dictionary is
+ * loaded once into a lemmatizer shared by all filters.</p>
+ * <p>warmupIterations &gt; 0 runs warmupText (default: a short English sample), split on
+ * whitespace, through this filter that many times once the dictionary is loaded.</p>
  */
 public class OpenNLPLemmatizerFilterFactory extends TokenFilterFactory implements ResourceLoaderAware {
   public static final String DICTIONARY = "dictionary";
+  public static final String WARMUP_TEXT = "warmupText";
+  public static final String WARMUP_ITERATIONS = "warmupIterations";
 
   private final String dictionaryFile;
+  private final String warmupText;
+  private final int warmupIterations;
 
   public OpenNLPLemmatizerFilterFactory(Map<String,String> args) {
     super(args);
     dictionaryFile = require(args, DICTIONARY);
+    warmupText = get(args, WARMUP_TEXT, OpenNLPWarmup.DEFAULT_TEXT);
+    warmupIterations = getInt(args, WARMUP_ITERATIONS, 0);
+    if (warmupIterations < 0) {
+      throw new IllegalArgumentException("Configuration Error: " + WARMUP_ITERATIONS + " must not be negative.");
+    }
     if (!args.isEmpty()) {
       throw new IllegalArgumentException("Unknown parameters: " + args);
     }
@@ -66,11 +91,20 @@ public class OpenNLPLemmatizerFilterFactory extends TokenFilterFactory implement
     }
   }
 
+  /** Keys of the cached dictionary used by this factory, see {@link NLPModelStats#key}. */
+  public List<String> getModelKeys() {
+    return Collections.singletonList(NLPModelStats.key(NLPModelStats.LEMMAS, dictionaryFile));
+  }
+
   @Override
   public void inform(ResourceLoader loader) throws IOException {
     // register models in cache with file/resource names
     if (dictionaryFile != null) {
-      OpenNLPOpsFactory.getLemmatizerDictionary(dictionaryFile, loader.openResource(dictionaryFile));
+      OpenNLPOpsFactory.loadLemmatizerDictionary(dictionaryFile, OpenNLPLocalFiles.localFile(dictionaryFile, loader), loader);
+    }
+    if (warmupIterations > 0) {
+      Tokenizer source = new WhitespaceTokenizer();
+      OpenNLPWarmup.run(source, create(source), warmupText, warmupIterations);
     }
   }
 }
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.lucene.analysis.opennlp;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.lucene.analysis.util.ResourceLoader;
+import org.apache.solr.cloud.ZkSolrResourceLoader;
+import org.apache.solr.core.SolrResourceLoader;
+
+/**
+ * Maps the resources named by the factories to local files, so that the ops layer can
+ * memory-map them without knowing about Solr resource loaders.
+ */
+final class OpenNLPLocalFiles {
+
+  private OpenNLPLocalFiles() {}
+
+  /**
+   * The local file that a resource names: an absolute path, or a path relative to the conf
+   * directory of a Solr core, where its loader looks first. Null when there is no such file,
+   * as for resources on the classpath or in ZooKeeper.
+   */
+  static Path localFile(String resource, ResourceLoader loader) {
+    Path path = Paths.get(resource);
+    if (!path.isAbsolute()) {
+      if (!(loader instanceof SolrResourceLoader) || loader instanceof ZkSolrResourceLoader) {
+        return null;
+      }
+      path = Paths.get(((SolrResourceLoader) loader).getConfigDir()).resolve(path);
+    }
+    return Files.isRegularFile(path) ? path : null;
+  }
+}
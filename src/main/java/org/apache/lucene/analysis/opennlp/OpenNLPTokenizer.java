@@ -23,10 +23,16 @@ import java.util.Arrays;
 import opennlp.tools.util.Span;
 
 import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.opennlp.tools.NLPAdmissionController;
+import org.apache.lucene.analysis.opennlp.tokenattributes.LanguageAttribute;
+import org.apache.lucene.analysis.opennlp.tools.NLPAnalysisCache;
+import org.apache.lucene.analysis.opennlp.tools.NLPLanguageModels;
+import org.apache.lucene.analysis.opennlp.tools.NLPModelRegistry;
 import org.apache.lucene.analysis.opennlp.tools.NLPSentenceDetectorOp;
 import org.apache.lucene.analysis.opennlp.tools.NLPTokenizerOp;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.AttributeFactory;
 
 /**
@@ -38,6 +44,23 @@ import org.apache.lucene.util.AttributeFactory;
  * being re-used. The setReader() method notifies the Tokenizer it is being
  * re-used, but this method cannot be overridden, so this class has to indirectly
  * notice this.
+ * 
+ * Options are set with a {@link Builder}.
+ * 
+ * Optional: an admission controller bounding the number of concurrent analyses and
+ * buffered characters. The analysis is admitted before reading the text, charged for its
+ * characters as they are read, and released at end(), close() or reset(), so downstream
+ * buffering filters are covered too.
+ * 
+ * Optional: a cache of the sentence and word spans of short texts, for query analysis.
+ * 
+ * Optional: a registry of models by language, in place of fixed ops. A text may start with
+ * a "[lang=xx]" marker, which selects the models and is blanked out; other texts use the
+ * default language. The language of the models is written to {@link LanguageAttribute}.
+ * 
+ * Optional: a cache of the word spans of sentences, keyed by their text, for re-analysis of
+ * edited documents. Sentences are still detected over the whole text, but only sentences
+ * missing from the cache are split into words.
  */
 public final class OpenNLPTokenizer extends Tokenizer {  
   private static int DEFAULT_BUFFER_SIZE = 2048;
@@ -56,14 +79,104 @@ public final class OpenNLPTokenizer extends Tokenizer {
   private NLPSentenceDetectorOp sentenceOp = null;
   private NLPTokenizerOp tokenizerOp = null; 
   
+  private final NLPAdmissionController admissionController;
+  private boolean admitted = false;
+  private int admittedChars = 0;
+  
+  private final NLPAnalysisCache<String,CachedSpans> analysisCache;
+  private final int maxCachedLength;
+  private final NLPAnalysisCache<String,Span[]> sentenceCache;
+  
+  /** Start of the marker giving the language of a text, as in "[lang=en]". */
+  public static final String LANGUAGE_MARKER = "[lang=";
+  private static final int MAX_LANGUAGE_LENGTH = 16;
+  
+  private final NLPModelRegistry<NLPLanguageModels> languageModels;
+  private final LanguageAttribute languageAtt;
+  private NLPLanguageModels currentModels = null;
+  private String language = null;
+  
+  /** Sentence and word spans of a text; never modified once cached. */
+  public static final class CachedSpans {
+    final Span[] sentences;
+    final Span[][] words;
+    
+    CachedSpans(Span[] sentences, Span[][] words) {
+      this.sentences = sentences;
+      this.words = words;
+    }
+  }
+  
   public OpenNLPTokenizer(AttributeFactory factory, NLPSentenceDetectorOp sentenceOp, NLPTokenizerOp tokenizerOp) throws IOException {
+    this(factory, new Builder().sentenceDetector(sentenceOp).tokenizer(tokenizerOp));
+  }
+  
+  /** Options of an {@link OpenNLPTokenizer}. A builder can create several tokenizers. */
+  public static final class Builder {
+    private NLPSentenceDetectorOp sentenceOp = null;
+    private NLPTokenizerOp tokenizerOp = null;
+    private NLPModelRegistry<NLPLanguageModels> languageModels = null;
+    private NLPAdmissionController admissionController = null;
+    private NLPAnalysisCache<String,CachedSpans> analysisCache = null;
+    private int maxCachedLength = 0;
+    private NLPAnalysisCache<String,Span[]> sentenceCache = null;
+    
+    public Builder sentenceDetector(NLPSentenceDetectorOp sentenceOp) {
+      this.sentenceOp = sentenceOp;
+      return this;
+    }
+    
+    public Builder tokenizer(NLPTokenizerOp tokenizerOp) {
+      this.tokenizerOp = tokenizerOp;
+      return this;
+    }
+    
+    /** Selects sentence and tokenizer models by language, see {@link NLPModelRegistry}; replaces the ops. */
+    public Builder languageModels(NLPModelRegistry<NLPLanguageModels> languageModels) {
+      this.languageModels = languageModels;
+      return this;
+    }
+    
+    public Builder admissionController(NLPAdmissionController admissionController) {
+      this.admissionController = admissionController;
+      return this;
+    }
+    
+    /** Caches the spans of texts of at most maxCachedLength chars. */
+    public Builder analysisCache(NLPAnalysisCache<String,CachedSpans> analysisCache, int maxCachedLength) {
+      this.analysisCache = analysisCache;
+      this.maxCachedLength = maxCachedLength;
+      return this;
+    }
+    
+    /** Caches the word spans of each sentence, keyed by its language and text. */
+    public Builder sentenceCache(NLPAnalysisCache<String,Span[]> sentenceCache) {
+      this.sentenceCache = sentenceCache;
+      return this;
+    }
+    
+    public OpenNLPTokenizer build(AttributeFactory factory) throws IOException {
+      return new OpenNLPTokenizer(factory, this);
+    }
+  }
+  
+  private OpenNLPTokenizer(AttributeFactory factory, Builder builder) throws IOException {
     super(factory);
-    termAtt.resizeBuffer(DEFAULT_BUFFER_SIZE);
-    if (sentenceOp == null && tokenizerOp == null) {
+    if (builder.languageModels != null && (builder.sentenceOp != null || builder.tokenizerOp != null)) {
+      throw new IllegalArgumentException("OpenNLPTokenizer: language models replace the Sentence Detector and Tokenizer");
+    }
+    if (builder.languageModels == null && builder.sentenceOp == null && builder.tokenizerOp == null) {
       throw new IllegalArgumentException("OpenNLPTokenizer: need one or both of Sentence Detector and Tokenizer");
     }
-    this.sentenceOp = sentenceOp;
-    this.tokenizerOp = tokenizerOp;
+    this.admissionController = builder.admissionController;
+    this.analysisCache = builder.analysisCache;
+    this.maxCachedLength = builder.maxCachedLength;
+    this.sentenceCache = builder.sentenceCache;
+    this.languageModels = builder.languageModels;
+    this.languageAtt = languageModels == null ? null : addAttribute(LanguageAttribute.class);
+    termAtt.resizeBuffer(DEFAULT_BUFFER_SIZE);
+    this.sentenceOp = builder.sentenceOp;
+    this.tokenizerOp = builder.tokenizerOp;
     restartAtBeginning();
   }
   
@@ -107,6 +220,9 @@ public final class OpenNLPTokenizer extends Tokenizer {
       for(int i = 0; i < termLength; i++) {
         buffer[i] = fullText[spot + i];
       }
+      if (languageAtt != null) {
+        languageAtt.setLanguage(language);
+      }
       
       indexWord++;
       return true;
@@ -124,44 +240,117 @@ public final class OpenNLPTokenizer extends Tokenizer {
   }
   
   void loadAll() throws IOException {
+    if (admissionController != null && !admitted) {
+      admissionController.acquireAnalysis();
+      admitted = true;
+    }
     fillBuffer();
+    String cacheKey = null;
+    if (analysisCache != null && fullText.length <= maxCachedLength) {
+      // before the language marker is blanked: the key includes the language
+      cacheKey = new String(fullText);
+    }
+    if (languageModels != null) {
+      selectLanguage();
+    }
+    if (cacheKey != null) {
+      CachedSpans cached = analysisCache.get(cacheKey);
+      if (cached != null) {
+        sentences = cached.sentences;
+        words = cached.words;
+        return;
+      }
+    }
     detectSentences();
     words = new Span[sentences.length][];
     for(int i = 0; i < sentences.length; i++) {
       splitWords(i);
     }
+    if (cacheKey != null) {
+      analysisCache.put(cacheKey, new CachedSpans(sentences, words));
+    }
+  }
+  
+  // reads and blanks the language marker, and switches ops if the language changed
+  private void selectLanguage() throws IOException {
+    String marked = null;
+    int markerEnd = -1;
+    int markerLength = LANGUAGE_MARKER.length();
+    if (fullText.length > markerLength && new String(fullText, 0, markerLength).equals(LANGUAGE_MARKER)) {
+      for (int i = markerLength; i < fullText.length && i <= markerLength + MAX_LANGUAGE_LENGTH; i++) {
+        if (fullText[i] == ']') {
+          markerEnd = i + 1;
+          break;
+        }
+      }
+    }
+    if (markerEnd > 0) {
+      marked = new String(fullText, markerLength, markerEnd - 1 - markerLength).trim();
+      // keep the offsets of the text: blank the marker out rather than remove it
+      Arrays.fill(fullText, 0, markerEnd, ' ');
+    }
+    language = languageModels.resolve(marked);
+    NLPLanguageModels models = languageModels.get(language);
+    if (models != currentModels) {
+      sentenceOp = models.createSentenceDetector();
+      tokenizerOp = models.createTokenizer();
+      currentModels = models;
+    }
   }
   
   void splitWords(int i) {
     Span current = sentences[i];
-    String sentence = String.copyValueOf(fullText, current.getStart(), current.getEnd() - current.getStart());
-    words[i] = tokenizerOp.getTerms(sentence); 
+    if (sentenceCache == null) {
+      words[i] = tokenizerOp.getTerms(fullText, current.getStart(), current.getEnd());
+      return;
+    }
+    // spans are relative to the sentence start, so they hold wherever the sentence moved to
+    String text = new String(fullText, current.getStart(), current.getEnd() - current.getStart());
+    String key = language == null ? text : language + '\u0000' + text;
+    Span[] cached = sentenceCache.get(key);
+    if (cached == null) {
+      cached = tokenizerOp.getTerms(fullText, current.getStart(), current.getEnd());
+      sentenceCache.put(key, cached);
+    }
+    words[i] = cached;
   }
   
   // read all text, turn into sentences
   void detectSentences() throws IOException {
-    fullText.hashCode();
-    sentences = sentenceOp.splitSentences(new String(fullText));
+    sentences = sentenceOp.splitSentences(fullText);
+  }
+  
+  void releaseAdmission() {
+    if (admitted) {
+      admissionController.releaseChars(admittedChars);
+      admissionController.releaseAnalysis();
+      admittedChars = 0;
+      admitted = false;
+    }
   }
   
+  // grow geometrically: copying in fixed steps is quadratic in the text length
   void fillBuffer() throws IOException {
     int offset = 0;
     fullText = new char[DEFAULT_BUFFER_SIZE];
-    int length = input.read(fullText);
-    while(length == DEFAULT_BUFFER_SIZE) {
-      offset += DEFAULT_BUFFER_SIZE;
-      fullText = Arrays.copyOf(fullText, offset + DEFAULT_BUFFER_SIZE);
-      length = input.read(fullText, offset, DEFAULT_BUFFER_SIZE);
-    }
-    if (length == -1) {
-      length = 0;
+    int length;
+    while ((length = input.read(fullText, offset, fullText.length - offset)) != -1) {
+      if (admissionController != null) {
+        // charged as read, so the budget bounds the text in flight and not only complete documents
+        admittedChars = admissionController.acquireChars(admittedChars, length);
+      }
+      offset += length;
+      if (offset == fullText.length) {
+        fullText = ArrayUtil.grow(fullText, offset + 1);
+      }
     }
-    fullText = Arrays.copyOf(fullText, offset + length);
+    fullText = Arrays.copyOf(fullText, offset);
   }
   
   @Override
   public void close() throws IOException {
     super.close();
+    releaseAdmission();
     fullText = null;
     sentences = null;
     words = null;
@@ -171,6 +360,7 @@ public final class OpenNLPTokenizer extends Tokenizer {
   @Override
   public final void end() throws IOException {
     super.end();
+    releaseAdmission();
     // set final offset
     offsetAtt.setOffset(finalOffset, finalOffset);
   }
@@ -178,6 +368,7 @@ public final class OpenNLPTokenizer extends Tokenizer {
   @Override 
   public void reset() throws IOException {
     super.reset();
+    releaseAdmission();
     clearAttributes();
     restartAtBeginning();
   }
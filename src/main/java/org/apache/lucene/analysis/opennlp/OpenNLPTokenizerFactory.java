@@ -17,11 +17,25 @@
 
 package org.apache.lucene.analysis.opennlp;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
+import opennlp.tools.util.Span;
+
+import org.apache.lucene.analysis.opennlp.tools.NLPAdmissionController;
+import org.apache.lucene.analysis.opennlp.tools.NLPAnalysisCache;
+import org.apache.lucene.analysis.opennlp.tools.NLPLanguageModels;
+import org.apache.lucene.analysis.opennlp.tools.NLPModelRegistry;
+import org.apache.lucene.analysis.opennlp.tools.NLPModelStats;
 import org.apache.lucene.analysis.opennlp.tools.NLPSentenceDetectorOp;
+import org.apache.lucene.analysis.opennlp.tools.NLPSentenceRules;
 import org.apache.lucene.analysis.opennlp.tools.NLPTokenizerOp;
+import org.apache.lucene.analysis.opennlp.tools.NLPTokenizerRules;
 import org.apache.lucene.analysis.opennlp.tools.OpenNLPOpsFactory;
 import org.apache.lucene.analysis.util.ResourceLoader;
 import org.apache.lucene.analysis.util.ResourceLoaderAware;
@@ -35,28 +49,174 @@ import org.apache.lucene.util.AttributeFactory;
  *   &lt;analyzer&gt;
  *   &lt;tokenizer class="solr.OpenNLPTokenizerFactory"
  *     &lt;sentenceModel="filename"/&gt;
+ *     &lt;sentenceDetectorMode="model|rules|none"/&gt;
+ *     &lt;abbreviations="filename"/&gt;
  *     &lt;tokenizerModel="filename"/&gt;
+ *     &lt;tokenizerMode="model|rules|hybrid|none"/&gt;
+ *     &lt;tokenizerExceptions="filename"/&gt;
+ *     &lt;maxConcurrentAnalyses="n"/&gt;
+ *     &lt;maxBufferedChars="n"/&gt;
+ *     &lt;warmupIterations="n"/&gt;
+ *     &lt;warmupText="text"/&gt;
+ *     &lt;analysisCacheSize="n"/&gt;
+ *     &lt;analysisCacheMaxLength="n"/&gt;
+ *     &lt;sentenceCacheSize="n"/&gt;
+ *     &lt;languageModels="filename"/&gt;
+ *     &lt;defaultLanguage="xx"/&gt;
+ *     &lt;languageIdleSeconds="n"/&gt;
  *   /&gt;
  *   &lt;/analyzer&gt;
  * &lt;/fieldType&gt;</pre>
  * <p>All-in-one OpenNLP Tokenizer/Tagger.</p>
- * <p>At least one of the sentenceModel and tokenizerModel parameters must be specified.</p>
+ * <p>At least one of the sentenceModel and tokenizerModel parameters must be specified,
+ * unless sentenceDetectorMode or tokenizerMode is rules.</p>
+ * <p>sentenceDetectorMode defaults to model when sentenceModel is given, else none.
+ * rules splits sentences with {@link NLPSentenceRules} instead of a model: fast, but only
+ * suited to text with clean punctuation. abbreviations is a word list file (one per line,
+ * # comments) replacing the built-in English abbreviations.</p>
+ * <p>tokenizerMode defaults to model when tokenizerModel is given, else none. rules tokenizes
+ * with {@link NLPTokenizerRules}; hybrid also needs tokenizerModel and only runs it on
+ * whitespace-separated chunks containing a period or inner punctuation. tokenizerExceptions
+ * is a file of tokens kept whole by the rules (one per line, # comments), like "e.g.".</p>
+ * <p>maxConcurrentAnalyses/maxBufferedChars enable node-wide admission control: analyses
+ * block until fewer than maxConcurrentAnalyses are running, and block while reading their text
+ * until it fits in maxBufferedChars. There is a single set of limits per node: every field type
+ * using admission control must configure the same values, and other values are rejected until
+ * the node restarts. Wait time metrics are kept by {@link NLPAdmissionController}, see
+ * {@link OpenNLPOpsFactory#getAdmissionController()}.</p>
+ * <p>warmupIterations &gt; 0 runs warmupText (default: a short English sample) through the
+ * tokenizer that many times once the models are loaded, so the first requests do not run
+ * interpreted code. The warm-up bypasses the analysis and sentence caches.</p>
+ * <p>analysisCacheSize &gt; 0 caches the sentence and word boundaries of up to that many texts
+ * (least recently used first out), for texts of at most analysisCacheMaxLength chars (default 1024).
+ * Meant for query analyzers, where the same short strings come back often; the cache belongs
+ * to this factory, so to one field type. Hit counts are available from {@link #getAnalysisCache()}.</p>
+ * <p>sentenceCacheSize &gt; 0 caches the word boundaries of up to that many sentences, keyed by
+ * their text. Meant for indexing documents that are updated with small edits: the unchanged
+ * sentences of a re-sent document are not tokenized again. Sentence detection still runs over
+ * the whole text. Hit counts are available from {@link #getSentenceCache()}.</p>
+ * <p>languageModels replaces the model and mode parameters with per-language models, listed in a
+ * properties file (see {@link NLPLanguageModels}). A text starting with a "[lang=xx]" marker, as
+ * an upstream language detector may add, is analyzed with the models of that language; other
+ * texts, and texts in unconfigured languages, with those of defaultLanguage (if not given, they
+ * are rejected). The marker is blanked out and offsets are unchanged. The models of a language are
+ * loaded on first use and dropped after languageIdleSeconds (default 3600, 0 to keep them) without
+ * use, and all of them are dropped by {@link #close()}, or once the factory is no longer referenced,
+ * as when Solr drops the schema of a closed or reloaded core. The language is written to
+ * {@link org.apache.lucene.analysis.opennlp.tokenattributes.LanguageAttribute}, where
+ * {@link OpenNLPFilterFactory} finds it.</p>
  */
-public class OpenNLPTokenizerFactory extends TokenizerFactory implements ResourceLoaderAware {
+public class OpenNLPTokenizerFactory extends TokenizerFactory implements ResourceLoaderAware, Closeable {
   public static final String SENTENCE_MODEL = "sentenceModel";
+  public static final String SENTENCE_DETECTOR_MODE = "sentenceDetectorMode";
+  public static final String ABBREVIATIONS = "abbreviations";
   public static final String TOKENIZER_MODEL = "tokenizerModel";
+  public static final String TOKENIZER_MODE = "tokenizerMode";
+  public static final String TOKENIZER_EXCEPTIONS = "tokenizerExceptions";
+  public static final String MODE_MODEL = "model";
+  public static final String MODE_RULES = "rules";
+  public static final String MODE_HYBRID = "hybrid";
+  public static final String MODE_NONE = "none";
+  public static final String MAX_CONCURRENT_ANALYSES = "maxConcurrentAnalyses";
+  public static final String MAX_BUFFERED_CHARS = "maxBufferedChars";
+  public static final String WARMUP_TEXT = "warmupText";
+  public static final String WARMUP_ITERATIONS = "warmupIterations";
+  public static final String ANALYSIS_CACHE_SIZE = "analysisCacheSize";
+  public static final String ANALYSIS_CACHE_MAX_LENGTH = "analysisCacheMaxLength";
+  public static final String SENTENCE_CACHE_SIZE = "sentenceCacheSize";
+  public static final String LANGUAGE_MODELS = "languageModels";
+  public static final String DEFAULT_LANGUAGE = "defaultLanguage";
+  public static final String LANGUAGE_IDLE_SECONDS = "languageIdleSeconds";
   
   private final String sentenceModelFile;
+  private final String sentenceDetectorMode;
+  private final String abbreviationsFile;
+  private NLPSentenceRules sentenceRules = null;
   private final String tokenizerModelFile;
+  private final String tokenizerMode;
+  private final String tokenizerExceptionsFile;
+  private NLPTokenizerRules tokenizerRules = null;
+  private final int maxConcurrentAnalyses;
+  private final int maxBufferedChars;
+  private NLPAdmissionController admissionController = null;
+  private final String warmupText;
+  private final int warmupIterations;
+  private final NLPAnalysisCache<String,OpenNLPTokenizer.CachedSpans> analysisCache;
+  private final int analysisCacheMaxLength;
+  private final NLPAnalysisCache<String,Span[]> sentenceCache;
+  private final String languageModelsFile;
+  private final String defaultLanguage;
+  private final int languageIdleSeconds;
+  private NLPModelRegistry<NLPLanguageModels> languageModels = null;
 
   public OpenNLPTokenizerFactory(Map<String,String> args) {
     super(args);
     sentenceModelFile = get(args, SENTENCE_MODEL);
+    sentenceDetectorMode = get(args, SENTENCE_DETECTOR_MODE, Arrays.asList(MODE_MODEL, MODE_RULES, MODE_NONE),
+        sentenceModelFile == null ? MODE_NONE : MODE_MODEL);
+    abbreviationsFile = get(args, ABBREVIATIONS);
     tokenizerModelFile = get(args, TOKENIZER_MODEL);
-    if (sentenceModelFile == null && tokenizerModelFile == null) {
+    tokenizerMode = get(args, TOKENIZER_MODE, Arrays.asList(MODE_MODEL, MODE_RULES, MODE_HYBRID, MODE_NONE),
+        tokenizerModelFile == null ? MODE_NONE : MODE_MODEL);
+    tokenizerExceptionsFile = get(args, TOKENIZER_EXCEPTIONS);
+    languageModelsFile = get(args, LANGUAGE_MODELS);
+    defaultLanguage = get(args, DEFAULT_LANGUAGE);
+    languageIdleSeconds = getInt(args, LANGUAGE_IDLE_SECONDS, 3600);
+    if (languageModelsFile != null && (sentenceModelFile != null || tokenizerModelFile != null
+        || !MODE_NONE.equals(sentenceDetectorMode) || !MODE_NONE.equals(tokenizerMode))) {
+      throw new IllegalArgumentException("Configuration Error: " + LANGUAGE_MODELS + " replaces the "
+          + SENTENCE_MODEL + ", " + TOKENIZER_MODEL + " and mode parameters.");
+    }
+    if (languageModelsFile == null && defaultLanguage != null) {
+      throw new IllegalArgumentException("Configuration Error: " + DEFAULT_LANGUAGE + " requires " + LANGUAGE_MODELS + ".");
+    }
+    if (languageIdleSeconds < 0) {
+      throw new IllegalArgumentException("Configuration Error: " + LANGUAGE_IDLE_SECONDS + " must not be negative.");
+    }
+    if (sentenceModelFile == null && tokenizerModelFile == null && languageModelsFile == null
+        && !MODE_RULES.equals(sentenceDetectorMode) && !MODE_RULES.equals(tokenizerMode)) {
       throw new IllegalArgumentException("Configuration Error: At least one of the "
           + SENTENCE_MODEL + " and " + TOKENIZER_MODEL + " parameters must be specified.");
     }
+    if ((sentenceModelFile != null) != MODE_MODEL.equals(sentenceDetectorMode)) {
+      throw new IllegalArgumentException("Configuration Error: " + SENTENCE_MODEL + " is required by, and only allowed with, "
+          + SENTENCE_DETECTOR_MODE + "=" + MODE_MODEL);
+    }
+    if (abbreviationsFile != null && !MODE_RULES.equals(sentenceDetectorMode)) {
+      throw new IllegalArgumentException("Configuration Error: " + ABBREVIATIONS + " requires "
+          + SENTENCE_DETECTOR_MODE + "=" + MODE_RULES);
+    }
+    if ((tokenizerModelFile != null) != (MODE_MODEL.equals(tokenizerMode) || MODE_HYBRID.equals(tokenizerMode))) {
+      throw new IllegalArgumentException("Configuration Error: " + TOKENIZER_MODEL + " is required by, and only allowed with, "
+          + TOKENIZER_MODE + "=" + MODE_MODEL + " or " + MODE_HYBRID);
+    }
+    if (tokenizerExceptionsFile != null && !(MODE_RULES.equals(tokenizerMode) || MODE_HYBRID.equals(tokenizerMode))) {
+      throw new IllegalArgumentException("Configuration Error: " + TOKENIZER_EXCEPTIONS + " requires "
+          + TOKENIZER_MODE + "=" + MODE_RULES + " or " + MODE_HYBRID);
+    }
+    maxConcurrentAnalyses = getInt(args, MAX_CONCURRENT_ANALYSES, 0);
+    maxBufferedChars = getInt(args, MAX_BUFFERED_CHARS, 0);
+    if (maxConcurrentAnalyses < 0 || maxBufferedChars < 0) {
+      throw new IllegalArgumentException("Configuration Error: " + MAX_CONCURRENT_ANALYSES + " and "
+          + MAX_BUFFERED_CHARS + " must not be negative.");
+    }
+    warmupText = get(args, WARMUP_TEXT, OpenNLPWarmup.DEFAULT_TEXT);
+    warmupIterations = getInt(args, WARMUP_ITERATIONS, 0);
+    if (warmupIterations < 0) {
+      throw new IllegalArgumentException("Configuration Error: " + WARMUP_ITERATIONS + " must not be negative.");
+    }
+    int analysisCacheSize = getInt(args, ANALYSIS_CACHE_SIZE, 0);
+    analysisCacheMaxLength = getInt(args, ANALYSIS_CACHE_MAX_LENGTH, 1024);
+    if (analysisCacheSize < 0 || analysisCacheMaxLength < 0) {
+      throw new IllegalArgumentException("Configuration Error: " + ANALYSIS_CACHE_SIZE + " and "
+          + ANALYSIS_CACHE_MAX_LENGTH + " must not be negative.");
+    }
+    analysisCache = analysisCacheSize == 0 ? null : new NLPAnalysisCache<>(analysisCacheSize);
+    int sentenceCacheSize = getInt(args, SENTENCE_CACHE_SIZE, 0);
+    if (sentenceCacheSize < 0) {
+      throw new IllegalArgumentException("Configuration Error: " + SENTENCE_CACHE_SIZE + " must not be negative.");
+    }
+    sentenceCache = sentenceCacheSize == 0 ? null : new NLPAnalysisCache<>(sentenceCacheSize);
     if (!args.isEmpty()) {
       throw new IllegalArgumentException("Unknown parameters: " + args);
     }
@@ -64,23 +224,107 @@ public class OpenNLPTokenizerFactory extends TokenizerFactory implements Resourc
   
   @Override
   public OpenNLPTokenizer create(AttributeFactory factory) {
+    return create(factory, true);
+  }
+  
+  /** @param cached false for tokenizers that must not read or fill the analysis and sentence caches */
+  private OpenNLPTokenizer create(AttributeFactory factory, boolean cached) {
     try {
-      NLPSentenceDetectorOp sentenceOp = OpenNLPOpsFactory.getSentenceDetector(sentenceModelFile);
-      NLPTokenizerOp tokenizerOp = OpenNLPOpsFactory.getTokenizer(tokenizerModelFile);
-      return new OpenNLPTokenizer(factory, sentenceOp, tokenizerOp);
+      OpenNLPTokenizer.Builder builder = new OpenNLPTokenizer.Builder().admissionController(admissionController);
+      if (cached) {
+        builder.analysisCache(analysisCache, analysisCacheMaxLength).sentenceCache(sentenceCache);
+      }
+      if (languageModels != null) {
+        return builder.languageModels(languageModels).build(factory);
+      }
+      NLPSentenceDetectorOp sentenceOp = sentenceRules != null
+          ? OpenNLPOpsFactory.getSentenceDetector(sentenceRules)
+          : OpenNLPOpsFactory.getSentenceDetector(sentenceModelFile);
+      NLPTokenizerOp tokenizerOp = tokenizerRules != null
+          ? OpenNLPOpsFactory.getTokenizer(tokenizerModelFile, tokenizerRules)
+          : OpenNLPOpsFactory.getTokenizer(tokenizerModelFile);
+      return builder.sentenceDetector(sentenceOp).tokenizer(tokenizerOp).build(factory);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
   
+  /**
+   * Keys of the cached models used by this factory, see {@link NLPModelStats#key}, including
+   * those of the languages currently loaded.
+   */
+  public List<String> getModelKeys() {
+    List<String> keys = new ArrayList<>();
+    if (sentenceModelFile != null) {
+      keys.add(NLPModelStats.key(NLPModelStats.SENTENCE, sentenceModelFile));
+    }
+    if (tokenizerModelFile != null) {
+      keys.add(NLPModelStats.key(NLPModelStats.TOKENIZER, tokenizerModelFile));
+    }
+    if (languageModels != null) {
+      for (NLPLanguageModels models: languageModels.getLoadedModels()) {
+        keys.addAll(models.getModelKeys());
+      }
+    }
+    return keys;
+  }
+  
+  /** Per-language models with their load and eviction counts, or null if not configured. */
+  public NLPModelRegistry<NLPLanguageModels> getLanguageModels() {
+    return languageModels;
+  }
+  
+  /** Cache of text boundaries with its hit counts, or null if not configured. */
+  public NLPAnalysisCache<String,OpenNLPTokenizer.CachedSpans> getAnalysisCache() {
+    return analysisCache;
+  }
+  
+  /** Cache of sentence word boundaries with its hit counts, or null if not configured. */
+  public NLPAnalysisCache<String,Span[]> getSentenceCache() {
+    return sentenceCache;
+  }
+  
   @Override
   public void inform(ResourceLoader loader) throws IOException {
     // register models in cache with file/resource names
     if (sentenceModelFile != null) {
       OpenNLPOpsFactory.getSentenceModel(sentenceModelFile, loader.openResource(sentenceModelFile));
     }
+    if (MODE_RULES.equals(sentenceDetectorMode)) {
+      sentenceRules = abbreviationsFile == null
+          ? new NLPSentenceRules() : new NLPSentenceRules(getWordSet(loader, abbreviationsFile, true));
+    }
     if (tokenizerModelFile != null) {
       OpenNLPOpsFactory.getTokenizerModel(tokenizerModelFile, loader.openResource(tokenizerModelFile));
     }
+    if (MODE_RULES.equals(tokenizerMode) || MODE_HYBRID.equals(tokenizerMode)) {
+      tokenizerRules = tokenizerExceptionsFile == null
+          ? new NLPTokenizerRules() : new NLPTokenizerRules(getLines(loader, tokenizerExceptionsFile));
+    }
+    if (languageModelsFile != null) {
+      Map<String,Map<String,String>> config;
+      try (InputStream in = loader.openResource(languageModelsFile)) {
+        config = NLPLanguageModels.readConfig(in);
+      }
+      languageModels = new NLPModelRegistry<>(config.keySet(), defaultLanguage,
+          language -> NLPLanguageModels.loadTokenizerModels(language, config.get(language), loader),
+          languageIdleSeconds * 1000L);
+    }
+    if (maxConcurrentAnalyses > 0 || maxBufferedChars > 0) {
+      admissionController = OpenNLPOpsFactory.getAdmissionController(maxConcurrentAnalyses, maxBufferedChars);
+    }
+    if (warmupIterations > 0) {
+      // a cached sample would be split once and replayed, and would skew the hit counts
+      OpenNLPTokenizer tokenizer = create(AttributeFactory.DEFAULT_ATTRIBUTE_FACTORY, false);
+      OpenNLPWarmup.run(tokenizer, tokenizer, warmupText, warmupIterations);
+    }
+  }
+  
+  /** Drops the per-language models; tokenizers created afterwards fail on languages not yet loaded. */
+  @Override
+  public void close() {
+    if (languageModels != null) {
+      languageModels.close();
+    }
   }
 }
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+
+/**
+ * Warm-up of an analysis stage after its models are loaded: runs a sample text through
+ * it enough times for the JIT to compile the tagging paths before real traffic arrives.
+ * The compiled code and the models are shared by all instances, so warming one stream
+ * warms the stage for the whole node.
+ */
+final class OpenNLPWarmup {
+  static final String DEFAULT_TEXT = "Royal Flash is a tale about Harry Flashman. It was written in 1970 by "
+      + "George MacDonald Fraser, who also wrote Flashman, the first of the series. "
+      + "The novels, presented as memoirs, follow the career of a Victorian soldier!";
+
+  private OpenNLPWarmup() {}
+
+  /**
+   * @param source the tokenizer to feed the text to, start of chain
+   * @param chain last stage of the chain, may be source itself
+   */
+  static void run(Tokenizer source, TokenStream chain, String text, int iterations) throws IOException {
+    for (int i = 0; i < iterations; i++) {
+      source.setReader(new StringReader(text));
+      chain.reset();
+      while (chain.incrementToken()) {
+        // consume
+      }
+      chain.end();
+      chain.close();
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tokenattributes;
+
+import java.util.Objects;
+
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.AttributeReflector;
+
+/** Default implementation of {@link LanguageAttribute}. */
+public class LanguageAttributeImpl extends AttributeImpl implements LanguageAttribute, Cloneable {
+  private String language = null;
+
+  @Override
+  public String getLanguage() {
+    return language;
+  }
+
+  @Override
+  public void setLanguage(String language) {
+    this.language = language;
+  }
+
+  @Override
+  public void clear() {
+    language = null;
+  }
+
+  @Override
+  public void copyTo(AttributeImpl target) {
+    ((LanguageAttribute) target).setLanguage(language);
+  }
+
+  @Override
+  public void reflectWith(AttributeReflector reflector) {
+    reflector.reflect(LanguageAttribute.class, "language", language);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (other == this) {
+      return true;
+    }
+    if (other instanceof LanguageAttributeImpl) {
+      return Objects.equals(((LanguageAttributeImpl) other).language, language);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return language == null ? 0 : language.hashCode();
+  }
+}
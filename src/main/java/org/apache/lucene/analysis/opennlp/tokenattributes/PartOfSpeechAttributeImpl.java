@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tokenattributes;
+
+import java.util.Objects;
+
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.AttributeReflector;
+
+/** Default implementation of {@link PartOfSpeechAttribute}. */
+public class PartOfSpeechAttributeImpl extends AttributeImpl implements PartOfSpeechAttribute, Cloneable {
+  private String partOfSpeech = null;
+
+  @Override
+  public String getPartOfSpeech() {
+    return partOfSpeech;
+  }
+
+  @Override
+  public void setPartOfSpeech(String partOfSpeech) {
+    this.partOfSpeech = partOfSpeech;
+  }
+
+  @Override
+  public void clear() {
+    partOfSpeech = null;
+  }
+
+  @Override
+  public void copyTo(AttributeImpl target) {
+    ((PartOfSpeechAttribute) target).setPartOfSpeech(partOfSpeech);
+  }
+
+  @Override
+  public void reflectWith(AttributeReflector reflector) {
+    reflector.reflect(PartOfSpeechAttribute.class, "partOfSpeech", partOfSpeech);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (other == this) {
+      return true;
+    }
+    if (other instanceof PartOfSpeechAttributeImpl) {
+      return Objects.equals(((PartOfSpeechAttributeImpl) other).partOfSpeech, partOfSpeech);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return partOfSpeech == null ? 0 : partOfSpeech.hashCode();
+  }
+}
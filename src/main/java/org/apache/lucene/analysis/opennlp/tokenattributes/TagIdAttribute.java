@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tokenattributes;
+
+import org.apache.lucene.util.Attribute;
+
+/**
+ * Compact numeric form of the tag written to {@link org.apache.lucene.analysis.tokenattributes.TypeAttribute}
+ * by {@link org.apache.lucene.analysis.opennlp.OpenNLPFilter}.
+ * Ids come from the {@link org.apache.lucene.analysis.opennlp.tools.NLPTagVocabulary} of the
+ * tagger that produced the tag. 0 means "no tag".
+ */
+public interface TagIdAttribute extends Attribute {
+  int NO_TAG = 0;
+
+  int getTagId();
+
+  void setTagId(int tagId);
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tokenattributes;
+
+import org.apache.lucene.util.AttributeImpl;
+import org.apache.lucene.util.AttributeReflector;
+
+/** Default implementation of {@link TagIdAttribute}. */
+public class TagIdAttributeImpl extends AttributeImpl implements TagIdAttribute, Cloneable {
+  private int tagId = NO_TAG;
+
+  @Override
+  public int getTagId() {
+    return tagId;
+  }
+
+  @Override
+  public void setTagId(int tagId) {
+    this.tagId = tagId;
+  }
+
+  @Override
+  public void clear() {
+    tagId = NO_TAG;
+  }
+
+  @Override
+  public void copyTo(AttributeImpl target) {
+    ((TagIdAttribute) target).setTagId(tagId);
+  }
+
+  @Override
+  public void reflectWith(AttributeReflector reflector) {
+    reflector.reflect(TagIdAttribute.class, "tagId", tagId);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (other == this) {
+      return true;
+    }
+    if (other instanceof TagIdAttributeImpl) {
+      return ((TagIdAttributeImpl) other).tagId == tagId;
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return tagId;
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * Node-wide admission control for analyses that buffer whole documents.
+ * Bounds the number of concurrent analyses and the total number of buffered
+ * characters in flight. Callers block, in FIFO order, until the budget allows them in.
+ * <p>
+ * An analysis first takes a slot with {@link #acquireAnalysis()}, then takes its characters
+ * with {@link #acquireChars(int, int)} as it reads its text. A document larger than the whole
+ * character budget takes the whole budget.
+ * Thread-safe.
+ */
+public class NLPAdmissionController {
+  private final int maxAnalyses;
+  private final int maxChars;
+  private final Semaphore analyses;
+  private final Semaphore chars;
+
+  private final LongAdder admitted = new LongAdder();
+  private final LongAdder waits = new LongAdder();
+  private final LongAdder waitNanos = new LongAdder();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+  /**
+   * @param maxAnalyses maximum number of concurrent analyses, 0 for no limit
+   * @param maxChars maximum number of buffered characters over all analyses, 0 for no limit
+   */
+  public NLPAdmissionController(int maxAnalyses, int maxChars) {
+    if (maxAnalyses < 0 || maxChars < 0) {
+      throw new IllegalArgumentException("Admission limits must not be negative");
+    }
+    this.maxAnalyses = maxAnalyses;
+    this.maxChars = maxChars;
+    analyses = maxAnalyses == 0 ? null : new Semaphore(maxAnalyses, true);
+    chars = maxChars == 0 ? null : new Semaphore(maxChars, true);
+  }
+
+  public void acquireAnalysis() {
+    if (analyses != null) {
+      acquire(analyses, 1);
+    }
+    admitted.increment();
+  }
+
+  public void releaseAnalysis() {
+    if (analyses != null) {
+      analyses.release();
+    }
+  }
+
+  /**
+   * Charges count more characters to an analysis already charged with charged characters.
+   * An analysis never waits while holding characters, or two partly read documents could wait
+   * on each other: if the extra characters are not available, it gives back what it holds and
+   * waits for the new total at once. If interrupted meanwhile, it takes back the characters it
+   * held before throwing, so the caller still holds charged characters.
+   * @return the total number of characters charged, to be passed to {@link #releaseChars(int)}
+   */
+  public int acquireChars(int charged, int count) {
+    if (chars == null) {
+      return 0;
+    }
+    int total = (int) Math.min((long) charged + count, maxChars);
+    if (total <= charged) {
+      return charged;
+    }
+    if (tryAcquire(chars, total - charged)) {
+      return total;
+    }
+    chars.release(charged);
+    try {
+      acquire(chars, total);
+    } catch (ThreadInterruptedException e) {
+      chars.acquireUninterruptibly(charged);
+      throw e;
+    }
+    return total;
+  }
+
+  public void releaseChars(int charged) {
+    if (chars != null && charged > 0) {
+      chars.release(charged);
+    }
+  }
+
+  private void acquire(Semaphore semaphore, int permits) {
+    if (tryAcquire(semaphore, permits)) {
+      return;
+    }
+    long start = System.nanoTime();
+    try {
+      semaphore.acquire(permits);
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException(e);
+    }
+    long waited = System.nanoTime() - start;
+    waits.increment();
+    waitNanos.add(waited);
+    maxWaitNanos.accumulateAndGet(waited, Math::max);
+  }
+
+  // unlike tryAcquire(int), does not barge past the threads already waiting
+  private static boolean tryAcquire(Semaphore semaphore, int permits) {
+    try {
+      return semaphore.tryAcquire(permits, 0, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException(e);
+    }
+  }
+
+  public int getMaxAnalyses() {
+    return maxAnalyses;
+  }
+
+  public int getMaxChars() {
+    return maxChars;
+  }
+
+  /** Number of analyses currently admitted, or -1 if not limited. */
+  public int getActiveAnalyses() {
+    return analyses == null ? -1 : maxAnalyses - analyses.availablePermits();
+  }
+
+  /** Number of characters currently charged, or -1 if not limited. */
+  public int getBufferedChars() {
+    return chars == null ? -1 : maxChars - chars.availablePermits();
+  }
+
+  /** Number of analyses waiting for admission. */
+  public int getQueueLength() {
+    return (analyses == null ? 0 : analyses.getQueueLength()) + (chars == null ? 0 : chars.getQueueLength());
+  }
+
+  public long getAdmittedCount() {
+    return admitted.sum();
+  }
+
+  /** Number of acquisitions that had to wait. */
+  public long getWaitCount() {
+    return waits.sum();
+  }
+
+  public long getTotalWaitNanos() {
+    return waitNanos.sum();
+  }
+
+  public long getMaxWaitNanos() {
+    return maxWaitNanos.get();
+  }
+}
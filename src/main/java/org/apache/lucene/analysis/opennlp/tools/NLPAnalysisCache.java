@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of analysis results, shared by the streams of one analysis stage.
+ * Values must not be modified once cached: they are replayed by concurrent streams.
+ * Thread-safe; counts hits and misses.
+ * <p>Keys are spread by hash over up to 16 segments, each an LRU map with its own lock and
+ * a share of the capacity, so concurrent lookups rarely wait on each other. Eviction is
+ * least recently used within a segment, so only approximately so over the whole cache.</p>
+ */
+public class NLPAnalysisCache<K,V> {
+  private static final int MAX_SEGMENTS = 16;
+  
+  private final int maxSize;
+  private final Segment<K,V>[] segments;
+  private final int segmentMask;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  private static final class Segment<K,V> extends LinkedHashMap<K,V> {
+    private final int capacity;
+    
+    Segment(int capacity) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+    }
+    
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+      return size() > capacity;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public NLPAnalysisCache(int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("Cache size must be positive");
+    }
+    this.maxSize = maxSize;
+    // a power of two, and no more segments than entries
+    int segmentCount = Integer.highestOneBit(Math.min(MAX_SEGMENTS, maxSize));
+    segments = new Segment[segmentCount];
+    segmentMask = segmentCount - 1;
+    for (int i = 0; i < segmentCount; i++) {
+      // capacities add up to maxSize
+      segments[i] = new Segment<>(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0));
+    }
+  }
+
+  private Segment<K,V> segment(Object key) {
+    int h = key.hashCode();
+    // spread the high bits, as HashMap does
+    return segments[(h ^ (h >>> 16)) & segmentMask];
+  }
+
+  /** @return the cached value, or null, counted as a miss */
+  public V get(K key) {
+    Segment<K,V> segment = segment(key);
+    V value;
+    synchronized (segment) {
+      value = segment.get(key);
+    }
+    if (value == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return value;
+  }
+
+  public void put(K key, V value) {
+    Segment<K,V> segment = segment(key);
+    synchronized (segment) {
+      segment.put(key, value);
+    }
+  }
+
+  public void clear() {
+    for (Segment<K,V> segment: segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  public int size() {
+    int size = 0;
+    for (Segment<K,V> segment: segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /** Hits over lookups, 0 before the first lookup. */
+  public double getHitRate() {
+    long hitCount = hits.sum();
+    long lookups = hitCount + misses.sum();
+    return lookups == 0 ? 0 : (double) hitCount / lookups;
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import opennlp.tools.postag.POSModel;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * POS tagging service shared by concurrent analyses. Word arrays submitted by many
+ * filters are queued, collected by worker threads, and tagged back to back by the
+ * worker's own tagger. Results are returned through futures.
+ * <p>
+ * A worker takes everything already queued, up to a maximum batch size. Only while
+ * several callers are tagging at once does it wait up to a short window for more, so
+ * single-threaded use is never delayed. Filters submit all the sentences of a document
+ * before waiting, see {@link #tag(String[][])}.
+ * <p>
+ * Compared to one tagger per filter, a few always-busy taggers keep the model's
+ * hot data in cache and no filter pays for tagger setup or lock contention.
+ * <p>
+ * Workers are daemon threads started with the first request. A worker that finds no request
+ * for the idle timeout (default one minute) exits with its tagger, and is started again by a
+ * later request, so a tagger whose users stopped without closing, as the analysis factories of
+ * a reloaded Solr core do, holds no threads.
+ * Thread-safe; call {@link #shutdown()} when the model is dropped.
+ */
+public class NLPBatchPOSTagger {
+  public static final long DEFAULT_IDLE_MILLIS = 60000;
+
+  private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+  private final POSModel model;
+  private final int beamSize;
+  private final int threads;
+  private final long windowNanos;
+  private final int maxBatch;
+  private final long idleNanos;
+  // live workers, guarded by this
+  private final Set<Thread> workers = new HashSet<>();
+  private final AtomicInteger liveWorkers = new AtomicInteger();
+  private int startedWorkers = 0;
+  private volatile boolean shutdown = false;
+  // threads blocked in tag(): more requests can only arrive while there are several
+  private final AtomicInteger callers = new AtomicInteger();
+
+  private final LongAdder batches = new LongAdder();
+  private final LongAdder sentences = new LongAdder();
+
+  private static class Request {
+    final String[] words;
+    final CompletableFuture<String[]> result = new CompletableFuture<>();
+    Request(String[] words) {
+      this.words = words;
+    }
+  }
+
+  /**
+   * @param beamSize beam size of the worker taggers, 0 for the model default
+   * @param threads number of worker threads, each with its own tagger
+   * @param windowMicros how long a worker waits for more requests once a batch has formed
+   * @param maxBatch maximum number of word arrays per batch
+   */
+  public NLPBatchPOSTagger(POSModel model, int beamSize, int threads, long windowMicros, int maxBatch) {
+    this(model, beamSize, threads, windowMicros, maxBatch, DEFAULT_IDLE_MILLIS);
+  }
+
+  /** @param idleMillis how long a worker waits for a request before it exits */
+  public NLPBatchPOSTagger(POSModel model, int beamSize, int threads, long windowMicros, int maxBatch, long idleMillis) {
+    if (threads < 1 || windowMicros < 0 || maxBatch < 1 || idleMillis < 1) {
+      throw new IllegalArgumentException("Batch tagger needs at least one thread, a batch size of at least 1,"
+          + " a non-negative window and a positive idle timeout");
+    }
+    this.model = model;
+    this.beamSize = beamSize;
+    this.threads = threads;
+    this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+    this.maxBatch = maxBatch;
+    this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+  }
+
+  public CompletableFuture<String[]> submit(String[] words) {
+    Request request = new Request(words);
+    if (shutdown) {
+      request.result.completeExceptionally(new IllegalStateException("Batch tagger is shut down"));
+      return request.result;
+    }
+    queue.add(request);
+    // read after the add: a worker that exits re-checks the queue once it no longer counts as live
+    if (liveWorkers.get() < threads) {
+      try {
+        startWorkers();
+      } catch (IOException e) {
+        queue.remove(request);
+        request.result.completeExceptionally(e);
+        return request.result;
+      }
+    }
+    // a worker may have exited between the check and the add
+    if (shutdown) {
+      failPending();
+    }
+    return request.result;
+  }
+
+  private synchronized void startWorkers() throws IOException {
+    while (!shutdown && liveWorkers.get() < threads) {
+      NLPPOSTaggerOp tagger = beamSize == 0 ? new NLPPOSTaggerOp(model) : new NLPPOSTaggerOp(model, beamSize);
+      Thread worker = new Thread(() -> work(tagger), "opennlp-pos-batch-" + startedWorkers++);
+      worker.setDaemon(true);
+      workers.add(worker);
+      liveWorkers.incrementAndGet();
+      worker.start();
+    }
+  }
+
+  /** @return true if the worker may exit, false if a request came in meanwhile */
+  private synchronized boolean exitIdle() {
+    liveWorkers.decrementAndGet();
+    if (queue.isEmpty() || shutdown) {
+      workers.remove(Thread.currentThread());
+      return true;
+    }
+    liveWorkers.incrementAndGet();
+    return false;
+  }
+
+  /** Tags synchronously through the workers. */
+  public String[] tag(String[] words) {
+    return tag(new String[][] {words})[0];
+  }
+
+  /** Tags several word arrays synchronously, submitting all of them before waiting. */
+  public String[][] tag(String[][] sentences) {
+    callers.incrementAndGet();
+    try {
+      List<CompletableFuture<String[]>> results = new ArrayList<>(sentences.length);
+      for (String[] words: sentences) {
+        results.add(submit(words));
+      }
+      String[][] tags = new String[sentences.length][];
+      for (int i = 0; i < tags.length; i++) {
+        tags[i] = results.get(i).get();
+      }
+      return tags;
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new RuntimeException(cause);
+    } finally {
+      callers.decrementAndGet();
+    }
+  }
+
+  private void work(NLPPOSTaggerOp tagger) {
+    List<Request> batch = new ArrayList<>(maxBatch);
+    boolean idle = false;
+    try {
+      while (!shutdown) {
+        Request first = queue.poll(idleNanos, TimeUnit.NANOSECONDS);
+        if (first == null) {
+          if (exitIdle()) {
+            idle = true;
+            return;
+          }
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, maxBatch - 1);
+        // with a single caller, nothing else can arrive: waiting would only add latency
+        if (callers.get() > 1) {
+          long deadline = System.nanoTime() + windowNanos;
+          while (batch.size() < maxBatch) {
+            long remaining = deadline - System.nanoTime();
+            Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) {
+              break;
+            }
+            batch.add(next);
+          }
+        }
+        for (Request request: batch) {
+          try {
+            request.result.complete(tagger.getPOSTags(request.words));
+          } catch (RuntimeException e) {
+            request.result.completeExceptionally(e);
+          }
+        }
+        batches.increment();
+        sentences.add(batch.size());
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      // shutdown
+    } finally {
+      if (!idle) {
+        liveWorkers.decrementAndGet();
+      }
+      for (Request request: batch) {
+        request.result.completeExceptionally(new IllegalStateException("Batch tagger is shut down"));
+      }
+    }
+  }
+
+  private void failPending() {
+    Request request;
+    while ((request = queue.poll()) != null) {
+      request.result.completeExceptionally(new IllegalStateException("Batch tagger is shut down"));
+    }
+  }
+
+  /** Stops the workers and waits for them to exit; pending and later requests fail. */
+  public void shutdown() {
+    List<Thread> stopping;
+    synchronized (this) {
+      shutdown = true;
+      stopping = new ArrayList<>(workers);
+      workers.clear();
+    }
+    for (Thread worker: stopping) {
+      worker.interrupt();
+    }
+    try {
+      for (Thread worker: stopping) {
+        worker.join();
+      }
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException(e);
+    } finally {
+      failPending();
+    }
+  }
+
+  /** Configured number of worker threads. */
+  public int getThreadCount() {
+    return threads;
+  }
+
+  /** Number of worker threads currently running, 0 once idle. */
+  public int getLiveThreadCount() {
+    return liveWorkers.get();
+  }
+
+  public long getBatchCount() {
+    return batches.sum();
+  }
+
+  /** Number of word arrays tagged. */
+  public long getTaggedCount() {
+    return sentences.sum();
+  }
+
+  public int getQueueLength() {
+    return queue.size();
+  }
+}
@@ -18,6 +18,7 @@
 package org.apache.lucene.analysis.opennlp.tools;
 
 import java.io.IOException;
+import opennlp.tools.chunker.ChunkerFactory;
 import opennlp.tools.chunker.ChunkerME;
 import opennlp.tools.chunker.ChunkerModel;
 
@@ -27,12 +28,26 @@ import opennlp.tools.chunker.ChunkerModel;
  */
 public class NLPChunkerOp {
   private ChunkerME chunker = null;
+  private NLPSequenceDecoder decoder = null;
   
   public NLPChunkerOp(ChunkerModel chunkerModel) throws IOException {
     chunker = new ChunkerME(chunkerModel);
   }
   
+  /**
+   * @param beamSize beam size for decoding; 1 selects greedy decoding.
+   *                 Only supported for maxent/perceptron models.
+   */
+  public NLPChunkerOp(ChunkerModel chunkerModel, int beamSize) throws IOException {
+    ChunkerFactory factory = chunkerModel.getFactory();
+    decoder = new NLPSequenceDecoder(chunkerModel.getChunkerModel(), beamSize,
+        factory.getContextGenerator(), factory.getSequenceValidator());
+  }
+  
   public synchronized String[] getChunks(String[] words, String[] tags, double[] probs) {
+    if (decoder != null) {
+      return decoder.decode(words, new Object[] { tags }, probs);
+    }
     String[] chunks = chunker.chunk(words, tags); 
     if (probs != null)
       chunker.probs(probs);
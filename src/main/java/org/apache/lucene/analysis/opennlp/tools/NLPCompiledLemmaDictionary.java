@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Lemma dictionary compiled from the word[tab]postag[tab]lemma text format of
+ * {@link opennlp.tools.lemmatizer.SimpleLemmatizer} into a sorted binary file, searched
+ * in place: memory-mapped files take no heap and are shared through the page cache.
+ * <p>
+ * Layout, big-endian: the {@link #MAGIC} bytes, a version, the entry count n, n+1 entry
+ * offsets relative to the data section, then the entries sorted by key bytes. An entry is
+ * the UTF-8 key word[tab]postag, a 0 byte, and the UTF-8 lemma.
+ * <p>
+ * Compile with: {@code java ... NLPCompiledLemmaDictionary <text dictionary> <compiled dictionary>}.
+ * Thread-safe.
+ */
+public class NLPCompiledLemmaDictionary {
+  public static final byte[] MAGIC = "NLPLEMMA".getBytes(StandardCharsets.US_ASCII);
+  public static final int VERSION = 1;
+
+  private final ByteBuffer buffer;
+  private final int count;
+  private final int offsetsStart;
+  private final int dataStart;
+
+  private NLPCompiledLemmaDictionary(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    byte[] magic = new byte[MAGIC.length];
+    for (int i = 0; i < magic.length; i++) {
+      magic[i] = buffer.get(i);
+    }
+    if (!Arrays.equals(magic, MAGIC)) {
+      throw new IOException("Not a compiled lemma dictionary");
+    }
+    int version = buffer.getInt(MAGIC.length);
+    if (version != VERSION) {
+      throw new IOException("Unsupported compiled lemma dictionary version: " + version);
+    }
+    count = buffer.getInt(MAGIC.length + 4);
+    offsetsStart = MAGIC.length + 8;
+    dataStart = offsetsStart + 4 * (count + 1);
+  }
+
+  /** Memory-maps a compiled dictionary file. */
+  public static NLPCompiledLemmaDictionary open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return new NLPCompiledLemmaDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /** Reads a compiled dictionary into off-heap memory, for resources that are not plain files. */
+  public static NLPCompiledLemmaDictionary read(InputStream stream) throws IOException {
+    DataInputStream in = new DataInputStream(stream);
+    byte[] header = new byte[MAGIC.length + 8];
+    in.readFully(header);
+    ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+    int count = headerBuffer.getInt(MAGIC.length + 4);
+    byte[] offsets = new byte[4 * (count + 1)];
+    in.readFully(offsets);
+    int dataLength = ByteBuffer.wrap(offsets).getInt(4 * count);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(header.length + offsets.length + dataLength);
+    buffer.put(header).put(offsets);
+    byte[] chunk = new byte[8192];
+    while (buffer.hasRemaining()) {
+      int read = in.read(chunk, 0, Math.min(chunk.length, buffer.remaining()));
+      if (read < 0) {
+        throw new IOException("Truncated compiled lemma dictionary");
+      }
+      buffer.put(chunk, 0, read);
+    }
+    buffer.flip();
+    return new NLPCompiledLemmaDictionary(buffer);
+  }
+
+  /** Whether the stream starts with {@link #MAGIC}. The stream must support mark/reset. */
+  public static boolean isCompiled(InputStream stream) throws IOException {
+    stream.mark(MAGIC.length);
+    byte[] magic = new byte[MAGIC.length];
+    int length = 0;
+    int read;
+    while (length < magic.length && (read = stream.read(magic, length, magic.length - length)) > 0) {
+      length += read;
+    }
+    stream.reset();
+    return length == magic.length && Arrays.equals(magic, MAGIC);
+  }
+
+  public int size() {
+    return count;
+  }
+
+  /** @return the dictionary lemma of this exact word and tag, or null */
+  public String get(String word, String postag) {
+    byte[] key = (word + "\t" + postag).getBytes(StandardCharsets.UTF_8);
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int start = dataStart + buffer.getInt(offsetsStart + 4 * mid);
+      int cmp = compareKey(start, key);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        int lemmaStart = start + key.length + 1;
+        int end = dataStart + buffer.getInt(offsetsStart + 4 * (mid + 1));
+        byte[] lemma = new byte[end - lemmaStart];
+        for (int i = 0; i < lemma.length; i++) {
+          lemma[i] = buffer.get(lemmaStart + i);
+        }
+        return new String(lemma, StandardCharsets.UTF_8);
+      }
+    }
+    return null;
+  }
+
+  /** Compares the 0-terminated entry key at start with key, as unsigned bytes. */
+  private int compareKey(int start, byte[] key) {
+    for (int i = 0; ; i++) {
+      int entryByte = buffer.get(start + i) & 0xff;
+      if (entryByte == 0) {
+        return i == key.length ? 0 : -1;
+      }
+      if (i == key.length) {
+        return 1;
+      }
+      int cmp = entryByte - (key[i] & 0xff);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+  }
+
+  /**
+   * Compiles a text dictionary. As with SimpleLemmatizer, the last entry of a
+   * word and tag wins.
+   */
+  public static void compile(Reader text, OutputStream output) throws IOException {
+    Map<BytesRef,BytesRef> entries = new TreeMap<>();
+    BufferedReader reader = new BufferedReader(text);
+    String line;
+    int lineNumber = 0;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      String[] elems = line.split("\t");
+      if (elems.length < 3) {
+        throw new IllegalArgumentException("Line " + lineNumber + ": expected word, postag and lemma separated by tabs");
+      }
+      entries.put(new BytesRef(elems[0] + "\t" + elems[1]), new BytesRef(elems[2]));
+    }
+    DataOutputStream out = new DataOutputStream(output);
+    out.write(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(entries.size());
+    long offset = 0;
+    out.writeInt(0);
+    for (Map.Entry<BytesRef,BytesRef> entry: entries.entrySet()) {
+      offset += entry.getKey().length + 1 + entry.getValue().length;
+      if (MAGIC.length + 8 + 4L * (entries.size() + 1) + offset > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Dictionary too large: compiled size exceeds 2GB");
+      }
+      out.writeInt((int) offset);
+    }
+    for (Map.Entry<BytesRef,BytesRef> entry: entries.entrySet()) {
+      BytesRef key = entry.getKey();
+      BytesRef lemma = entry.getValue();
+      out.write(key.bytes, key.offset, key.length);
+      out.write(0);
+      out.write(lemma.bytes, lemma.offset, lemma.length);
+    }
+    out.flush();
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: NLPCompiledLemmaDictionary <text dictionary> <compiled dictionary>");
+      System.exit(1);
+    }
+    try (Reader text = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+         OutputStream output = Files.newOutputStream(Paths.get(args[1]))) {
+      compile(text, new BufferedOutputStream(output));
+    }
+  }
+}
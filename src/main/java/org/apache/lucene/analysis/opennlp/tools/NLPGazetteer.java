@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import opennlp.tools.namefind.TokenNameFinder;
+import opennlp.tools.util.Span;
+
+/**
+ * Dictionary name finder: an Aho-Corasick automaton over token sequences,
+ * compiled once from a gazetteer and shared by all users.
+ * Finds all entries in one left-to-right pass over the words, then keeps the
+ * leftmost-longest non-overlapping matches, in time linear in the number of words and matches.
+ * <p>
+ * Gazetteer format: one entry per line, phrase[tab]type. The phrase is split on whitespace
+ * and must match the tokenization of the text. Lines without a type get the type "default".
+ * Empty lines and lines starting with '#' are ignored.
+ * <p>
+ * Immutable after construction and thread-safe.
+ */
+public class NLPGazetteer implements TokenNameFinder {
+  private static final String DEFAULT_TYPE = "default";
+
+  private static final class Node {
+    final Map<String,Node> children = new HashMap<>();
+    final int depth;
+    Node fail;
+    // nearest node on the fail chain, this one included, that ends an entry
+    Node output;
+    String type;
+
+    Node(int depth) {
+      this.depth = depth;
+    }
+  }
+
+  private final Node root = new Node(0);
+  private final boolean ignoreCase;
+  private final Set<String> types = new TreeSet<>();
+  private int size = 0;
+
+  public NLPGazetteer(InputStream gazetteer, boolean ignoreCase) throws IOException {
+    this.ignoreCase = ignoreCase;
+    BufferedReader reader = new BufferedReader(new InputStreamReader(gazetteer, StandardCharsets.UTF_8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      int tab = line.lastIndexOf('\t');
+      String phrase = tab < 0 ? line : line.substring(0, tab).trim();
+      String type = tab < 0 ? DEFAULT_TYPE : line.substring(tab + 1).trim();
+      if (!phrase.isEmpty()) {
+        add(phrase.split("\\s+"), type.isEmpty() ? DEFAULT_TYPE : type);
+      }
+    }
+    link();
+  }
+
+  private void add(String[] phrase, String type) {
+    Node node = root;
+    for (String word : phrase) {
+      String key = normalize(word);
+      Node child = node.children.get(key);
+      if (child == null) {
+        child = new Node(node.depth + 1);
+        node.children.put(key, child);
+      }
+      node = child;
+    }
+    if (node.type == null) {
+      size++;
+    }
+    node.type = type;
+    types.add(type);
+  }
+
+  // breadth-first construction of failure and output links
+  private void link() {
+    ArrayDeque<Node> queue = new ArrayDeque<>();
+    root.fail = root;
+    for (Node child : root.children.values()) {
+      child.fail = root;
+      child.output = child.type != null ? child : null;
+      queue.add(child);
+    }
+    while (!queue.isEmpty()) {
+      Node node = queue.poll();
+      for (Map.Entry<String,Node> entry : node.children.entrySet()) {
+        Node child = entry.getValue();
+        Node fail = node.fail;
+        while (fail != root && !fail.children.containsKey(entry.getKey())) {
+          fail = fail.fail;
+        }
+        Node target = fail.children.get(entry.getKey());
+        child.fail = (target == null || target == child) ? root : target;
+        child.output = child.type != null ? child : child.fail.output;
+        queue.add(child);
+      }
+    }
+  }
+
+  private String normalize(String word) {
+    return ignoreCase ? word.toLowerCase(Locale.ROOT) : word;
+  }
+
+  @Override
+  public Span[] find(String[] words) {
+    // longest match starting at each position
+    int[] matchEnd = null;
+    Node[] matchNode = null;
+    Node node = root;
+    for (int i = 0; i < words.length; i++) {
+      String key = normalize(words[i]);
+      Node next = node.children.get(key);
+      while (next == null && node != root) {
+        node = node.fail;
+        next = node.children.get(key);
+      }
+      node = next == null ? root : next;
+      for (Node out = node.output; out != null; out = out.fail.output) {
+        int start = i + 1 - out.depth;
+        if (matchEnd == null) {
+          matchEnd = new int[words.length];
+          matchNode = new Node[words.length];
+        }
+        if (i + 1 > matchEnd[start]) {
+          matchEnd[start] = i + 1;
+          matchNode[start] = out;
+        }
+      }
+    }
+    if (matchEnd == null) {
+      return new Span[0];
+    }
+    List<Span> spans = new ArrayList<>();
+    for (int start = 0; start < words.length; ) {
+      if (matchEnd[start] > start) {
+        spans.add(new Span(start, matchEnd[start], matchNode[start].type));
+        start = matchEnd[start];
+      } else {
+        start++;
+      }
+    }
+    return spans.toArray(new Span[spans.size()]);
+  }
+
+  @Override
+  public void clearAdaptiveData() {
+    // no adaptive data
+  }
+
+  /** Entity types in this gazetteer. */
+  public Set<String> getTypes() {
+    return Collections.unmodifiableSet(types);
+  }
+
+  /** Number of entries. */
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public String toString() {
+    return "NLPGazetteer(entries=" + size + ", types=" + Arrays.toString(types.toArray()) + ")";
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import opennlp.tools.chunker.ChunkerModel;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.sentdetect.SentenceModel;
+import opennlp.tools.tokenize.TokenizerModel;
+import org.apache.lucene.analysis.util.ResourceLoader;
+
+/**
+ * The models of one language, loaded for a {@link NLPModelRegistry}. Each analysis stage
+ * loads only the models it runs. Models are read-only; ops are created per stream.
+ * <p>
+ * Models are loaded through {@link OpenNLPOpsFactory}, so a file used by several languages
+ * or registries is loaded once and reported with the other models, under
+ * {@link OpenNLPOpsFactory#registryModelName(String)}. Closing releases them, and the
+ * factory drops a model once no registry holds it.
+ * <p>
+ * The configuration is a properties file of language.parameter=value lines, with the
+ * parameter names of the factories, for example:
+ * <pre>
+ * en.sentenceModel=en-sent.bin
+ * en.tokenizerModel=en-token.bin
+ * en.posTaggerModel=en-pos-maxent.bin
+ * en.nerTaggerModels=en-ner-person.bin,en-ner-location.bin
+ * de.sentenceModel=de-sent.bin
+ * </pre>
+ */
+public class NLPLanguageModels implements Closeable {
+  public static final String SENTENCE_MODEL = "sentenceModel";
+  public static final String TOKENIZER_MODEL = "tokenizerModel";
+  public static final String POS_TAGGER_MODEL = "posTaggerModel";
+  public static final String CHUNKER_MODEL = "chunkerModel";
+  public static final String NER_TAGGER_MODELS = "nerTaggerModels";
+
+  private final String language;
+  private String sentenceFile = null;
+  private SentenceModel sentenceModel = null;
+  private String tokenizerFile = null;
+  private TokenizerModel tokenizerModel = null;
+  private String posFile = null;
+  private POSModel posModel = null;
+  private String chunkerFile = null;
+  private ChunkerModel chunkerModel = null;
+  private final ArrayList<String> nerFiles = new ArrayList<>();
+  private final ArrayList<TokenNameFinderModel> nerModels = new ArrayList<>();
+  private boolean closed = false;
+
+  private NLPLanguageModels(String language) {
+    this.language = language;
+  }
+
+  /** Reads a configuration: language to parameters. */
+  public static Map<String,Map<String,String>> readConfig(InputStream stream) throws IOException {
+    Properties properties = new Properties();
+    properties.load(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    Map<String,Map<String,String>> config = new HashMap<>();
+    for (String name: properties.stringPropertyNames()) {
+      int dot = name.indexOf('.');
+      if (dot <= 0 || dot == name.length() - 1) {
+        throw new IllegalArgumentException("Expected language.parameter, got: " + name);
+      }
+      config.computeIfAbsent(name.substring(0, dot), k -> new HashMap<>())
+          .put(name.substring(dot + 1), properties.getProperty(name).trim());
+    }
+    return config;
+  }
+
+  /** Loads the sentence and tokenizer models of a language; at least one is required. */
+  public static NLPLanguageModels loadTokenizerModels(String language, Map<String,String> config, ResourceLoader loader)
+      throws IOException {
+    String sentenceFile = config.get(SENTENCE_MODEL);
+    String tokenizerFile = config.get(TOKENIZER_MODEL);
+    if (sentenceFile == null && tokenizerFile == null) {
+      throw new IllegalArgumentException("Language " + language + ": at least one of "
+          + SENTENCE_MODEL + " and " + TOKENIZER_MODEL + " must be specified.");
+    }
+    NLPLanguageModels models = new NLPLanguageModels(language);
+    boolean loaded = false;
+    try {
+      if (sentenceFile != null) {
+        models.sentenceModel = (SentenceModel) OpenNLPOpsFactory.retainRegistryModel(NLPModelStats.SENTENCE, sentenceFile, loader);
+        models.sentenceFile = sentenceFile;
+      }
+      if (tokenizerFile != null) {
+        models.tokenizerModel = (TokenizerModel) OpenNLPOpsFactory.retainRegistryModel(NLPModelStats.TOKENIZER, tokenizerFile, loader);
+        models.tokenizerFile = tokenizerFile;
+      }
+      loaded = true;
+    } finally {
+      if (!loaded) {
+        models.close();
+      }
+    }
+    return models;
+  }
+
+  /** Loads the POS tagger, chunker and NER models of a language, all optional. */
+  public static NLPLanguageModels loadTaggerModels(String language, Map<String,String> config, ResourceLoader loader)
+      throws IOException {
+    String posFile = config.get(POS_TAGGER_MODEL);
+    String chunkerFile = config.get(CHUNKER_MODEL);
+    if (chunkerFile != null && posFile == null) {
+      throw new IllegalArgumentException("Language " + language + ": " + CHUNKER_MODEL + " requires " + POS_TAGGER_MODEL);
+    }
+    NLPLanguageModels models = new NLPLanguageModels(language);
+    boolean loaded = false;
+    try {
+      if (posFile != null) {
+        models.posModel = (POSModel) OpenNLPOpsFactory.retainRegistryModel(NLPModelStats.POS, posFile, loader);
+        models.posFile = posFile;
+      }
+      if (chunkerFile != null) {
+        models.chunkerModel = (ChunkerModel) OpenNLPOpsFactory.retainRegistryModel(NLPModelStats.CHUNKER, chunkerFile, loader);
+        models.chunkerFile = chunkerFile;
+      }
+      String files = config.get(NER_TAGGER_MODELS);
+      if (files != null) {
+        for (String nerFile: files.split(",")) {
+          nerFile = nerFile.trim();
+          models.nerModels.add((TokenNameFinderModel) OpenNLPOpsFactory.retainRegistryModel(NLPModelStats.NER, nerFile, loader));
+          models.nerFiles.add(nerFile);
+        }
+      }
+      loaded = true;
+    } finally {
+      if (!loaded) {
+        models.close();
+      }
+    }
+    return models;
+  }
+
+  /** Keys of the models of this language, see {@link NLPModelStats#key}. */
+  public List<String> getModelKeys() {
+    List<String> keys = new ArrayList<>();
+    if (sentenceFile != null) {
+      keys.add(NLPModelStats.key(NLPModelStats.SENTENCE, OpenNLPOpsFactory.registryModelName(sentenceFile)));
+    }
+    if (tokenizerFile != null) {
+      keys.add(NLPModelStats.key(NLPModelStats.TOKENIZER, OpenNLPOpsFactory.registryModelName(tokenizerFile)));
+    }
+    if (posFile != null) {
+      keys.add(NLPModelStats.key(NLPModelStats.POS, OpenNLPOpsFactory.registryModelName(posFile)));
+    }
+    if (chunkerFile != null) {
+      keys.add(NLPModelStats.key(NLPModelStats.CHUNKER, OpenNLPOpsFactory.registryModelName(chunkerFile)));
+    }
+    for (String file: nerFiles) {
+      keys.add(NLPModelStats.key(NLPModelStats.NER, OpenNLPOpsFactory.registryModelName(file)));
+    }
+    return keys;
+  }
+
+  /** Releases the models to {@link OpenNLPOpsFactory}; ops already created keep working. */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (sentenceFile != null) {
+      OpenNLPOpsFactory.releaseRegistryModel(NLPModelStats.SENTENCE, sentenceFile);
+    }
+    if (tokenizerFile != null) {
+      OpenNLPOpsFactory.releaseRegistryModel(NLPModelStats.TOKENIZER, tokenizerFile);
+    }
+    if (posFile != null) {
+      OpenNLPOpsFactory.releaseRegistryModel(NLPModelStats.POS, posFile);
+    }
+    if (chunkerFile != null) {
+      OpenNLPOpsFactory.releaseRegistryModel(NLPModelStats.CHUNKER, chunkerFile);
+    }
+    for (String file: nerFiles) {
+      OpenNLPOpsFactory.releaseRegistryModel(NLPModelStats.NER, file);
+    }
+  }
+
+  public String getLanguage() {
+    return language;
+  }
+
+  public NLPSentenceDetectorOp createSentenceDetector() throws IOException {
+    if (sentenceModel == null) {
+      return new NLPSentenceDetectorOp();
+    }
+    OpenNLPOpsFactory.countRegistryOp(NLPModelStats.SENTENCE, sentenceFile);
+    return new NLPSentenceDetectorOp(sentenceModel);
+  }
+
+  public NLPTokenizerOp createTokenizer() {
+    if (tokenizerModel == null) {
+      return new NLPTokenizerOp();
+    }
+    OpenNLPOpsFactory.countRegistryOp(NLPModelStats.TOKENIZER, tokenizerFile);
+    return new NLPTokenizerOp(tokenizerModel);
+  }
+
+  /** @return null if this language has no POS model */
+  public NLPPOSTaggerOp createPOSTagger() throws IOException {
+    if (posModel == null) {
+      return null;
+    }
+    OpenNLPOpsFactory.countRegistryOp(NLPModelStats.POS, posFile);
+    return new NLPPOSTaggerOp(posModel);
+  }
+
+  /** @return null if this language has no chunker model */
+  public NLPChunkerOp createChunker() throws IOException {
+    if (chunkerModel == null) {
+      return null;
+    }
+    OpenNLPOpsFactory.countRegistryOp(NLPModelStats.CHUNKER, chunkerFile);
+    return new NLPChunkerOp(chunkerModel);
+  }
+
+  /** @return one op per NER model, in configuration order */
+  public ArrayList<NLPNERTaggerOp> createNERTaggers() {
+    ArrayList<NLPNERTaggerOp> ops = new ArrayList<>(nerModels.size());
+    for (int i = 0; i < nerModels.size(); i++) {
+      OpenNLPOpsFactory.countRegistryOp(NLPModelStats.NER, nerFiles.get(i));
+      ops.add(new NLPNERTaggerOp(nerModels.get(i)));
+    }
+    return ops;
+  }
+}
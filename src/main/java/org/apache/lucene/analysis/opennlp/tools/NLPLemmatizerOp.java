@@ -18,17 +18,38 @@ package org.apache.lucene.analysis.opennlp.tools;
  */
 
 import java.io.InputStream;
+import java.util.Locale;
 
 import opennlp.tools.lemmatizer.SimpleLemmatizer;
 
 public class NLPLemmatizerOp {
   private final SimpleLemmatizer lemmatizer;
+  private final NLPCompiledLemmaDictionary dictionary;
 
   public NLPLemmatizerOp(InputStream dictionary) {
     lemmatizer = new SimpleLemmatizer(dictionary);
+    this.dictionary = null;
+  }
+
+  /** Lemmatizes with a shared compiled dictionary, with the same rules as SimpleLemmatizer. */
+  public NLPLemmatizerOp(NLPCompiledLemmaDictionary dictionary) {
+    lemmatizer = null;
+    this.dictionary = dictionary;
   }
 
   public String lemmatize(String word, String postag) {
-    return lemmatizer.lemmatize(word, postag);
+    if (lemmatizer != null) {
+      return lemmatizer.lemmatize(word, postag);
+    }
+    // proper nouns are looked up and kept as is, other words are lowercased
+    boolean constantTag = "NNP".equals(postag) || "NP00000".equals(postag);
+    String lemma = dictionary.get(constantTag ? word : word.toLowerCase(Locale.ROOT), postag);
+    if (lemma != null) {
+      return lemma;
+    }
+    if (constantTag || word.toUpperCase(Locale.ROOT).equals(word)) {
+      return word;
+    }
+    return word.toLowerCase(Locale.ROOT);
   }
 }
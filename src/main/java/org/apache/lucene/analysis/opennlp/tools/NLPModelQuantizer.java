@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.util.Locale;
+
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.ml.model.MaxentModel;
+
+/**
+ * Replaces the double parameters of a maxent model, in place, by floats or by 16/8-bit
+ * fixed point values with one scale per outcome. Parameters are expanded back to doubles
+ * in a per-thread buffer as the model reads them, so every tagger keeps working unchanged.
+ * <p>
+ * The outcome index arrays are kept, so the parameter storage of each predicate shrinks
+ * from 12 to 8 (float), 6 (int16) or 5 (int8) bytes per parameter.
+ */
+public class NLPModelQuantizer {
+
+  public enum Quantization {
+    NONE, FLOAT, INT16, INT8;
+
+    public static Quantization parse(String name) {
+      return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+  }
+
+  private static final ThreadLocal<double[]> buffers = ThreadLocal.withInitial(() -> new double[16]);
+
+  private NLPModelQuantizer() {}
+
+  /**
+   * Quantizes the parameters of a model.
+   * @return the number of parameters quantized
+   * @throws IllegalArgumentException if the model does not keep its parameters in contexts (e.g. is not maxent)
+   */
+  public static long quantize(MaxentModel model, Quantization quantization) {
+    if (quantization == Quantization.NONE) {
+      return 0;
+    }
+    if (!(model instanceof AbstractModel) || !(((AbstractModel) model).getDataStructures()[0] instanceof Context[])) {
+      throw new IllegalArgumentException("Only maxent and perceptron models can be quantized");
+    }
+    // the evaluation parameters themselves, not a copy
+    Context[] contexts = (Context[]) ((AbstractModel) model).getDataStructures()[0];
+    double[] scales = new double[model.getNumOutcomes()];
+    if (quantization != Quantization.FLOAT) {
+      int maxValue = quantization == Quantization.INT16 ? Short.MAX_VALUE : Byte.MAX_VALUE;
+      for (Context context: contexts) {
+        int[] outcomes = context.getOutcomes();
+        double[] parameters = context.getParameters();
+        for (int i = 0; i < outcomes.length; i++) {
+          scales[outcomes[i]] = Math.max(scales[outcomes[i]], Math.abs(parameters[i]));
+        }
+      }
+      for (int i = 0; i < scales.length; i++) {
+        scales[i] = scales[i] == 0 ? 1 : scales[i] / maxValue;
+      }
+    }
+    long count = 0;
+    for (int i = 0; i < contexts.length; i++) {
+      Context context = contexts[i];
+      if (context instanceof QuantizedContext) {
+        continue;
+      }
+      int[] outcomes = context.getOutcomes();
+      double[] parameters = context.getParameters();
+      switch (quantization) {
+        case FLOAT:
+          contexts[i] = new FloatContext(outcomes, parameters);
+          break;
+        case INT16:
+          contexts[i] = new ShortContext(outcomes, parameters, scales);
+          break;
+        default:
+          contexts[i] = new ByteContext(outcomes, parameters, scales);
+          break;
+      }
+      count += outcomes.length;
+    }
+    return count;
+  }
+
+  /**
+   * A context whose parameters are expanded into a per-thread buffer, valid until the
+   * next call on the same thread. The buffer may be longer than the outcome array.
+   */
+  abstract static class QuantizedContext extends Context {
+    QuantizedContext(int[] outcomes) {
+      super(outcomes, null);
+    }
+
+    @Override
+    public double[] getParameters() {
+      int length = outcomes.length;
+      double[] buffer = buffers.get();
+      if (buffer.length < length) {
+        buffer = new double[Math.max(length, buffer.length * 2)];
+        buffers.set(buffer);
+      }
+      expand(buffer);
+      return buffer;
+    }
+
+    abstract void expand(double[] buffer);
+  }
+
+  static final class FloatContext extends QuantizedContext {
+    private final float[] values;
+
+    FloatContext(int[] outcomes, double[] parameters) {
+      super(outcomes);
+      values = new float[outcomes.length];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = (float) parameters[i];
+      }
+    }
+
+    @Override
+    void expand(double[] buffer) {
+      for (int i = 0; i < values.length; i++) {
+        buffer[i] = values[i];
+      }
+    }
+  }
+
+  static final class ShortContext extends QuantizedContext {
+    private final short[] values;
+    private final double[] scales;
+
+    ShortContext(int[] outcomes, double[] parameters, double[] scales) {
+      super(outcomes);
+      this.scales = scales;
+      values = new short[outcomes.length];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = (short) Math.round(parameters[i] / scales[outcomes[i]]);
+      }
+    }
+
+    @Override
+    void expand(double[] buffer) {
+      for (int i = 0; i < values.length; i++) {
+        buffer[i] = values[i] * scales[outcomes[i]];
+      }
+    }
+  }
+
+  static final class ByteContext extends QuantizedContext {
+    private final byte[] values;
+    private final double[] scales;
+
+    ByteContext(int[] outcomes, double[] parameters, double[] scales) {
+      super(outcomes);
+      this.scales = scales;
+      values = new byte[outcomes.length];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = (byte) Math.round(parameters[i] / scales[outcomes[i]]);
+      }
+    }
+
+    @Override
+    void expand(double[] buffer) {
+      for (int i = 0; i < values.length; i++) {
+        buffer[i] = values[i] * scales[outcomes[i]];
+      }
+    }
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.util.IOUtils;
+
+/**
+ * Models of several languages, each loaded on first use and dropped once unused for longer
+ * than the idle timeout, so memory follows the languages actually analyzed. Dropped models
+ * are freed once the streams that last used them move to other models; models that are
+ * {@link Closeable} are closed when dropped.
+ * <p>
+ * Idle models are dropped by a daemon thread shared by all registries, which checks every
+ * tenth of the idle timeout (at most once a second), so languages no longer analyzed at all
+ * are dropped too. {@link #close()} drops the models of a registry and stops its checks.
+ * The same thread releases the models of a registry that was never closed once it is no
+ * longer referenced, as happens to the analysis factories of a Solr schema when its core
+ * closes or reloads, so no model stays held for a registry that is gone.
+ * Thread-safe: a language is loaded once even under concurrent first use.
+ */
+public class NLPModelRegistry<M> implements Closeable {
+
+  /** Loads the models of a language. */
+  public interface Loader<M> {
+    M load(String language) throws IOException;
+  }
+
+  private static final long MIN_SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static ScheduledThreadPoolExecutor sweeper = null;
+
+  private final Set<String> languages;
+  private final String defaultLanguage;
+  private final Loader<M> loader;
+  private final long idleNanos;
+  private final Map<String,Entry<M>> entries = new ConcurrentHashMap<>();
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final Sweep<M> sweep;
+  private volatile boolean closed = false;
+
+  private static final class Entry<M> {
+    M models;
+    volatile long lastUsed;
+  }
+
+  // holds its registry weakly, so that a registry nobody closed can still be collected, and
+  // its entries strongly, so that their models can be released once it has been
+  private static final class Sweep<M> implements Runnable {
+    private final WeakReference<NLPModelRegistry<M>> registry;
+    private final Map<String,Entry<M>> entries;
+    private ScheduledFuture<?> future;
+
+    Sweep(NLPModelRegistry<M> registry, Map<String,Entry<M>> entries) {
+      this.registry = new WeakReference<>(registry);
+      this.entries = entries;
+    }
+
+    synchronized void schedule(long intervalNanos) {
+      if (future == null) {
+        future = getSweeper().scheduleWithFixedDelay(this, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+
+    synchronized void cancel() {
+      if (future != null) {
+        future.cancel(false);
+      }
+    }
+
+    @Override
+    public void run() {
+      NLPModelRegistry<M> target = registry.get();
+      if (target != null) {
+        target.evictIdle();
+      } else {
+        cancel();
+        dropAll(entries);
+      }
+    }
+  }
+
+  /**
+   * @param languages the configured languages
+   * @param defaultLanguage language used for unknown or unconfigured languages, or null to reject them
+   * @param idleMillis idle time after which the models of a language are dropped, 0 to keep them
+   */
+  public NLPModelRegistry(Set<String> languages, String defaultLanguage, Loader<M> loader, long idleMillis) {
+    if (defaultLanguage != null && !languages.contains(defaultLanguage)) {
+      throw new IllegalArgumentException("Default language has no models: " + defaultLanguage);
+    }
+    this.languages = languages;
+    this.defaultLanguage = defaultLanguage;
+    this.loader = loader;
+    this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+    // scheduled with the first load: a registry that never loads holds nothing to release
+    sweep = new Sweep<>(this, entries);
+  }
+
+  private static synchronized ScheduledThreadPoolExecutor getSweeper() {
+    if (sweeper == null) {
+      sweeper = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "NLPModelRegistry-sweeper");
+        thread.setDaemon(true);
+        return thread;
+      });
+      sweeper.setRemoveOnCancelPolicy(true);
+    }
+    return sweeper;
+  }
+
+  /**
+   * Stops the thread dropping idle models, for tests. Registries created so far keep their models
+   * until closed; the thread is restarted by the next registry with an idle timeout.
+   */
+  public static synchronized void shutdownSweeper() {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+      sweeper = null;
+    }
+  }
+
+  /**
+   * @return the configured language to use for this one: itself if configured, else the default language
+   * @throws IllegalArgumentException if the language is not configured and there is no default language
+   */
+  public String resolve(String language) {
+    if (language != null && languages.contains(language)) {
+      return language;
+    }
+    if (defaultLanguage == null) {
+      throw new IllegalArgumentException("No models for language: " + language);
+    }
+    return defaultLanguage;
+  }
+
+  /**
+   * Models of a configured language, loading them if needed.
+   * @throws AlreadyClosedException if the registry is closed
+   */
+  public M get(String language) throws IOException {
+    Entry<M> entry = entries.computeIfAbsent(language, k -> new Entry<>());
+    entry.lastUsed = System.nanoTime();
+    synchronized (entry) {
+      if (entry.models == null) {
+        if (closed) {
+          throw new AlreadyClosedException("Model registry is closed");
+        }
+        entry.models = loader.load(language);
+        loads.increment();
+        // without an idle timeout, the checks only look for a registry dropped unclosed
+        sweep.schedule(Math.max(MIN_SWEEP_INTERVAL_NANOS, idleNanos / 10));
+      }
+      return entry.models;
+    }
+  }
+
+  /** Drops the models unused for longer than the idle timeout. Run periodically in the background. */
+  public void evictIdle() {
+    if (idleNanos == 0) {
+      return;
+    }
+    long now = System.nanoTime();
+    for (Entry<M> entry: entries.values()) {
+      if (now - entry.lastUsed > idleNanos) {
+        synchronized (entry) {
+          if (entry.models != null && now - entry.lastUsed > idleNanos) {
+            drop(entry);
+            evictions.increment();
+          }
+        }
+      }
+    }
+  }
+
+  private static <M> void drop(Entry<M> entry) {
+    if (entry.models instanceof Closeable) {
+      IOUtils.closeWhileHandlingException((Closeable) entry.models);
+    }
+    entry.models = null;
+  }
+
+  private static <M> void dropAll(Map<String,Entry<M>> entries) {
+    for (Entry<M> entry: entries.values()) {
+      synchronized (entry) {
+        if (entry.models != null) {
+          drop(entry);
+        }
+      }
+    }
+  }
+
+  /** Stops dropping idle models in the background, and drops all models; later loads fail. */
+  @Override
+  public void close() {
+    closed = true;
+    sweep.cancel();
+    dropAll(entries);
+  }
+
+  public Set<String> getLanguages() {
+    return Collections.unmodifiableSet(languages);
+  }
+
+  /** Languages whose models are currently loaded. */
+  public List<String> getLoadedLanguages() {
+    List<String> loaded = new ArrayList<>();
+    for (Map.Entry<String,Entry<M>> entry: entries.entrySet()) {
+      synchronized (entry.getValue()) {
+        if (entry.getValue().models != null) {
+          loaded.add(entry.getKey());
+        }
+      }
+    }
+    Collections.sort(loaded);
+    return loaded;
+  }
+
+  /** Models currently loaded, in no particular order. */
+  public List<M> getLoadedModels() {
+    List<M> loaded = new ArrayList<>();
+    for (Entry<M> entry: entries.values()) {
+      synchronized (entry) {
+        if (entry.models != null) {
+          loaded.add(entry.models);
+        }
+      }
+    }
+    return loaded;
+  }
+
+  public long getLoadCount() {
+    return loads.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+}
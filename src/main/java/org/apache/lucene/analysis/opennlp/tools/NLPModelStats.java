@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of a model or dictionary cached by {@link OpenNLPOpsFactory}:
+ * when and how fast it was loaded, how many ops were created on it, and an
+ * estimate of its heap usage, computed on first request.
+ */
+public class NLPModelStats {
+  public static final String SENTENCE = "sentence";
+  public static final String TOKENIZER = "tokenizer";
+  public static final String POS = "pos";
+  public static final String CHUNKER = "chunker";
+  public static final String NER = "ner";
+  public static final String LEMMAS = "lemmas";
+  public static final String GAZETTEER = "gazetteer";
+
+  private final String kind;
+  private final String name;
+  private final Object model;
+  private final long loadedAt;
+  private final long loadNanos;
+  private final LongAdder opCount = new LongAdder();
+  private volatile long ramBytesUsed = -1;
+
+  NLPModelStats(String kind, String name, Object model, long loadNanos) {
+    this.kind = kind;
+    this.name = name;
+    this.model = model;
+    this.loadNanos = loadNanos;
+    this.loadedAt = System.currentTimeMillis();
+  }
+
+  /** Key of a model of the given kind and resource name, as returned by the factories' getModelKeys(). */
+  public static String key(String kind, String name) {
+    return kind + ":" + name;
+  }
+
+  public String getKey() {
+    return key(kind, name);
+  }
+
+  public String getKind() {
+    return kind;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /** Wall clock time of the load, in milliseconds since the epoch. */
+  public long getLoadedAt() {
+    return loadedAt;
+  }
+
+  public long getLoadTimeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(loadNanos);
+  }
+
+  /** Number of ops created on this model since it was loaded. */
+  public long getOpCount() {
+    return opCount.sum();
+  }
+
+  void countOp() {
+    opCount.increment();
+  }
+
+  /** Estimated heap retained by the model, see {@link NLPRamEstimator}. */
+  public long getRamBytesUsed() {
+    long bytes = ramBytesUsed;
+    if (bytes < 0) {
+      bytes = NLPRamEstimator.sizeOf(model);
+      ramBytesUsed = bytes;
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cheap test for whether a word array can contain an entity, run before a NER model
+ * so that the maxent evaluation is skipped for text with no candidate.
+ * <p>
+ * Specification: one or more heuristics joined with '+'. The filter passes if any of them fires.
+ * <ul>
+ * <li>capitalized: a word with an upper case letter, not counting the first letter of a sentence</li>
+ * <li>digit: a word with a digit</li>
+ * <li>triggers:filename: a word from the trigger file, one word per line</li>
+ * </ul>
+ * The word-level signals are computed once per sentence by {@link #scan(String[])} and
+ * shared by all prefilters. Counts evaluated and skipped sentences. Thread-safe.
+ */
+public class NLPNERPrefilter {
+  public static final String CAPITALIZED = "capitalized";
+  public static final String DIGIT = "digit";
+  public static final String TRIGGERS = "triggers:";
+  public static final String NONE = "none";
+
+  private static final String SENTENCE_BREAK = "[.?!]";
+
+  /** Word-level signals of one sentence. */
+  public static final class Signals {
+    final String[] words;
+    final boolean capitalized;
+    final boolean digit;
+
+    private Signals(String[] words, boolean capitalized, boolean digit) {
+      this.words = words;
+      this.capitalized = capitalized;
+      this.digit = digit;
+    }
+
+    /** The scanned sentence. */
+    public String[] getWords() {
+      return words;
+    }
+  }
+
+  public static Signals scan(String[] words) {
+    boolean capitalized = false;
+    boolean digit = false;
+    boolean sentenceStart = true;
+    for (String word : words) {
+      for (int i = 0; i < word.length() && !(capitalized && digit); i++) {
+        char c = word.charAt(i);
+        if (Character.isDigit(c)) {
+          digit = true;
+        } else if (Character.isUpperCase(c) && (i > 0 || !sentenceStart)) {
+          capitalized = true;
+        }
+      }
+      if (capitalized && digit) {
+        break;
+      }
+      sentenceStart = word.length() == 1 && word.matches(SENTENCE_BREAK);
+    }
+    return new Signals(words, capitalized, digit);
+  }
+
+  private final String specification;
+  private final boolean capitalized;
+  private final boolean digit;
+  private final String triggersFile;
+  private Set<String> triggers = null;
+
+  private final LongAdder evaluated = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+
+  /** @param specification see the class documentation */
+  public NLPNERPrefilter(String specification) {
+    this.specification = specification;
+    boolean capitalized = false;
+    boolean digit = false;
+    String triggersFile = null;
+    for (String heuristic : specification.split("\\+")) {
+      heuristic = heuristic.trim();
+      if (heuristic.equals(CAPITALIZED)) {
+        capitalized = true;
+      } else if (heuristic.equals(DIGIT)) {
+        digit = true;
+      } else if (heuristic.startsWith(TRIGGERS) && heuristic.length() > TRIGGERS.length()) {
+        triggersFile = heuristic.substring(TRIGGERS.length());
+      } else {
+        throw new IllegalArgumentException("Unknown NER prefilter: " + heuristic);
+      }
+    }
+    this.capitalized = capitalized;
+    this.digit = digit;
+    this.triggersFile = triggersFile;
+  }
+
+  /** Trigger file named by the specification, or null. Must be loaded with {@link #loadTriggers}. */
+  public String getTriggersFile() {
+    return triggersFile;
+  }
+
+  public void loadTriggers(InputStream in) throws IOException {
+    Set<String> words = new HashSet<>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      if (!line.isEmpty() && !line.startsWith("#")) {
+        words.add(line.toLowerCase(Locale.ROOT));
+      }
+    }
+    triggers = words;
+  }
+
+  /** Returns true if the NER model should run on the scanned sentence. */
+  public boolean accept(Signals signals) {
+    evaluated.increment();
+    if ((capitalized && signals.capitalized) || (digit && signals.digit) || hasTrigger(signals.words)) {
+      return true;
+    }
+    skipped.increment();
+    return false;
+  }
+
+  private boolean hasTrigger(String[] words) {
+    if (triggers == null) {
+      return false;
+    }
+    for (String word : words) {
+      if (triggers.contains(word.toLowerCase(Locale.ROOT))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Number of sentences tested. */
+  public long getEvaluatedCount() {
+    return evaluated.sum();
+  }
+
+  /** Number of sentences on which the NER model was skipped. */
+  public long getSkippedCount() {
+    return skipped.sum();
+  }
+
+  @Override
+  public String toString() {
+    return specification;
+  }
+}
@@ -17,6 +17,7 @@
 
 package org.apache.lucene.analysis.opennlp.tools;
 
+import opennlp.tools.ml.BeamSearch;
 import opennlp.tools.namefind.NameFinderME;
 import opennlp.tools.namefind.TokenNameFinder;
 import opennlp.tools.namefind.TokenNameFinderModel;
@@ -28,9 +29,44 @@ import opennlp.tools.util.Span;
  */
 public class NLPNERTaggerOp {
   private final TokenNameFinder nameFinder;
+  private final NLPNERPrefilter prefilter;
   
   public NLPNERTaggerOp(TokenNameFinderModel model) {
+    this(model, null);
+  }
+  
+  public NLPNERTaggerOp(TokenNameFinderModel model, NLPNERPrefilter prefilter) {
     this.nameFinder = new NameFinderME(model);
+    this.prefilter = prefilter;
+  }
+  
+  /**
+   * @param sharedFeatures feature generator shared with other ops whose models have
+   *                       the same feature generator definition
+   */
+  // the deprecated constructor is the only one taking a feature generator: the others build their own
+  @SuppressWarnings("deprecation")
+  public NLPNERTaggerOp(TokenNameFinderModel model, NLPNERPrefilter prefilter, NLPSharedFeatureGenerator sharedFeatures) {
+    this.nameFinder = new NameFinderME(model, sharedFeatures, beamSize(model),
+        model.getFactory().createSequenceCodec().createSequenceValidator());
+    this.prefilter = prefilter;
+  }
+  
+  // beam size from the model manifest, as NameFinderME(model) reads it
+  private static int beamSize(TokenNameFinderModel model) {
+    String beamSize = model.getManifestProperty(BeamSearch.BEAM_SIZE_PARAMETER);
+    return beamSize == null ? NameFinderME.DEFAULT_BEAM_SIZE : Integer.parseInt(beamSize);
+  }
+  
+  /** Wrap any name finder, such as a {@link NLPGazetteer}. */
+  public NLPNERTaggerOp(TokenNameFinder nameFinder) {
+    this.nameFinder = nameFinder;
+    this.prefilter = null;
+  }
+  
+  /** Prefilter deciding whether to run this tagger at all, or null. */
+  public NLPNERPrefilter getPrefilter() {
+    return prefilter;
   }
   
   public synchronized Span[] getNames(String[] words) {
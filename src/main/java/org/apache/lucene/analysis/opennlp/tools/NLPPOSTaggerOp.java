@@ -21,6 +21,7 @@ import java.io.IOException;
 
 import opennlp.tools.postag.POSModel;
 import opennlp.tools.postag.POSTagger;
+import opennlp.tools.postag.POSTaggerFactory;
 import opennlp.tools.postag.POSTaggerME;
 
 /**
@@ -30,12 +31,47 @@ import opennlp.tools.postag.POSTaggerME;
 
 public class NLPPOSTaggerOp {
   private POSTagger tagger = null;
+  private NLPSequenceDecoder decoder = null;
+  private NLPBatchPOSTagger batchTagger = null;
   
   public NLPPOSTaggerOp(POSModel model) throws IOException {
     tagger = new POSTaggerME(model);
   }
   
+  /**
+   * @param beamSize beam size for decoding; 1 selects greedy decoding.
+   *                 Only supported for maxent/perceptron models.
+   */
+  public NLPPOSTaggerOp(POSModel model, int beamSize) throws IOException {
+    POSTaggerFactory factory = model.getFactory();
+    decoder = new NLPSequenceDecoder(model.getPosModel(), beamSize,
+        factory.getPOSContextGenerator(POSTaggerME.DEFAULT_BEAM_SIZE), factory.getSequenceValidator());
+  }
+  
+  /** Tags through a batching service shared with other ops. */
+  public NLPPOSTaggerOp(NLPBatchPOSTagger batchTagger) {
+    this.batchTagger = batchTagger;
+  }
+  
   public synchronized String[] getPOSTags(String[] words) {
+    if (batchTagger != null) {
+      return batchTagger.tag(words);
+    }
+    if (decoder != null) {
+      return decoder.decode(words, null, null);
+    }
     return tagger.tag(words);
   }
+  
+  /** Tags several sentences; with a batching service, all are submitted before waiting. */
+  public synchronized String[][] getPOSTags(String[][] sentences) {
+    if (batchTagger != null) {
+      return batchTagger.tag(sentences);
+    }
+    String[][] tags = new String[sentences.length][];
+    for (int i = 0; i < sentences.length; i++) {
+      tags[i] = getPOSTags(sentences[i]);
+    }
+    return tags;
+  }
 }
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.Buffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Estimates the heap retained by a model object graph by walking its fields with reflection.
+ * Each object is counted once; classes, class loaders, threads and direct buffers are not followed.
+ * Fields that cannot be made accessible are skipped, so the result is a lower bound.
+ * Slow: meant for administrative reporting, not for the analysis path.
+ */
+public class NLPRamEstimator {
+  private static final Map<Class<?>,List<Field>> referenceFields = new ConcurrentHashMap<>();
+
+  private NLPRamEstimator() {}
+
+  public static long sizeOf(Object root) {
+    if (root == null) {
+      return 0;
+    }
+    Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    Deque<Object> stack = new ArrayDeque<>();
+    stack.push(root);
+    long size = 0;
+    while (!stack.isEmpty()) {
+      Object obj = stack.pop();
+      if (obj == null || obj instanceof Class || obj instanceof ClassLoader || obj instanceof Thread || !seen.add(obj)) {
+        continue;
+      }
+      Class<?> clazz = obj.getClass();
+      if (obj instanceof Buffer && ((Buffer) obj).isDirect()) {
+        // off-heap or mapped: only the buffer object is on the heap
+        size += RamUsageEstimator.shallowSizeOfInstance(clazz);
+        continue;
+      }
+      if (clazz.isArray()) {
+        size += RamUsageEstimator.shallowSizeOf(obj);
+        if (!clazz.getComponentType().isPrimitive()) {
+          for (int i = 0, len = Array.getLength(obj); i < len; i++) {
+            stack.push(Array.get(obj, i));
+          }
+        }
+        continue;
+      }
+      size += RamUsageEstimator.shallowSizeOfInstance(clazz);
+      for (Field field: getReferenceFields(clazz)) {
+        try {
+          stack.push(field.get(obj));
+        } catch (IllegalAccessException e) {
+          // not counted
+        }
+      }
+    }
+    return size;
+  }
+
+  private static List<Field> getReferenceFields(Class<?> clazz) {
+    return referenceFields.computeIfAbsent(clazz, c -> {
+      List<Field> fields = new ArrayList<>();
+      for (Class<?> cls = c; cls != null; cls = cls.getSuperclass()) {
+        for (Field field: cls.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+            continue;
+          }
+          try {
+            field.setAccessible(true);
+            fields.add(field);
+          } catch (RuntimeException e) {
+            // inaccessible (security manager or module boundary): not counted
+          }
+        }
+      }
+      return fields;
+    });
+  }
+}
@@ -26,21 +26,43 @@ import opennlp.tools.util.Span;
 /**
  * Supply OpenNLP Sentence Detector tool
  * Requires binary models from OpenNLP project on SourceForge.
+ * Alternatively splits with {@link NLPSentenceRules}, or not at all.
  */
 public class NLPSentenceDetectorOp {
   private final SentenceDetectorME sentenceSplitter;
+  private final NLPSentenceRules rules;
   
   public NLPSentenceDetectorOp(SentenceModel model) throws IOException {
     sentenceSplitter  = new SentenceDetectorME(model);
+    rules = null;
+  }
+  
+  public NLPSentenceDetectorOp(NLPSentenceRules rules) {
+    sentenceSplitter = null;
+    this.rules = rules;
   }
   
   public NLPSentenceDetectorOp() {
     sentenceSplitter = null;
+    rules = null;
+  }
+  
+  /** Only the model needs a String, the rules scan the characters directly. */
+  public Span[] splitSentences(char[] text) {
+    if (sentenceSplitter != null) {
+      return splitSentences(new String(text));
+    } else if (rules != null) {
+      return rules.split(text, 0, text.length);
+    } else {
+      return new Span[] { new Span(0, text.length) };
+    }
   }
   
   public synchronized Span[] splitSentences(String line) {
     if (sentenceSplitter != null) {
       return sentenceSplitter.sentPosDetect(line);
+    } else if (rules != null) {
+      return rules.split(line.toCharArray(), 0, line.length());
     } else {
       Span[] shorty = new Span[1];
       shorty[0] = new Span(0, line.length());
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import opennlp.tools.util.Span;
+import org.apache.lucene.analysis.util.CharArraySet;
+
+/**
+ * Rule-based sentence splitter for text with clean punctuation. Scans the characters
+ * directly, without building a String or running a model.
+ * <p>
+ * A sentence ends after a run of terminal punctuation (. ! ?) and any closing quotes or
+ * brackets, when followed by whitespace or the end of the text, unless the next word starts
+ * with a lowercase letter. A single period does not end a sentence after an abbreviation
+ * or a one-letter initial. A blank line always ends a sentence.
+ * <p>
+ * Abbreviations are matched case-insensitively, with or without their final period.
+ * Spans are trimmed of surrounding whitespace, like the ones of SentenceDetectorME.
+ * Instances are immutable and thread-safe.
+ */
+public class NLPSentenceRules {
+  /** Used when no abbreviation list is configured. */
+  public static final List<String> DEFAULT_ABBREVIATIONS = Arrays.asList(
+      "mr", "mrs", "ms", "dr", "prof", "sr", "jr", "st", "mt", "gen", "gov", "sen", "rep", "rev",
+      "vs", "etc", "e.g", "i.e", "cf", "al", "approx", "inc", "ltd", "co", "corp", "no", "nos", "fig", "vol", "pp",
+      "jan", "feb", "mar", "apr", "jun", "jul", "aug", "sep", "sept", "oct", "nov", "dec");
+  
+  private final CharArraySet abbreviations;
+  
+  public NLPSentenceRules() {
+    this(new CharArraySet(DEFAULT_ABBREVIATIONS, true));
+  }
+  
+  /** @param abbreviations should ignore case, entries with or without the final period */
+  public NLPSentenceRules(CharArraySet abbreviations) {
+    this.abbreviations = abbreviations;
+  }
+  
+  public Span[] split(char[] text, int start, int end) {
+    List<Span> sentences = new ArrayList<>();
+    int sentenceStart = skipWhitespace(text, start, end);
+    int i = sentenceStart;
+    while (i < end) {
+      char c = text[i];
+      if (isTerminal(c)) {
+        int j = i + 1;
+        while (j < end && isTerminal(text[j])) {
+          j++;
+        }
+        boolean singlePeriod = c == '.' && j == i + 1;
+        while (j < end && isCloser(text[j])) {
+          j++;
+        }
+        if ((j == end || Character.isWhitespace(text[j]))
+            && !(singlePeriod && isAbbreviation(text, sentenceStart, i))
+            && !nextStartsLowercase(text, j, end)) {
+          sentences.add(new Span(sentenceStart - start, j - start));
+          sentenceStart = skipWhitespace(text, j, end);
+          i = sentenceStart;
+        } else {
+          i = j;
+        }
+      } else if (c == '\n' && isBlankLine(text, i + 1, end)) {
+        int sentenceEnd = trimEnd(text, sentenceStart, i);
+        if (sentenceEnd > sentenceStart) {
+          sentences.add(new Span(sentenceStart - start, sentenceEnd - start));
+        }
+        sentenceStart = skipWhitespace(text, i + 1, end);
+        i = sentenceStart;
+      } else {
+        i++;
+      }
+    }
+    int sentenceEnd = trimEnd(text, sentenceStart, end);
+    if (sentenceEnd > sentenceStart) {
+      sentences.add(new Span(sentenceStart - start, sentenceEnd - start));
+    }
+    return sentences.toArray(new Span[sentences.size()]);
+  }
+  
+  // word before the period at 'period', without leading quotes or brackets
+  private boolean isAbbreviation(char[] text, int sentenceStart, int period) {
+    int wordStart = period;
+    while (wordStart > sentenceStart && !Character.isWhitespace(text[wordStart - 1])) {
+      wordStart--;
+    }
+    while (wordStart < period && isOpener(text[wordStart])) {
+      wordStart++;
+    }
+    int length = period - wordStart;
+    if (length == 0) {
+      return false;
+    }
+    if (length == 1 && Character.isLetter(text[wordStart])) {
+      return true;
+    }
+    return abbreviations.contains(text, wordStart, length) || abbreviations.contains(text, wordStart, length + 1);
+  }
+  
+  private static boolean nextStartsLowercase(char[] text, int from, int end) {
+    int next = skipWhitespace(text, from, end);
+    while (next < end && isOpener(text[next])) {
+      next++;
+    }
+    return next < end && Character.isLowerCase(text[next]);
+  }
+  
+  // only horizontal whitespace up to the next line break
+  private static boolean isBlankLine(char[] text, int from, int end) {
+    for (int i = from; i < end; i++) {
+      char c = text[i];
+      if (c == '\n') {
+        return true;
+      }
+      if (!Character.isWhitespace(c)) {
+        return false;
+      }
+    }
+    return false;
+  }
+  
+  private static int skipWhitespace(char[] text, int from, int end) {
+    while (from < end && Character.isWhitespace(text[from])) {
+      from++;
+    }
+    return from;
+  }
+  
+  private static int trimEnd(char[] text, int start, int end) {
+    while (end > start && Character.isWhitespace(text[end - 1])) {
+      end--;
+    }
+    return end;
+  }
+  
+  private static boolean isTerminal(char c) {
+    return c == '.' || c == '!' || c == '?' || c == '\u2026';
+  }
+  
+  private static boolean isCloser(char c) {
+    return c == '"' || c == '\'' || c == ')' || c == ']' || c == '}'
+        || c == '\u201D' || c == '\u2019' || c == '\u00BB';
+  }
+  
+  private static boolean isOpener(char c) {
+    return c == '"' || c == '\'' || c == '(' || c == '[' || c == '{'
+        || c == '\u201C' || c == '\u2018' || c == '\u00AB';
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.util.Arrays;
+import java.util.List;
+
+import opennlp.tools.ml.BeamSearch;
+import opennlp.tools.ml.model.MaxentModel;
+import opennlp.tools.util.BeamSearchContextGenerator;
+import opennlp.tools.util.Sequence;
+import opennlp.tools.util.SequenceValidator;
+
+/**
+ * Sequence decoding over a maxent model with an explicit beam size,
+ * used when a tagger is configured with a beam size other than the model default.
+ * Beam size 1 is decoded greedily without the beam search machinery:
+ * each position takes the most probable outcome that the validator accepts.
+ * Not thread-safe: the context generator may keep a cache.
+ */
+class NLPSequenceDecoder {
+  private final MaxentModel model;
+  private final BeamSearch<String> beamSearch;
+  private final BeamSearchContextGenerator<String> contextGenerator;
+  private final SequenceValidator<String> validator;
+
+  NLPSequenceDecoder(MaxentModel model, int beamSize,
+                     BeamSearchContextGenerator<String> contextGenerator, SequenceValidator<String> validator) {
+    if (model == null) {
+      throw new IllegalArgumentException("Beam size can only be configured for maxent or perceptron models");
+    }
+    if (beamSize < 1) {
+      throw new IllegalArgumentException("Beam size must be at least 1: " + beamSize);
+    }
+    this.model = model;
+    this.beamSearch = beamSize == 1 ? null : new BeamSearch<>(beamSize, model);
+    this.contextGenerator = contextGenerator;
+    this.validator = validator;
+  }
+
+  /**
+   * @param probs if not null, receives the probability of each outcome
+   */
+  String[] decode(String[] words, Object[] additionalContext, double[] probs) {
+    if (beamSearch != null) {
+      Sequence sequence = beamSearch.bestSequence(words, additionalContext, contextGenerator, validator);
+      List<String> outcomes = sequence.getOutcomes();
+      if (probs != null) {
+        sequence.getProbs(probs);
+      }
+      return outcomes.toArray(new String[outcomes.size()]);
+    }
+    String[] outcomes = new String[words.length];
+    for (int i = 0; i < words.length; i++) {
+      double[] scores = model.eval(contextGenerator.getContext(i, words, outcomes, additionalContext));
+      int best = bestValid(i, words, outcomes, scores);
+      outcomes[i] = model.getOutcome(best);
+      if (probs != null) {
+        probs[i] = scores[best];
+      }
+    }
+    return outcomes;
+  }
+
+  // most probable outcome accepted by the validator, or the most probable one if none is
+  private int bestValid(int i, String[] words, String[] outcomes, double[] scores) {
+    boolean[] tried = new boolean[scores.length];
+    String[] prior = null;
+    for (int n = 0; n < scores.length; n++) {
+      int best = -1;
+      for (int j = 0; j < scores.length; j++) {
+        if (!tried[j] && (best == -1 || scores[j] > scores[best])) {
+          best = j;
+        }
+      }
+      if (validator == null) {
+        return best;
+      }
+      if (prior == null) {
+        prior = Arrays.copyOf(outcomes, i);
+      }
+      if (validator.validSequence(i, words, prior, model.getOutcome(best))) {
+        return best;
+      }
+      tried[best] = true;
+    }
+    int best = 0;
+    for (int j = 1; j < scores.length; j++) {
+      if (scores[j] > scores[best]) {
+        best = j;
+      }
+    }
+    return best;
+  }
+}
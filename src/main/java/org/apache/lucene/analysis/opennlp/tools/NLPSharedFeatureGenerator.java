@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import opennlp.tools.util.featuregen.AdaptiveFeatureGenerator;
+
+/**
+ * Feature generator shared by several name finders built from the same feature generator
+ * definition. The token-level features of each position are computed once per word array,
+ * by the first name finder that asks, and replayed to the others.
+ * <p>
+ * Like OpenNLP's CachedFeatureGenerator, this relies on the generated features depending only
+ * on the tokens and the position, not on the previous outcomes of one model. Adaptive data is
+ * passed through to the delegate; {@link NLPNERTaggerOp} clears it after each word array.
+ * <p>
+ * Not thread-safe: share an instance only among the ops of one filter.
+ */
+public class NLPSharedFeatureGenerator implements AdaptiveFeatureGenerator {
+  private final AdaptiveFeatureGenerator delegate;
+  private String[] cachedTokens = null;
+  private List<String>[] cachedFeatures = null;
+  private long hits = 0;
+  private long misses = 0;
+
+  public NLPSharedFeatureGenerator(AdaptiveFeatureGenerator delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void createFeatures(List<String> features, String[] tokens, int index, String[] previousOutcomes) {
+    if (tokens != cachedTokens) {
+      cachedTokens = tokens;
+      cachedFeatures = new List[tokens.length];
+    }
+    List<String> tokenFeatures = cachedFeatures[index];
+    if (tokenFeatures == null) {
+      tokenFeatures = new ArrayList<>();
+      delegate.createFeatures(tokenFeatures, tokens, index, previousOutcomes);
+      cachedFeatures[index] = tokenFeatures;
+      misses++;
+    } else {
+      hits++;
+    }
+    features.addAll(tokenFeatures);
+  }
+
+  @Override
+  public void updateAdaptiveData(String[] tokens, String[] outcomes) {
+    delegate.updateAdaptiveData(tokens, outcomes);
+  }
+
+  @Override
+  public void clearAdaptiveData() {
+    delegate.clearAdaptiveData();
+  }
+
+  /** Number of positions whose features were replayed from the cache. */
+  public long getHitCount() {
+    return hits;
+  }
+
+  /** Number of positions whose features were computed. */
+  public long getMissCount() {
+    return misses;
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Maps the tag set of one model to small integer ids.
+ * Ids are assigned in sorted tag order starting at 1, so they are stable
+ * for a given model file. Id 0 is reserved for "no tag".
+ * Immutable and thread-safe.
+ */
+public class NLPTagVocabulary {
+  public static final int NO_TAG = 0;
+
+  private final String[] tags;
+  private final Map<String,Integer> ids;
+
+  public NLPTagVocabulary(Collection<String> tagSet) {
+    tags = new TreeSet<>(tagSet).toArray(new String[0]);
+    ids = new HashMap<>(tags.length * 2);
+    for (int i = 0; i < tags.length; i++) {
+      ids.put(tags[i], i + 1);
+    }
+  }
+
+  /** Vocabulary for a POS tagger or chunker: the outcomes are the tags. */
+  public static NLPTagVocabulary fromOutcomes(String[] outcomes) {
+    return new NLPTagVocabulary(Arrays.asList(outcomes));
+  }
+
+  /** Vocabulary for a name finder: "type-start"/"type-cont"/"other" outcomes are reduced to span types. */
+  public static NLPTagVocabulary fromNameOutcomes(String[] outcomes) {
+    TreeSet<String> types = new TreeSet<>();
+    for (String outcome : outcomes) {
+      int dash = outcome.lastIndexOf('-');
+      if (dash > 0) {
+        types.add(outcome.substring(0, dash));
+      }
+    }
+    return new NLPTagVocabulary(types);
+  }
+
+  /** Vocabulary covering the tags of all the given vocabularies. */
+  public static NLPTagVocabulary union(List<NLPTagVocabulary> vocabularies) {
+    if (vocabularies.size() == 1) {
+      return vocabularies.get(0);
+    }
+    TreeSet<String> tags = new TreeSet<>();
+    for (NLPTagVocabulary vocabulary : vocabularies) {
+      tags.addAll(Arrays.asList(vocabulary.tags));
+    }
+    return new NLPTagVocabulary(tags);
+  }
+
+  /** Returns the id of the tag, or {@link #NO_TAG} for null or unknown tags. */
+  public int getId(String tag) {
+    if (tag == null) {
+      return NO_TAG;
+    }
+    Integer id = ids.get(tag);
+    return id == null ? NO_TAG : id;
+  }
+
+  /** Returns the tag for an id, or null for {@link #NO_TAG}. */
+  public String getTag(int id) {
+    if (id <= NO_TAG || id > tags.length) {
+      return null;
+    }
+    return tags[id - 1];
+  }
+
+  public int size() {
+    return tags.length;
+  }
+}
@@ -25,19 +25,44 @@ import opennlp.tools.util.Span;
 /**
  * Supply OpenNLP Sentence Tokenizer tool
  * Requires binary models from OpenNLP project on SourceForge.
+ * Alternatively tokenizes with {@link NLPTokenizerRules}, alone or with the model
+ * for ambiguous chunks only (hybrid).
  */
 public class NLPTokenizerOp {
   private final Tokenizer tokenizer;
+  private final NLPTokenizerRules rules;
   
   public NLPTokenizerOp(TokenizerModel model) {
     tokenizer = new TokenizerME(model);
+    rules = null;
+  }
+  
+  /** @param model null for rules only, else hybrid */
+  public NLPTokenizerOp(TokenizerModel model, NLPTokenizerRules rules) {
+    tokenizer = model == null ? null : new TokenizerME(model);
+    this.rules = rules;
   }
   
   public NLPTokenizerOp() {
     tokenizer = null;
+    rules = null;
+  }
+  
+  /** @return spans relative to start; the rules do not build a String */
+  public synchronized Span[] getTerms(char[] text, int start, int end) {
+    if (rules != null) {
+      return rules.tokenize(text, start, end, tokenizer);
+    }
+    if (tokenizer == null) {
+      return new Span[] { new Span(0, end - start) };
+    }
+    return tokenizer.tokenizePos(new String(text, start, end - start));
   }
 
   public synchronized Span[] getTerms(String sentence) {
+    if (rules != null) {
+      return rules.tokenize(sentence.toCharArray(), 0, sentence.length(), tokenizer);
+    }
     if (tokenizer == null) {
       Span[] span1 = new Span[1];
       span1[0] = new Span(0, sentence.length());
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.util.Span;
+import org.apache.lucene.analysis.util.CharArraySet;
+
+/**
+ * Deterministic tokenizer working over a char range, for text with clean punctuation.
+ * <p>
+ * The text is split on whitespace, then each chunk into runs of letters and digits and
+ * single punctuation marks (a run of the same mark, like "..." or "--", stays one token).
+ * A ., :, / or comma between digits and an apostrophe or hyphen between letters do not
+ * split, so "3.5", "1,000", "don't" and "well-formed" are single tokens. Exceptions,
+ * like "e.g." or "U.S.", are kept whole when a token starts with one (longest match,
+ * case-insensitive).
+ * <p>
+ * In hybrid mode, chunks containing a period or punctuation between letters or digits
+ * are handed to a maxent tokenizer instead, everything else is split by the rules.
+ * Instances are immutable; the maxent tokenizer passed in is not thread-safe.
+ */
+public class NLPTokenizerRules {
+  private final CharArraySet exceptions;
+  private final int maxExceptionLength;
+  
+  public NLPTokenizerRules() {
+    this(Collections.<String>emptyList());
+  }
+  
+  public NLPTokenizerRules(Collection<String> exceptions) {
+    this.exceptions = new CharArraySet(exceptions, true);
+    int max = 0;
+    for (String exception: exceptions) {
+      max = Math.max(max, exception.length());
+    }
+    this.maxExceptionLength = max;
+  }
+  
+  /** @return spans relative to start */
+  public Span[] tokenize(char[] text, int start, int end) {
+    return tokenize(text, start, end, null);
+  }
+  
+  /**
+   * @param ambiguousTokenizer tokenizes the chunks with inner punctuation or periods, if not null
+   * @return spans relative to start
+   */
+  public Span[] tokenize(char[] text, int start, int end, Tokenizer ambiguousTokenizer) {
+    List<Span> tokens = new ArrayList<>();
+    int i = start;
+    while (i < end) {
+      while (i < end && Character.isWhitespace(text[i])) {
+        i++;
+      }
+      int chunkEnd = i;
+      while (chunkEnd < end && !Character.isWhitespace(text[chunkEnd])) {
+        chunkEnd++;
+      }
+      if (i == chunkEnd) {
+        break;
+      }
+      if (ambiguousTokenizer != null && isAmbiguous(text, i, chunkEnd)) {
+        for (Span span: ambiguousTokenizer.tokenizePos(new String(text, i, chunkEnd - i))) {
+          tokens.add(new Span(span.getStart() + i - start, span.getEnd() + i - start));
+        }
+      } else {
+        splitChunk(text, i, chunkEnd, start, tokens);
+      }
+      i = chunkEnd;
+    }
+    return tokens.toArray(new Span[tokens.size()]);
+  }
+  
+  private void splitChunk(char[] text, int i, int end, int start, List<Span> tokens) {
+    while (i < end) {
+      int j = i + exceptionLength(text, i, end);
+      if (j == i) {
+        char c = text[i];
+        j++;
+        if (Character.isLetterOrDigit(c)) {
+          while (j < end) {
+            if (Character.isLetterOrDigit(text[j])) {
+              j++;
+            } else if (j + 1 < end && isJoiner(text[j - 1], text[j], text[j + 1])) {
+              j += 2;
+            } else {
+              break;
+            }
+          }
+        } else {
+          while (j < end && text[j] == c) {
+            j++;
+          }
+        }
+      }
+      tokens.add(new Span(i - start, j - start));
+      i = j;
+    }
+  }
+  
+  // longest exception starting at i, 0 if none
+  private int exceptionLength(char[] text, int i, int end) {
+    for (int length = Math.min(maxExceptionLength, end - i); length > 0; length--) {
+      if (exceptions.contains(text, i, length)) {
+        return length;
+      }
+    }
+    return 0;
+  }
+  
+  private static boolean isAmbiguous(char[] text, int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = text[i];
+      if (c == '.') {
+        return true;
+      }
+      if (!Character.isLetterOrDigit(c) && i > start && i + 1 < end
+          && Character.isLetterOrDigit(text[i - 1]) && Character.isLetterOrDigit(text[i + 1])) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  private static boolean isJoiner(char before, char c, char after) {
+    if (Character.isDigit(before) && Character.isDigit(after)) {
+      return c == '.' || c == ',' || c == ':' || c == '/';
+    }
+    if (Character.isLetter(before) && Character.isLetter(after)) {
+      return c == '\'' || c == '-' || c == '\u2019';
+    }
+    return false;
+  }
+}
@@ -17,13 +17,16 @@
 
 package org.apache.lucene.analysis.opennlp.tools;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.io.StringBufferInputStream;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -32,6 +35,8 @@ import opennlp.tools.namefind.TokenNameFinderModel;
 import opennlp.tools.postag.POSModel;
 import opennlp.tools.sentdetect.SentenceModel;
 import opennlp.tools.tokenize.TokenizerModel;
+import org.apache.lucene.analysis.opennlp.tools.NLPModelQuantizer.Quantization;
+import org.apache.lucene.analysis.util.ResourceLoader;
 import org.apache.lucene.util.IOUtils;
 
 /**
@@ -44,22 +49,37 @@ public class OpenNLPOpsFactory {
   private static ConcurrentHashMap<String,POSModel> posTaggerModels = new ConcurrentHashMap<>();
   private static ConcurrentHashMap<String,ChunkerModel> chunkerModels = new ConcurrentHashMap<>();
   private static Map<String,TokenNameFinderModel> nerModels = new ConcurrentHashMap<>();
-  private static Map<String,String> lemmaDictionaries = new ConcurrentHashMap<>();
+  private static Map<String,NLPLemmatizerOp> lemmatizers = new ConcurrentHashMap<>();
+  private static Map<String,NLPCompiledLemmaDictionary> compiledLemmaDictionaries = new ConcurrentHashMap<>();
+  private static Map<String,NLPGazetteer> gazetteers = new ConcurrentHashMap<>();
+  private static Map<String,NLPBatchPOSTagger> batchPOSTaggers = new ConcurrentHashMap<>();
+  private static Map<String,Integer> batchPOSTaggerUsers = new HashMap<>();
+  private static Map<String,NLPTagVocabulary> tagVocabularies = new ConcurrentHashMap<>();
+  private static Map<String,NLPModelStats> modelStats = new ConcurrentHashMap<>();
+  private static Map<String,Integer> registryModelUsers = new HashMap<>();
+  private static volatile NLPAdmissionController admissionController = null;
   
   public static NLPSentenceDetectorOp getSentenceDetector(String modelName) throws IOException {
     if (modelName != null) {
       SentenceModel model = sentenceModels.get(modelName);
+      countOp(NLPModelStats.SENTENCE, modelName);
       return new NLPSentenceDetectorOp(model);
     } else {
       return new NLPSentenceDetectorOp();
     }
   }
   
+  public static NLPSentenceDetectorOp getSentenceDetector(NLPSentenceRules rules) {
+    return new NLPSentenceDetectorOp(rules);
+  }
+  
   public static SentenceModel getSentenceModel(String modelName, InputStream modelStream) throws IOException {
     SentenceModel model = sentenceModels.get(modelName);
     if (model == null) {
+      long start = System.nanoTime();
       model = new SentenceModel(modelStream);
       sentenceModels.put(modelName, model);
+      registerModel(NLPModelStats.SENTENCE, modelName, model, start);
     }
     return model;
   }
@@ -69,83 +89,432 @@ public class OpenNLPOpsFactory {
       return new NLPTokenizerOp();
     } else {
       TokenizerModel model = tokenizerModels.get(modelName);
+      countOp(NLPModelStats.TOKENIZER, modelName);
       return new NLPTokenizerOp(model);
     }
   }
   
+  /** @param modelName null for rules only, else hybrid */
+  public static NLPTokenizerOp getTokenizer(String modelName, NLPTokenizerRules rules) throws IOException {
+    TokenizerModel model = null;
+    if (modelName != null) {
+      model = tokenizerModels.get(modelName);
+      countOp(NLPModelStats.TOKENIZER, modelName);
+    }
+    return new NLPTokenizerOp(model, rules);
+  }
+  
   public static TokenizerModel getTokenizerModel(String modelName, InputStream modelStream) throws IOException {
     TokenizerModel model = tokenizerModels.get(modelName);
     if (model == null) {
+      long start = System.nanoTime();
       model = new TokenizerModel(modelStream);
       tokenizerModels.put(modelName, model);
+      registerModel(NLPModelStats.TOKENIZER, modelName, model, start);
     }
     return model;
   }
   
+  /**
+   * Name under which a model file loaded with the given quantization is cached: models are
+   * quantized in place, so each quantization has its own copy.
+   */
+  public static String modelName(String modelFile, Quantization quantization) {
+    return quantization == Quantization.NONE ? modelFile : modelFile + "@" + quantization.name().toLowerCase(Locale.ROOT);
+  }
+  
   public static NLPPOSTaggerOp getPOSTagger(String modelName) throws IOException {
     POSModel model = posTaggerModels.get(modelName);
+    countOp(NLPModelStats.POS, modelName);
     return new NLPPOSTaggerOp(model);
   }
   
+  /** @param beamSize 0 for the model default, 1 for greedy decoding */
+  public static NLPPOSTaggerOp getPOSTagger(String modelName, int beamSize) throws IOException {
+    if (beamSize == 0) {
+      return getPOSTagger(modelName);
+    }
+    POSModel model = posTaggerModels.get(modelName);
+    countOp(NLPModelStats.POS, modelName);
+    return new NLPPOSTaggerOp(model, beamSize);
+  }
+  
+  /**
+   * Batching service shared by all users with the same model and settings, started by the
+   * first user. Each user must call {@link #releaseBatchPOSTagger} once done with it.
+   * @param beamSize 0 for the model default, 1 for greedy decoding
+   */
+  public static NLPBatchPOSTagger acquireBatchPOSTagger(String modelName, int beamSize, int threads,
+                                                        long windowMicros, int maxBatch) throws IOException {
+    String key = batchTaggerKey(modelName, beamSize, threads, windowMicros, maxBatch);
+    synchronized (batchPOSTaggers) {
+      NLPBatchPOSTagger batchTagger = batchPOSTaggers.get(key);
+      if (batchTagger == null) {
+        batchTagger = new NLPBatchPOSTagger(posTaggerModels.get(modelName), beamSize, threads, windowMicros, maxBatch);
+        batchPOSTaggers.put(key, batchTagger);
+      }
+      batchPOSTaggerUsers.merge(key, 1, Integer::sum);
+      return batchTagger;
+    }
+  }
+  
+  /** Releases a batching service; the last user stops its threads. */
+  public static void releaseBatchPOSTagger(String modelName, int beamSize, int threads, long windowMicros, int maxBatch) {
+    String key = batchTaggerKey(modelName, beamSize, threads, windowMicros, maxBatch);
+    NLPBatchPOSTagger stopped = null;
+    synchronized (batchPOSTaggers) {
+      Integer users = batchPOSTaggerUsers.get(key);
+      if (users == null) {
+        return;
+      }
+      if (users > 1) {
+        batchPOSTaggerUsers.put(key, users - 1);
+        return;
+      }
+      batchPOSTaggerUsers.remove(key);
+      stopped = batchPOSTaggers.remove(key);
+    }
+    if (stopped != null) {
+      stopped.shutdown();
+    }
+  }
+  
+  private static String batchTaggerKey(String modelName, int beamSize, int threads, long windowMicros, int maxBatch) {
+    return modelName + ":" + beamSize + ":" + threads + ":" + windowMicros + ":" + maxBatch;
+  }
+  
+  /** POS tagger op backed by a batching service, see {@link #acquireBatchPOSTagger}. */
+  public static NLPPOSTaggerOp getPOSTagger(String modelName, NLPBatchPOSTagger batchTagger) {
+    countOp(NLPModelStats.POS, modelName);
+    return new NLPPOSTaggerOp(batchTagger);
+  }
+  
   public static POSModel getPOSTaggerModel(String modelName, InputStream modelStream) throws IOException {
+    return getPOSTaggerModel(modelName, modelStream, Quantization.NONE);
+  }
+  
+  /** @param modelName cache name, see {@link #modelName(String, Quantization)} */
+  public static POSModel getPOSTaggerModel(String modelName, InputStream modelStream, Quantization quantization) throws IOException {
     POSModel model = posTaggerModels.get(modelName);
     if (model == null) {
+      long start = System.nanoTime();
       model = new POSModel(modelStream);
+      NLPModelQuantizer.quantize(model.getPosModel(), quantization);
       posTaggerModels.put(modelName, model);
+      registerModel(NLPModelStats.POS, modelName, model, start);
     }
     return model;
   }
   
   public static NLPChunkerOp getChunker(String modelName) throws IOException {
     ChunkerModel model = chunkerModels.get(modelName);
+    countOp(NLPModelStats.CHUNKER, modelName);
     return new NLPChunkerOp(model);
   }
   
+  /** @param beamSize 0 for the model default, 1 for greedy decoding */
+  public static NLPChunkerOp getChunker(String modelName, int beamSize) throws IOException {
+    if (beamSize == 0) {
+      return getChunker(modelName);
+    }
+    ChunkerModel model = chunkerModels.get(modelName);
+    countOp(NLPModelStats.CHUNKER, modelName);
+    return new NLPChunkerOp(model, beamSize);
+  }
+  
   public static ChunkerModel getChunkerModel(String modelName, InputStream modelStream) throws IOException {
+    return getChunkerModel(modelName, modelStream, Quantization.NONE);
+  }
+  
+  /** @param modelName cache name, see {@link #modelName(String, Quantization)} */
+  public static ChunkerModel getChunkerModel(String modelName, InputStream modelStream, Quantization quantization) throws IOException {
     ChunkerModel model = chunkerModels.get(modelName);
     if (model == null) {
+      long start = System.nanoTime();
       model = new ChunkerModel(modelStream);
+      NLPModelQuantizer.quantize(model.getChunkerModel(), quantization);
       chunkerModels.put(modelName, model);
+      registerModel(NLPModelStats.CHUNKER, modelName, model, start);
     }
     return model;
   }
   
   public static NLPNERTaggerOp getNERTagger(String modelName) throws IOException {
     TokenNameFinderModel model = nerModels.get(modelName);
+    countOp(NLPModelStats.NER, modelName);
     return new NLPNERTaggerOp(model);
   }
   
+  public static NLPNERTaggerOp getNERTagger(String modelName, NLPNERPrefilter prefilter) throws IOException {
+    TokenNameFinderModel model = nerModels.get(modelName);
+    countOp(NLPModelStats.NER, modelName);
+    return new NLPNERTaggerOp(model, prefilter);
+  }
+  
+  public static NLPNERTaggerOp getNERTagger(String modelName, NLPNERPrefilter prefilter,
+                                           NLPSharedFeatureGenerator sharedFeatures) throws IOException {
+    if (sharedFeatures == null) {
+      return getNERTagger(modelName, prefilter);
+    }
+    TokenNameFinderModel model = nerModels.get(modelName);
+    countOp(NLPModelStats.NER, modelName);
+    return new NLPNERTaggerOp(model, prefilter, sharedFeatures);
+  }
+  
+  /** New feature generator to share among NER ops using models with the same feature generator definition as this one. */
+  public static NLPSharedFeatureGenerator getSharedFeatureGenerator(String modelName) {
+    TokenNameFinderModel model = nerModels.get(modelName);
+    return new NLPSharedFeatureGenerator(model.getFactory().createFeatureGenerators());
+  }
+  
   public static TokenNameFinderModel getNERTaggerModel(String modelName, InputStream modelStream) throws IOException {
+    return getNERTaggerModel(modelName, modelStream, Quantization.NONE);
+  }
+  
+  /** @param modelName cache name, see {@link #modelName(String, Quantization)} */
+  public static TokenNameFinderModel getNERTaggerModel(String modelName, InputStream modelStream, Quantization quantization) throws IOException {
     TokenNameFinderModel model = nerModels.get(modelName);
     if (model == null) {
+      long start = System.nanoTime();
       model = new TokenNameFinderModel(modelStream);
+      NLPModelQuantizer.quantize(model.getNameFinderModel(), quantization);
       nerModels.put(modelName, model);
+      registerModel(NLPModelStats.NER, modelName, model, start);
     }
     return model;
   }
 
+  public static NLPTagVocabulary getPOSTagVocabulary(String modelName) {
+    return tagVocabularies.computeIfAbsent("pos:" + modelName, k -> NLPTagVocabulary.fromOutcomes(
+        posTaggerModels.get(modelName).getPosSequenceModel().getOutcomes()));
+  }
+
+  public static NLPTagVocabulary getChunkerTagVocabulary(String modelName) {
+    return tagVocabularies.computeIfAbsent("chunker:" + modelName, k -> NLPTagVocabulary.fromOutcomes(
+        chunkerModels.get(modelName).getChunkerSequenceModel().getOutcomes()));
+  }
+
+  public static NLPTagVocabulary getNERTagVocabulary(String modelName) {
+    return tagVocabularies.computeIfAbsent("ner:" + modelName, k -> NLPTagVocabulary.fromNameOutcomes(
+        nerModels.get(modelName).getNameFinderSequenceModel().getOutcomes()));
+  }
+
+  public static NLPNERTaggerOp getGazetteerTagger(String gazetteerFile, boolean ignoreCase) {
+    String key = gazetteerKey(gazetteerFile, ignoreCase);
+    countOp(NLPModelStats.GAZETTEER, key);
+    return new NLPNERTaggerOp(gazetteers.get(key));
+  }
+  
+  public static NLPGazetteer getGazetteer(String gazetteerFile, boolean ignoreCase, InputStream gazetteerStream) throws IOException {
+    String key = gazetteerKey(gazetteerFile, ignoreCase);
+    NLPGazetteer gazetteer = gazetteers.get(key);
+    if (gazetteer == null) {
+      long start = System.nanoTime();
+      gazetteer = new NLPGazetteer(gazetteerStream, ignoreCase);
+      gazetteers.put(key, gazetteer);
+      registerModel(NLPModelStats.GAZETTEER, key, gazetteer, start);
+    }
+    return gazetteer;
+  }
+  
+  /** Name under which a gazetteer is cached, and reported in {@link NLPModelStats}. */
+  public static String gazetteerKey(String gazetteerFile, boolean ignoreCase) {
+    return ignoreCase ? "ignoreCase:" + gazetteerFile : gazetteerFile;
+  }
+  
+  public static NLPTagVocabulary getGazetteerTagVocabulary(String gazetteerFile, boolean ignoreCase) {
+    String key = gazetteerKey(gazetteerFile, ignoreCase);
+    return tagVocabularies.computeIfAbsent("gazetteer:" + key, k -> new NLPTagVocabulary(gazetteers.get(key).getTypes()));
+  }
+  
   public static NLPLemmatizerOp getLemmatizer(String dictionaryFile) throws IOException {
-    String dictionary = lemmaDictionaries.get(dictionaryFile);
-    return new NLPLemmatizerOp(new ByteArrayInputStream(dictionary.getBytes(StandardCharsets.UTF_8)));
+    countOp(NLPModelStats.LEMMAS, dictionaryFile);
+    NLPCompiledLemmaDictionary compiled = compiledLemmaDictionaries.get(dictionaryFile);
+    if (compiled != null) {
+      return new NLPLemmatizerOp(compiled);
+    }
+    // a text dictionary is only read once loaded, so one lemmatizer serves every op
+    return lemmatizers.get(dictionaryFile);
+  }
+
+  /** Loads a dictionary from the loader only, see {@link #loadLemmatizerDictionary(String, Path, ResourceLoader)}. */
+  public static void loadLemmatizerDictionary(String dictionaryFile, ResourceLoader loader) throws IOException {
+    loadLemmatizerDictionary(dictionaryFile, null, loader);
   }
 
-  public static String getLemmatizerDictionary(String dictionaryFile, InputStream dictionaryStream) throws IOException {
-    String dictionary = lemmaDictionaries.get(dictionaryFile);
-    if (dictionary == null) {
-      Reader reader = new InputStreamReader(dictionaryStream, StandardCharsets.UTF_8);
-      StringBuilder builder = new StringBuilder();
-      char[] chars = new char[8092];
-      int numRead = 0;
-      do {
-        numRead = reader.read(chars, 0, chars.length);
-        if (numRead > 0) {
-          builder.append(chars, 0, numRead);
+  /**
+   * Loads a text or compiled ({@link NLPCompiledLemmaDictionary}) dictionary. A compiled
+   * dictionary that is a local file is memory-mapped; one opened by the loader is read off-heap.
+   * @param path the local file of the dictionary, or null if it is not one
+   */
+  public static void loadLemmatizerDictionary(String dictionaryFile, Path path, ResourceLoader loader) throws IOException {
+    if (lemmatizers.containsKey(dictionaryFile) || compiledLemmaDictionaries.containsKey(dictionaryFile)) {
+      return;
+    }
+    if (path != null) {
+      boolean compiled;
+      try (InputStream stream = new BufferedInputStream(Files.newInputStream(path))) {
+        compiled = NLPCompiledLemmaDictionary.isCompiled(stream);
+      }
+      if (compiled) {
+        long start = System.nanoTime();
+        NLPCompiledLemmaDictionary dictionary = NLPCompiledLemmaDictionary.open(path);
+        compiledLemmaDictionaries.put(dictionaryFile, dictionary);
+        registerModel(NLPModelStats.LEMMAS, dictionaryFile, dictionary, start);
+        return;
+      }
+    }
+    try (InputStream stream = new BufferedInputStream(loader.openResource(dictionaryFile))) {
+      if (NLPCompiledLemmaDictionary.isCompiled(stream)) {
+        long start = System.nanoTime();
+        NLPCompiledLemmaDictionary dictionary = NLPCompiledLemmaDictionary.read(stream);
+        compiledLemmaDictionaries.put(dictionaryFile, dictionary);
+        registerModel(NLPModelStats.LEMMAS, dictionaryFile, dictionary, start);
+      } else {
+        getLemmatizer(dictionaryFile, stream);
+      }
+    }
+  }
+
+  /** The lemmatizer of a text dictionary, built from the stream on first use. */
+  public static NLPLemmatizerOp getLemmatizer(String dictionaryFile, InputStream dictionaryStream) throws IOException {
+    NLPLemmatizerOp lemmatizer = lemmatizers.get(dictionaryFile);
+    if (lemmatizer == null) {
+      long start = System.nanoTime();
+      lemmatizer = new NLPLemmatizerOp(dictionaryStream);
+      lemmatizers.put(dictionaryFile, lemmatizer);
+      registerModel(NLPModelStats.LEMMAS, dictionaryFile, lemmatizer, start);
+    }
+    return lemmatizer;
+  }
+  
+  /** Name under which a model file loaded for a {@link NLPModelRegistry} is cached. */
+  public static String registryModelName(String modelFile) {
+    return "registry:" + modelFile;
+  }
+  
+  /**
+   * Model file loaded for a {@link NLPLanguageModels}, cached under {@link #registryModelName(String)}
+   * and counted, so that {@link #releaseRegistryModel} drops it once no registry holds it.
+   * @param kind one of the model kinds of {@link NLPModelStats}, except lemmas and gazetteers
+   */
+  static Object retainRegistryModel(String kind, String modelFile, ResourceLoader loader) throws IOException {
+    String name = registryModelName(modelFile);
+    // languages load rarely: a single lock keeps the load and the count together
+    synchronized (registryModelUsers) {
+      Object model = modelCache(kind).get(name);
+      if (model == null) {
+        try (InputStream stream = loader.openResource(modelFile)) {
+          switch (kind) {
+            case NLPModelStats.SENTENCE:
+              model = getSentenceModel(name, stream);
+              break;
+            case NLPModelStats.TOKENIZER:
+              model = getTokenizerModel(name, stream);
+              break;
+            case NLPModelStats.POS:
+              model = getPOSTaggerModel(name, stream);
+              break;
+            case NLPModelStats.CHUNKER:
+              model = getChunkerModel(name, stream);
+              break;
+            case NLPModelStats.NER:
+              model = getNERTaggerModel(name, stream);
+              break;
+            default:
+              throw new IllegalArgumentException("Not a registry model kind: " + kind);
+          }
         }
-      } while (numRead > 0);
-      dictionary = builder.toString();
-      lemmaDictionaries.put(dictionaryFile, dictionary);
+      }
+      registryModelUsers.merge(NLPModelStats.key(kind, name), 1, Integer::sum);
+      return model;
+    }
+  }
+  
+  /** Releases a model taken with {@link #retainRegistryModel}, dropping it from the cache if unused. */
+  static void releaseRegistryModel(String kind, String modelFile) {
+    String name = registryModelName(modelFile);
+    String key = NLPModelStats.key(kind, name);
+    synchronized (registryModelUsers) {
+      Integer users = registryModelUsers.get(key);
+      if (users == null) {
+        return;
+      }
+      if (users > 1) {
+        registryModelUsers.put(key, users - 1);
+        return;
+      }
+      registryModelUsers.remove(key);
+      modelCache(kind).remove(name);
+      modelStats.remove(key);
+    }
+  }
+  
+  static void countRegistryOp(String kind, String modelFile) {
+    countOp(kind, registryModelName(modelFile));
+  }
+  
+  private static Map<String,?> modelCache(String kind) {
+    switch (kind) {
+      case NLPModelStats.SENTENCE:
+        return sentenceModels;
+      case NLPModelStats.TOKENIZER:
+        return tokenizerModels;
+      case NLPModelStats.POS:
+        return posTaggerModels;
+      case NLPModelStats.CHUNKER:
+        return chunkerModels;
+      case NLPModelStats.NER:
+        return nerModels;
+      default:
+        throw new IllegalArgumentException("Not a registry model kind: " + kind);
+    }
+  }
+  
+  private static void registerModel(String kind, String name, Object model, long startNanos) {
+    NLPModelStats stats = new NLPModelStats(kind, name, model, System.nanoTime() - startNanos);
+    modelStats.put(stats.getKey(), stats);
+  }
+  
+  private static void countOp(String kind, String name) {
+    NLPModelStats stats = modelStats.get(NLPModelStats.key(kind, name));
+    if (stats != null) {
+      stats.countOp();
+    }
+  }
+  
+  /** Statistics of all cached models and dictionaries. */
+  public static Collection<NLPModelStats> getModelStats() {
+    return Collections.unmodifiableCollection(modelStats.values());
+  }
+  
+  /**
+   * Node-wide admission controller for whole-document analyses, shared by all callers.
+   * Created by the first call; later calls must ask for the same limits, since a second
+   * controller would not bound the analyses admitted by the first.
+   * @throws IllegalArgumentException if a controller with other limits exists
+   */
+  public static synchronized NLPAdmissionController getAdmissionController(int maxAnalyses, int maxChars) {
+    NLPAdmissionController controller = admissionController;
+    if (controller == null) {
+      controller = new NLPAdmissionController(maxAnalyses, maxChars);
+      admissionController = controller;
+    } else if (controller.getMaxAnalyses() != maxAnalyses || controller.getMaxChars() != maxChars) {
+      throw new IllegalArgumentException("Configuration Error: admission limits are node-wide and already set to "
+          + controller.getMaxAnalyses() + " analyses and " + controller.getMaxChars() + " chars, not "
+          + maxAnalyses + " and " + maxChars);
     }
-    return dictionary;
+    return controller;
+  }
+  
+  /** Drops the admission controller, so that the next configuration sets the limits. For tests. */
+  public static synchronized void clearAdmissionController() {
+    admissionController = null;
+  }
+  
+  /** The current admission controller, or null if none was configured. */
+  public static NLPAdmissionController getAdmissionController() {
+    return admissionController;
   }
   
   // keeps unit test from blowing out memory
@@ -155,6 +524,26 @@ public class OpenNLPOpsFactory {
     posTaggerModels.clear();
     chunkerModels.clear();
     nerModels.clear();
-    lemmaDictionaries.clear();
+    lemmatizers.clear();
+    compiledLemmaDictionaries.clear();
+    gazetteers.clear();
+    tagVocabularies.clear();
+    modelStats.clear();
+    synchronized (registryModelUsers) {
+      registryModelUsers.clear();
+    }
+    shutdownBatchTaggers();
+    NLPModelRegistry.shutdownSweeper();
+  }
+  
+  /** Stops the threads of all batch taggers whatever their users, for tests: ops on them fail afterwards. */
+  public static void shutdownBatchTaggers() {
+    synchronized (batchPOSTaggers) {
+      for (NLPBatchPOSTagger batchTagger: batchPOSTaggers.values()) {
+        batchTagger.shutdown();
+      }
+      batchPOSTaggers.clear();
+      batchPOSTaggerUsers.clear();
+    }
   }
 }
@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.solr.handler.opennlp;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.opennlp.tokenattributes.PartOfSpeechAttribute;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.ContentStream;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.handler.RequestHandlerBase;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.util.DefaultSolrThreadFactory;
+import org.apache.solr.util.plugin.SolrCoreAware;
+
+/**
+ * Annotates a batch of texts with the index analyzer of a field type, typically an
+ * OpenNLP tokenizer/filter chain, reusing the models already loaded by the core.
+ * <pre class="prettyprint" >
+ * &lt;requestHandler name="/opennlp/analyze" class="org.apache.solr.handler.opennlp.OpenNLPAnalysisHandler"&gt;
+ *   &lt;str name="fieldType"&gt;text_opennlp&lt;/str&gt;
+ *   &lt;int name="threads"&gt;4&lt;/int&gt;
+ * &lt;/requestHandler&gt;</pre>
+ * <p>Texts are given as repeated text parameters and/or as content streams, one text per
+ * stream. The fieldType request parameter overrides the configured one. Texts are analyzed
+ * in parallel on the handler's threads, at most two per thread ahead of the response writer,
+ * and each annotation is written as soon as it and the ones before it are done, so results
+ * keep the input order and a large batch is never held in memory at once. A text that
+ * fails to analyze ends the response at that point with a server error.</p>
+ * <p>The response holds one entry per text with one list per attribute (term, start, end,
+ * posInc, type, and pos when the chain emits part-of-speech tags), instead of the one
+ * map per token and attribute of the field analysis API.</p>
+ */
+public class OpenNLPAnalysisHandler extends RequestHandlerBase implements SolrCoreAware {
+  public static final String FIELD_TYPE = "fieldType";
+  public static final String THREADS = "threads";
+  public static final String TEXT = "text";
+  
+  private String defaultFieldType;
+  private int threads;
+  private SolrCore core;
+  private ExecutorService executor;
+  
+  @Override
+  public void init(NamedList args) {
+    super.init(args);
+    Object fieldType = args.get(FIELD_TYPE);
+    defaultFieldType = fieldType == null ? null : fieldType.toString();
+    Object threadCount = args.get(THREADS);
+    threads = threadCount == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threadCount.toString());
+    if (threads < 1) {
+      throw new SolrException(ErrorCode.SERVER_ERROR, "Configuration Error: " + THREADS + " must be positive");
+    }
+  }
+  
+  @Override
+  public void inform(SolrCore core) {
+    this.core = core;
+    executor = ExecutorUtil.newMDCAwareFixedThreadPool(threads, new DefaultSolrThreadFactory("opennlpAnalysis"));
+    core.addCloseHook(new CloseHook() {
+      @Override
+      public void preClose(SolrCore core) {
+        ExecutorUtil.shutdownAndAwaitTermination(executor);
+      }
+      
+      @Override
+      public void postClose(SolrCore core) {
+      }
+    });
+  }
+  
+  @Override
+  public void handleRequestBody(SolrQueryRequest req, SolrQueryResponse rsp) throws Exception {
+    SolrParams params = req.getParams();
+    String fieldTypeName = params.get(FIELD_TYPE, defaultFieldType);
+    if (fieldTypeName == null) {
+      throw new SolrException(ErrorCode.BAD_REQUEST, "Missing " + FIELD_TYPE + " parameter");
+    }
+    FieldType fieldType = core.getLatestSchema().getFieldTypeByName(fieldTypeName);
+    if (fieldType == null) {
+      throw new SolrException(ErrorCode.BAD_REQUEST, "Unknown field type: " + fieldTypeName);
+    }
+    Analyzer analyzer = fieldType.getIndexAnalyzer();
+    
+    String[] texts = params.getParams(TEXT);
+    Iterable<ContentStream> streams = req.getContentStreams();
+    Iterator<ContentStream> streamIterator = streams == null
+        ? Collections.<ContentStream>emptyIterator() : streams.iterator();
+    if (texts == null && !streamIterator.hasNext()) {
+      throw new SolrException(ErrorCode.BAD_REQUEST, "No text: give " + TEXT + " parameters or content streams");
+    }
+    Iterator<Callable<NamedList<Object>>> tasks = new Iterator<Callable<NamedList<Object>>>() {
+      private int next = 0;
+      
+      @Override
+      public boolean hasNext() {
+        return (texts != null && next < texts.length) || streamIterator.hasNext();
+      }
+      
+      @Override
+      public Callable<NamedList<Object>> next() {
+        if (texts != null && next < texts.length) {
+          String text = texts[next++];
+          return () -> analyze(analyzer, new StringReader(text));
+        }
+        ContentStream stream = streamIterator.next();
+        return () -> {
+          try (Reader reader = stream.getReader()) {
+            return analyze(analyzer, reader);
+          }
+        };
+      }
+    };
+    rsp.add("fieldType", fieldTypeName);
+    // consumed by the response writer, which writes each annotation as it is taken
+    rsp.add("annotations", new Annotations(tasks, executor, 2 * threads));
+  }
+  
+  /**
+   * The annotations of the tasks in order, analyzed on the executor at most window tasks
+   * ahead of the caller.
+   */
+  static class Annotations implements Iterator<NamedList<Object>> {
+    private final ExecutorService executor;
+    private final int window;
+    private final Deque<Future<NamedList<Object>>> running = new ArrayDeque<>();
+    private Iterator<Callable<NamedList<Object>>> tasks;
+    
+    Annotations(Iterator<Callable<NamedList<Object>>> tasks, ExecutorService executor, int window) {
+      this.tasks = tasks;
+      this.executor = executor;
+      this.window = window;
+    }
+    
+    private void submit() {
+      while (running.size() < window && tasks.hasNext()) {
+        running.add(executor.submit(tasks.next()));
+      }
+    }
+    
+    @Override
+    public boolean hasNext() {
+      submit();
+      return !running.isEmpty();
+    }
+    
+    @Override
+    public NamedList<Object> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      try {
+        NamedList<Object> annotation = running.poll().get();
+        submit();
+        return annotation;
+      } catch (InterruptedException e) {
+        cancel();
+        Thread.currentThread().interrupt();
+        throw new SolrException(ErrorCode.SERVER_ERROR, "Analysis interrupted", e);
+      } catch (ExecutionException e) {
+        cancel();
+        Throwable cause = e.getCause();
+        throw new SolrException(ErrorCode.SERVER_ERROR, "Analysis failed: " + cause, cause);
+      }
+    }
+    
+    private void cancel() {
+      for (Future<NamedList<Object>> result: running) {
+        result.cancel(true);
+      }
+      running.clear();
+      tasks = Collections.emptyIterator();
+    }
+  }
+  
+  static NamedList<Object> analyze(Analyzer analyzer, Reader text) throws IOException {
+    List<String> terms = new ArrayList<>();
+    List<Integer> starts = new ArrayList<>();
+    List<Integer> ends = new ArrayList<>();
+    List<Integer> posIncs = new ArrayList<>();
+    List<String> types = new ArrayList<>();
+    List<String> pos = null;
+    try (TokenStream ts = analyzer.tokenStream("", text)) {
+      CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+      OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+      PositionIncrementAttribute posIncAtt = ts.addAttribute(PositionIncrementAttribute.class);
+      TypeAttribute typeAtt = ts.addAttribute(TypeAttribute.class);
+      PartOfSpeechAttribute posAtt = ts.hasAttribute(PartOfSpeechAttribute.class)
+          ? ts.getAttribute(PartOfSpeechAttribute.class) : null;
+      if (posAtt != null) {
+        pos = new ArrayList<>();
+      }
+      ts.reset();
+      while (ts.incrementToken()) {
+        terms.add(termAtt.toString());
+        starts.add(offsetAtt.startOffset());
+        ends.add(offsetAtt.endOffset());
+        posIncs.add(posIncAtt.getPositionIncrement());
+        types.add(typeAtt.type());
+        if (posAtt != null) {
+          pos.add(posAtt.getPartOfSpeech());
+        }
+      }
+      ts.end();
+    }
+    NamedList<Object> annotation = new NamedList<>();
+    annotation.add("term", terms);
+    annotation.add("start", starts);
+    annotation.add("end", ends);
+    annotation.add("posInc", posIncs);
+    annotation.add("type", types);
+    if (pos != null) {
+      annotation.add("pos", pos);
+    }
+    return annotation;
+  }
+  
+  @Override
+  public String getDescription() {
+    return "Batch OpenNLP analysis of texts with a field type's analyzer";
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.solr.handler.opennlp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.opennlp.OpenNLPFilterFactory;
+import org.apache.lucene.analysis.opennlp.OpenNLPLemmatizerFilterFactory;
+import org.apache.lucene.analysis.opennlp.OpenNLPTokenizerFactory;
+import org.apache.lucene.analysis.opennlp.tools.NLPModelStats;
+import org.apache.lucene.analysis.opennlp.tools.OpenNLPOpsFactory;
+import org.apache.lucene.analysis.util.AbstractAnalysisFactory;
+import org.apache.solr.analysis.TokenizerChain;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.handler.RequestHandlerBase;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.FieldType;
+
+/**
+ * Reports the models and dictionaries cached by {@link OpenNLPOpsFactory}, node-wide.
+ * <pre class="prettyprint" >
+ * &lt;requestHandler name="/admin/opennlp/models" class="org.apache.solr.handler.opennlp.OpenNLPModelsHandler"/&gt;</pre>
+ * <p>For each model: its kind and resource name, estimated heap usage (computed on the first
+ * request, see {@link org.apache.lucene.analysis.opennlp.tools.NLPRamEstimator}), load time, number of
+ * ops created on it, and the core/field type pairs of the node whose analyzers reference it.
+ * A model with no reference is held by the cache only, typically since a reload changed the schema.</p>
+ */
+public class OpenNLPModelsHandler extends RequestHandlerBase {
+
+  @Override
+  public void handleRequestBody(SolrQueryRequest req, SolrQueryResponse rsp) throws Exception {
+    Map<String,Set<String>> references = findReferences(req.getCore().getCoreDescriptor().getCoreContainer());
+    List<NLPModelStats> stats = new ArrayList<>(OpenNLPOpsFactory.getModelStats());
+    stats.sort(Comparator.comparing(NLPModelStats::getKey));
+    
+    NamedList<Object> models = new SimpleOrderedMap<>();
+    long totalRamBytes = 0;
+    for (NLPModelStats model: stats) {
+      Set<String> referencedBy = references.getOrDefault(model.getKey(), Collections.emptySet());
+      models.add(model.getKey(), describe(model, referencedBy));
+      totalRamBytes += model.getRamBytesUsed();
+    }
+    rsp.add("models", models);
+    rsp.add("totalRamBytes", totalRamBytes);
+  }
+  
+  static NamedList<Object> describe(NLPModelStats model, Set<String> referencedBy) {
+    NamedList<Object> entry = new SimpleOrderedMap<>();
+    entry.add("kind", model.getKind());
+    entry.add("name", model.getName());
+    entry.add("ramBytes", model.getRamBytesUsed());
+    entry.add("loadTimeMs", model.getLoadTimeMillis());
+    entry.add("loadedAt", new Date(model.getLoadedAt()));
+    entry.add("ops", model.getOpCount());
+    entry.add("refCount", referencedBy.size());
+    entry.add("references", new ArrayList<>(referencedBy));
+    return entry;
+  }
+  
+  /** Model keys to the "core/fieldType" pairs referencing them. */
+  private static Map<String,Set<String>> findReferences(CoreContainer container) {
+    Map<String,Set<String>> references = new HashMap<>();
+    for (SolrCore core: container.getCores()) {
+      for (FieldType fieldType: core.getLatestSchema().getFieldTypes().values()) {
+        Set<String> keys = new LinkedHashSet<>();
+        keys.addAll(getModelKeys(fieldType.getIndexAnalyzer()));
+        keys.addAll(getModelKeys(fieldType.getQueryAnalyzer()));
+        for (String key: keys) {
+          references.computeIfAbsent(key, k -> new TreeSet<>()).add(core.getName() + "/" + fieldType.getTypeName());
+        }
+      }
+    }
+    return references;
+  }
+  
+  /** Keys of the OpenNLP models used by a schema or custom analyzer. */
+  static Set<String> getModelKeys(Analyzer analyzer) {
+    Set<String> keys = new LinkedHashSet<>();
+    for (AbstractAnalysisFactory factory: getFactories(analyzer)) {
+      if (factory instanceof OpenNLPTokenizerFactory) {
+        keys.addAll(((OpenNLPTokenizerFactory) factory).getModelKeys());
+      } else if (factory instanceof OpenNLPFilterFactory) {
+        keys.addAll(((OpenNLPFilterFactory) factory).getModelKeys());
+      } else if (factory instanceof OpenNLPLemmatizerFilterFactory) {
+        keys.addAll(((OpenNLPLemmatizerFilterFactory) factory).getModelKeys());
+      }
+    }
+    return keys;
+  }
+  
+  private static List<AbstractAnalysisFactory> getFactories(Analyzer analyzer) {
+    List<AbstractAnalysisFactory> factories = new ArrayList<>();
+    if (analyzer instanceof TokenizerChain) {
+      TokenizerChain chain = (TokenizerChain) analyzer;
+      factories.add(chain.getTokenizerFactory());
+      Collections.addAll(factories, chain.getTokenFilterFactories());
+    } else if (analyzer instanceof CustomAnalyzer) {
+      CustomAnalyzer custom = (CustomAnalyzer) analyzer;
+      factories.add(custom.getTokenizerFactory());
+      factories.addAll(custom.getTokenFilterFactories());
+    }
+    return factories;
+  }
+  
+  @Override
+  public String getDescription() {
+    return "OpenNLP models cached on this node, with their memory footprint and references";
+  }
+}
@@ -0,0 +1,512 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.solr.update.processor.opennlp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import opennlp.tools.util.Span;
+
+import org.apache.lucene.analysis.opennlp.tools.NLPNERTaggerOp;
+import org.apache.lucene.analysis.opennlp.tools.NLPSentenceDetectorOp;
+import org.apache.lucene.analysis.opennlp.tools.NLPTagVocabulary;
+import org.apache.lucene.analysis.opennlp.tools.NLPTokenizerOp;
+import org.apache.lucene.analysis.opennlp.tools.OpenNLPOpsFactory;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.SolrInfoMBean;
+import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.DeleteUpdateCommand;
+import org.apache.solr.update.VersionInfo;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
+import org.apache.solr.util.DefaultSolrThreadFactory;
+import org.apache.solr.util.plugin.SolrCoreAware;
+
+/**
+ * Takes named entity recognition off the indexing path: documents are indexed as sent, and
+ * the entities of their source field are found on background threads and written to the
+ * entity fields with atomic updates.
+ * <pre class="prettyprint" >
+ * &lt;updateRequestProcessorChain name="opennlp-ner"&gt;
+ *   &lt;processor class="org.apache.solr.update.processor.opennlp.OpenNLPAsyncNERProcessorFactory"&gt;
+ *     &lt;str name="sourceField"&gt;text&lt;/str&gt;
+ *     &lt;str name="sentenceModel"&gt;filename&lt;/str&gt;
+ *     &lt;str name="tokenizerModel"&gt;filename&lt;/str&gt;
+ *     &lt;str name="nerTaggerModels"&gt;filename,filename&lt;/str&gt;
+ *     &lt;str name="entityFieldPrefix"&gt;ner_&lt;/str&gt;
+ *     &lt;int name="queueSize"&gt;10000&lt;/int&gt;
+ *     &lt;int name="threads"&gt;1&lt;/int&gt;
+ *     &lt;int name="batchSize"&gt;100&lt;/int&gt;
+ *     &lt;bool name="blockWhenFull"&gt;false&lt;/bool&gt;
+ *     &lt;int name="commitWithin"&gt;-1&lt;/int&gt;
+ *   &lt;/processor&gt;
+ *   &lt;processor class="solr.LogUpdateProcessorFactory"/&gt;
+ *   &lt;processor class="solr.RunUpdateProcessorFactory"/&gt;
+ * &lt;/updateRequestProcessorChain&gt;</pre>
+ * <p>Entities of each type are set as the values of the field entityFieldPrefix + type, such
+ * as ner_person; types without entities are removed from the document. The fields must suit
+ * atomic updates (stored or docValues, with a _version_ field), and the processor must come
+ * before the distributed update processor, so that each document is queued once.</p>
+ * <p>Each worker thread owns its sentence detector, tokenizer and NER ops, built over the
+ * models shared with the OpenNLP analysis chains. Updates go through the updateChain
+ * (default: the core's default chain), marked in the request context so that this processor
+ * passes them through, see {@link #isEntityUpdate}. The ops are created when the core loads,
+ * which fails if they cannot be. Entity updates require the document to exist, so a deleted document is not
+ * recreated, and a document re-added before its entities were found is only tagged once,
+ * from its latest text.</p>
+ * <p>The queue holds at most queueSize documents. When it is full, a document is dropped
+ * from entity recognition, and keeps no entity fields, unless blockWhenFull makes indexing
+ * wait for room. The statistics report the backlog, the lag from indexing to the entity
+ * update, and the counts of queued, updated, dropped, superseded and failed documents.</p>
+ */
+public class OpenNLPAsyncNERProcessorFactory extends UpdateRequestProcessorFactory implements SolrCoreAware, SolrInfoMBean {
+  public static final String SOURCE_FIELD = "sourceField";
+  public static final String SENTENCE_MODEL = "sentenceModel";
+  public static final String TOKENIZER_MODEL = "tokenizerModel";
+  public static final String NER_TAGGER_MODELS = "nerTaggerModels";
+  public static final String ENTITY_FIELD_PREFIX = "entityFieldPrefix";
+  public static final String QUEUE_SIZE = "queueSize";
+  public static final String THREADS = "threads";
+  public static final String BATCH_SIZE = "batchSize";
+  public static final String BLOCK_WHEN_FULL = "blockWhenFull";
+  public static final String COMMIT_WITHIN = "commitWithin";
+  public static final String UPDATE_CHAIN = "updateChain";
+  // request context key of the entity updates; not a parameter, so clients cannot set it
+  private static final Object ENTITY_UPDATE = new Object();
+  
+  private String sourceField;
+  private String sentenceModelFile;
+  private String tokenizerModelFile;
+  private String[] nerTaggerModelFiles;
+  private String entityFieldPrefix;
+  private int threads;
+  private int batchSize;
+  private boolean blockWhenFull;
+  private int commitWithin;
+  private String updateChain;
+  
+  private SolrCore core;
+  private String idField;
+  private Set<String> entityTypes;
+  private BlockingQueue<Task> queue;
+  // latest queued task per document id; older tasks of the same id are superseded
+  private final Map<String,Task> pending = new ConcurrentHashMap<>();
+  private ExecutorService executor;
+  private volatile boolean closed = false;
+  
+  private final LongAdder queued = new LongAdder();
+  private final LongAdder updated = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder superseded = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final AtomicLong maxLagMillis = new AtomicLong();
+  private volatile long lastLagMillis = 0;
+  private volatile String lastError = null;
+  
+  /** A document waiting for entity recognition. */
+  static final class Task {
+    final String id;
+    final String text;
+    final long queuedAt = System.nanoTime();
+    
+    Task(String id, String text) {
+      this.id = id;
+      this.text = text;
+    }
+  }
+  
+  @Override
+  public void init(NamedList args) {
+    super.init(args);
+    sourceField = getString(args, SOURCE_FIELD, null);
+    String fileList = getString(args, NER_TAGGER_MODELS, null);
+    if (sourceField == null || fileList == null) {
+      throw new SolrException(ErrorCode.SERVER_ERROR,
+          "Configuration Error: " + SOURCE_FIELD + " and " + NER_TAGGER_MODELS + " are required");
+    }
+    nerTaggerModelFiles = fileList.split(",");
+    sentenceModelFile = getString(args, SENTENCE_MODEL, null);
+    tokenizerModelFile = getString(args, TOKENIZER_MODEL, null);
+    entityFieldPrefix = getString(args, ENTITY_FIELD_PREFIX, "ner_");
+    int queueSize = getInt(args, QUEUE_SIZE, 10000);
+    threads = getInt(args, THREADS, 1);
+    batchSize = getInt(args, BATCH_SIZE, 100);
+    if (queueSize < 1 || threads < 1 || batchSize < 1) {
+      throw new SolrException(ErrorCode.SERVER_ERROR,
+          "Configuration Error: " + QUEUE_SIZE + ", " + THREADS + " and " + BATCH_SIZE + " must be positive");
+    }
+    queue = new ArrayBlockingQueue<>(queueSize);
+    blockWhenFull = Boolean.parseBoolean(getString(args, BLOCK_WHEN_FULL, "false"));
+    commitWithin = getInt(args, COMMIT_WITHIN, -1);
+    updateChain = getString(args, UPDATE_CHAIN, null);
+  }
+  
+  private static String getString(NamedList args, String name, String defaultValue) {
+    Object value = args.get(name);
+    return value == null ? defaultValue : value.toString();
+  }
+  
+  private static int getInt(NamedList args, String name, int defaultValue) {
+    Object value = args.get(name);
+    return value == null ? defaultValue : Integer.parseInt(value.toString());
+  }
+  
+  @Override
+  public void inform(SolrCore core) {
+    this.core = core;
+    if (core.getLatestSchema().getUniqueKeyField() == null) {
+      throw new SolrException(ErrorCode.SERVER_ERROR, "Configuration Error: entity updates need a uniqueKey field");
+    }
+    idField = core.getLatestSchema().getUniqueKeyField().getName();
+    SolrResourceLoader loader = core.getResourceLoader();
+    entityTypes = new TreeSet<>();
+    List<Worker> workers = new ArrayList<>(threads);
+    try {
+      if (sentenceModelFile != null) {
+        try (InputStream in = loader.openResource(sentenceModelFile)) {
+          OpenNLPOpsFactory.getSentenceModel(sentenceModelFile, in);
+        }
+      }
+      if (tokenizerModelFile != null) {
+        try (InputStream in = loader.openResource(tokenizerModelFile)) {
+          OpenNLPOpsFactory.getTokenizerModel(tokenizerModelFile, in);
+        }
+      }
+      for (String file: nerTaggerModelFiles) {
+        try (InputStream in = loader.openResource(file)) {
+          OpenNLPOpsFactory.getNERTaggerModel(file, in);
+        }
+        // types without entities are cleared, so every type of every model is updated
+        NLPTagVocabulary types = OpenNLPOpsFactory.getNERTagVocabulary(file);
+        for (int id = 1; id <= types.size(); id++) {
+          entityTypes.add(types.getTag(id));
+        }
+      }
+      for (int i = 0; i < threads; i++) {
+        workers.add(new Worker());
+      }
+    } catch (IOException e) {
+      throw new SolrException(ErrorCode.SERVER_ERROR, "Configuration Error: cannot load models", e);
+    }
+    
+    executor = ExecutorUtil.newMDCAwareFixedThreadPool(threads, new DefaultSolrThreadFactory("opennlpNER"));
+    for (Worker worker: workers) {
+      executor.execute(worker);
+    }
+    core.addCloseHook(new CloseHook() {
+      @Override
+      public void preClose(SolrCore core) {
+        closed = true;
+        ExecutorUtil.shutdownAndAwaitTermination(executor);
+        // documents still queued keep no entity fields
+        dropped.add(queue.size());
+        queue.clear();
+        pending.clear();
+      }
+      
+      @Override
+      public void postClose(SolrCore core) {
+      }
+    });
+  }
+  
+  @Override
+  public UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
+    if (isEntityUpdate(req)) {
+      return next;
+    }
+    return new UpdateRequestProcessor(next) {
+      @Override
+      public void processAdd(AddUpdateCommand cmd) throws IOException {
+        super.processAdd(cmd);
+        SolrInputDocument doc = cmd.getSolrInputDocument();
+        Object id = doc.getFieldValue(idField);
+        Object text = doc.getFieldValue(sourceField);
+        // atomic updates of the source field are not queued: their text is not at hand
+        if (id != null && text instanceof CharSequence) {
+          enqueue(new Task(id.toString(), text.toString()));
+        }
+      }
+      
+      @Override
+      public void processDelete(DeleteUpdateCommand cmd) throws IOException {
+        if (cmd.isDeleteById()) {
+          pending.remove(cmd.getId());
+        }
+        super.processDelete(cmd);
+      }
+    };
+  }
+  
+  void enqueue(Task task) {
+    if (closed) {
+      dropped.increment();
+      return;
+    }
+    pending.put(task.id, task);
+    boolean added;
+    if (blockWhenFull) {
+      try {
+        queue.put(task);
+        added = true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        added = false;
+      }
+    } else {
+      added = queue.offer(task);
+    }
+    if (added) {
+      queued.increment();
+    } else {
+      pending.remove(task.id, task);
+      dropped.increment();
+    }
+  }
+  
+  /** True for the entity updates sent by this processor. */
+  public static boolean isEntityUpdate(SolrQueryRequest req) {
+    return req.getContext().get(ENTITY_UPDATE) != null;
+  }
+  
+  /** Finds entities in batches of queued documents, with its own ops. */
+  private class Worker implements Runnable {
+    private final NLPSentenceDetectorOp sentenceOp;
+    private final NLPTokenizerOp tokenizerOp;
+    private final List<NLPNERTaggerOp> nerTaggerOps = new ArrayList<>(nerTaggerModelFiles.length);
+    
+    Worker() throws IOException {
+      sentenceOp = OpenNLPOpsFactory.getSentenceDetector(sentenceModelFile);
+      tokenizerOp = OpenNLPOpsFactory.getTokenizer(tokenizerModelFile);
+      for (String file: nerTaggerModelFiles) {
+        nerTaggerOps.add(OpenNLPOpsFactory.getNERTagger(file));
+      }
+    }
+    
+    @Override
+    public void run() {
+      List<Task> batch = new ArrayList<>(batchSize);
+      while (!closed) {
+        try {
+          Task first = queue.poll(1, TimeUnit.SECONDS);
+          if (first == null) {
+            continue;
+          }
+          batch.add(first);
+          queue.drainTo(batch, batchSize - 1);
+          update(batch, sentenceOp, tokenizerOp, nerTaggerOps);
+        } catch (InterruptedException e) {
+          return;
+        } finally {
+          batch.clear();
+        }
+      }
+    }
+  }
+  
+  private void update(List<Task> batch, NLPSentenceDetectorOp sentenceOp, NLPTokenizerOp tokenizerOp,
+                      List<NLPNERTaggerOp> nerTaggerOps) {
+    SolrQueryRequest req = new LocalSolrQueryRequest(core, new ModifiableSolrParams());
+    req.getContext().put(ENTITY_UPDATE, Boolean.TRUE);
+    SolrQueryResponse rsp = new SolrQueryResponse();
+    SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));
+    try {
+      UpdateRequestProcessor processor = core.getUpdateProcessingChain(updateChain).createProcessor(req, rsp);
+      try {
+        for (Task task: batch) {
+          if (pending.get(task.id) != task) {
+            superseded.increment();
+            continue;
+          }
+          try {
+            AddUpdateCommand cmd = new AddUpdateCommand(req);
+            cmd.solrDoc = entityUpdate(idField, task.id, entityFieldPrefix, entityTypes,
+                findEntities(task.text, sentenceOp, tokenizerOp, nerTaggerOps));
+            cmd.commitWithin = commitWithin;
+            processor.processAdd(cmd);
+            updated.increment();
+            recordLag(task);
+          } catch (SolrException e) {
+            if (e.code() == ErrorCode.CONFLICT.code) {
+              // deleted meanwhile
+              superseded.increment();
+            } else {
+              failed.increment();
+              lastError = e.toString();
+            }
+          } catch (IOException | RuntimeException e) {
+            // only this document fails; the rest of the batch goes on
+            failed.increment();
+            lastError = e.toString();
+          } finally {
+            pending.remove(task.id, task);
+          }
+        }
+        processor.finish();
+      } finally {
+        processor.close();
+      }
+    } catch (IOException | RuntimeException e) {
+      // the chain could not be created or finished: the documents still pending fail
+      for (Task task: batch) {
+        if (pending.remove(task.id, task)) {
+          failed.increment();
+        }
+      }
+      lastError = e.toString();
+    } finally {
+      req.close();
+      SolrRequestInfo.clearRequestInfo();
+    }
+  }
+  
+  private void recordLag(Task task) {
+    long lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - task.queuedAt);
+    lastLagMillis = lag;
+    maxLagMillis.accumulateAndGet(lag, Math::max);
+  }
+  
+  /** @return the distinct entities of each type, in text order */
+  static Map<String,Set<String>> findEntities(String text, NLPSentenceDetectorOp sentenceOp, NLPTokenizerOp tokenizerOp,
+                                              List<NLPNERTaggerOp> nerTaggerOps) {
+    Map<String,Set<String>> entities = new TreeMap<>();
+    for (Span sentenceSpan: sentenceOp.splitSentences(text)) {
+      String sentence = sentenceSpan.getCoveredText(text).toString();
+      Span[] wordSpans = tokenizerOp.getTerms(sentence);
+      if (wordSpans.length == 0) {
+        continue;
+      }
+      String[] words = new String[wordSpans.length];
+      for (int i = 0; i < wordSpans.length; i++) {
+        words[i] = wordSpans[i].getCoveredText(sentence).toString();
+      }
+      for (NLPNERTaggerOp op: nerTaggerOps) {
+        for (Span name: op.getNames(words)) {
+          String entity = sentence.substring(wordSpans[name.getStart()].getStart(), wordSpans[name.getEnd() - 1].getEnd());
+          entities.computeIfAbsent(name.getType(), k -> new LinkedHashSet<>()).add(entity);
+        }
+      }
+    }
+    return entities;
+  }
+  
+  /** Atomic update setting the entity fields of an existing document. */
+  static SolrInputDocument entityUpdate(String idField, String id, String fieldPrefix, Collection<String> entityTypes,
+                                        Map<String,Set<String>> entities) {
+    SolrInputDocument doc = new SolrInputDocument();
+    doc.addField(idField, id);
+    // 1 requires that the document exists, whatever its version
+    doc.addField(VersionInfo.VERSION_FIELD, 1L);
+    Set<String> types = new TreeSet<>(entityTypes);
+    types.addAll(entities.keySet());
+    for (String type: types) {
+      Set<String> values = entities.get(type);
+      doc.addField(fieldPrefix + type, Collections.singletonMap("set", values == null ? null : new ArrayList<>(values)));
+    }
+    return doc;
+  }
+  
+  public int getBacklog() {
+    return queue.size();
+  }
+  
+  /** Age of the oldest queued document, 0 if none. */
+  public long getOldestQueuedMillis() {
+    Task oldest = queue.peek();
+    return oldest == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.queuedAt);
+  }
+  
+  @Override
+  public String getName() {
+    return getClass().getName();
+  }
+  
+  @Override
+  public String getVersion() {
+    return null;
+  }
+  
+  @Override
+  public String getDescription() {
+    return "Asynchronous OpenNLP named entity recognition with atomic updates";
+  }
+  
+  @Override
+  public Category getCategory() {
+    return Category.UPDATEHANDLER;
+  }
+  
+  @Override
+  public String getSource() {
+    return null;
+  }
+  
+  @Override
+  public URL[] getDocs() {
+    return null;
+  }
+  
+  @Override
+  public NamedList getStatistics() {
+    NamedList<Object> stats = new SimpleOrderedMap<>();
+    stats.add("backlog", getBacklog());
+    stats.add("oldestQueuedMillis", getOldestQueuedMillis());
+    stats.add("lastLagMillis", lastLagMillis);
+    stats.add("maxLagMillis", maxLagMillis.get());
+    stats.add("queued", queued.sum());
+    stats.add("updated", updated.sum());
+    stats.add("dropped", dropped.sum());
+    stats.add("superseded", superseded.sum());
+    stats.add("failed", failed.sum());
+    if (lastError != null) {
+      stats.add("lastError", lastError);
+    }
+    return stats;
+  }
+}
@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.solr.util.opennlp;
+
+import java.io.BufferedWriter;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.FlagsAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.analysis.util.CharFilterFactory;
+import org.apache.lucene.analysis.util.TokenFilterFactory;
+import org.apache.lucene.analysis.util.TokenizerFactory;
+import org.apache.lucene.util.BytesRef;
+import org.noggit.JSONUtil;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Offline annotation: runs an analyzer chain over a batch of files and writes Solr JSON
+ * update documents whose field value is in the PreAnalyzedField JSON format, so a reindex
+ * can skip the OpenNLP analysis on the cluster.
+ * <pre>
+ * OpenNLPAnnotateTool -analyzer analyzer.xml -conf confDir -field text_pre [-threads n] [-out file] input...
+ * </pre>
+ * <p>analyzer.xml holds an &lt;analyzer&gt; element (alone or inside a &lt;fieldType&gt;) with
+ * charFilter/tokenizer/filter children, as in schema.xml. Parameters are element attributes,
+ * model and dictionary files are resolved in confDir. solr.X class names are looked up in this
+ * module, then through the analysis SPI.</p>
+ * <p>Each input file (directories are walked) is one UTF-8 document, streamed into the analyzer,
+ * with its path as id. Documents are written as a JSON array, in completion order. A file that
+ * cannot be read or analyzed is reported on stderr and skipped, and the array is closed even
+ * when writing fails. Throughput is reported on stderr every 10 seconds.</p>
+ */
+public class OpenNLPAnnotateTool {
+  private final Analyzer analyzer;
+  private final String field;
+  private final LongAdder docs = new LongAdder();
+  private final LongAdder chars = new LongAdder();
+  private final LongAdder tokens = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+  
+  public OpenNLPAnnotateTool(Analyzer analyzer, String field) {
+    this.analyzer = analyzer;
+    this.field = field;
+  }
+  
+  public static void main(String[] args) throws Exception {
+    String analyzerFile = null;
+    String confDir = ".";
+    String field = null;
+    String out = null;
+    int threads = Runtime.getRuntime().availableProcessors();
+    List<Path> inputs = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "-analyzer": analyzerFile = args[++i]; break;
+        case "-conf": confDir = args[++i]; break;
+        case "-field": field = args[++i]; break;
+        case "-threads": threads = Integer.parseInt(args[++i]); break;
+        case "-out": out = args[++i]; break;
+        default: inputs.add(Paths.get(args[i]));
+      }
+    }
+    if (analyzerFile == null || field == null || inputs.isEmpty() || threads < 1) {
+      System.err.println("Usage: OpenNLPAnnotateTool -analyzer analyzer.xml -conf confDir -field name"
+          + " [-threads n] [-out file] input...");
+      System.exit(1);
+    }
+    
+    Analyzer analyzer = buildAnalyzer(Paths.get(analyzerFile), Paths.get(confDir));
+    List<Path> files = new ArrayList<>();
+    for (Path input: inputs) {
+      try (Stream<Path> walk = Files.walk(input)) {
+        files.addAll(walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+      }
+    }
+    Writer writer = new BufferedWriter(out == null
+        ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+        : Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8));
+    OpenNLPAnnotateTool tool = new OpenNLPAnnotateTool(analyzer, field);
+    long start = System.nanoTime();
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    reporter.scheduleAtFixedRate(() -> tool.report(start), 10, 10, TimeUnit.SECONDS);
+    try {
+      tool.annotate(files, threads, writer);
+    } finally {
+      reporter.shutdownNow();
+      writer.close();
+      analyzer.close();
+    }
+    tool.report(start);
+  }
+  
+  /** Writes the files as a JSON array of documents, skipping the files that fail. */
+  public void annotate(List<Path> files, int threads, Writer writer) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    writer.write("[\n");
+    try {
+      List<Future<?>> futures = new ArrayList<>(files.size());
+      boolean[] first = { true };
+      for (Path file: files) {
+        futures.add(executor.submit(() -> {
+          String doc;
+          try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            doc = toSolrDocument(file.toString(), reader);
+          } catch (IOException | RuntimeException e) {
+            skipped.increment();
+            System.err.println("Skipping " + file + ": " + e);
+            return null;
+          }
+          synchronized (writer) {
+            if (!first[0]) {
+              writer.write(",\n");
+            }
+            first[0] = false;
+            writer.write(doc);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future: futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+      writer.write("\n]\n");
+    }
+  }
+  
+  /** @return the number of files skipped because they could not be read or analyzed */
+  public long getSkipped() {
+    return skipped.sum();
+  }
+  
+  String toSolrDocument(String id, Reader text) throws IOException {
+    Map<String,Object> preAnalyzed = toPreAnalyzed(text);
+    Map<String,Object> doc = new LinkedHashMap<>();
+    doc.put("id", id);
+    doc.put(field, JSONUtil.toJSON(preAnalyzed, -1));
+    docs.increment();
+    chars.add(((String) preAnalyzed.get("str")).length());
+    return JSONUtil.toJSON(doc, -1);
+  }
+  
+  /** Keeps a copy of the text read, which the stored value needs. */
+  private static class RecordingReader extends FilterReader {
+    final StringBuilder text = new StringBuilder();
+    
+    RecordingReader(Reader in) {
+      super(in);
+    }
+    
+    @Override
+    public int read() throws IOException {
+      int c = super.read();
+      if (c != -1) {
+        text.append((char) c);
+      }
+      return c;
+    }
+    
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+      int count = super.read(buffer, offset, length);
+      if (count > 0) {
+        text.append(buffer, offset, count);
+      }
+      return count;
+    }
+    
+    @Override
+    public long skip(long n) throws IOException {
+      // skipped text is recorded too
+      char[] buffer = new char[(int) Math.min(n, 1024)];
+      int count = read(buffer, 0, buffer.length);
+      return Math.max(count, 0);
+    }
+    
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+    
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+      throw new IOException("mark() not supported");
+    }
+    
+    /** Reads and records what the analyzer left unread. */
+    String drain() throws IOException {
+      char[] buffer = new char[1024];
+      int count;
+      do {
+        count = read(buffer, 0, buffer.length);
+      } while (count != -1);
+      return text.toString();
+    }
+  }
+  
+  /** PreAnalyzedField JSON: stored string and one map per token. */
+  Map<String,Object> toPreAnalyzed(Reader reader) throws IOException {
+    List<Map<String,Object>> tokenList = new ArrayList<>();
+    RecordingReader text = new RecordingReader(reader);
+    String str;
+    try (TokenStream ts = analyzer.tokenStream(field, text)) {
+      CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+      OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+      PositionIncrementAttribute posIncAtt = ts.addAttribute(PositionIncrementAttribute.class);
+      TypeAttribute typeAtt = ts.addAttribute(TypeAttribute.class);
+      PayloadAttribute payloadAtt = ts.hasAttribute(PayloadAttribute.class) ? ts.getAttribute(PayloadAttribute.class) : null;
+      FlagsAttribute flagsAtt = ts.hasAttribute(FlagsAttribute.class) ? ts.getAttribute(FlagsAttribute.class) : null;
+      ts.reset();
+      while (ts.incrementToken()) {
+        Map<String,Object> token = new LinkedHashMap<>();
+        token.put("t", termAtt.toString());
+        token.put("s", offsetAtt.startOffset());
+        token.put("e", offsetAtt.endOffset());
+        token.put("i", posIncAtt.getPositionIncrement());
+        if (typeAtt.type() != null && !TypeAttribute.DEFAULT_TYPE.equals(typeAtt.type())) {
+          token.put("y", typeAtt.type());
+        }
+        if (payloadAtt != null && payloadAtt.getPayload() != null) {
+          BytesRef payload = payloadAtt.getPayload();
+          token.put("p", Base64.getEncoder().encodeToString(
+              Arrays.copyOfRange(payload.bytes, payload.offset, payload.offset + payload.length)));
+        }
+        if (flagsAtt != null && flagsAtt.getFlags() != 0) {
+          token.put("f", Integer.toHexString(flagsAtt.getFlags()));
+        }
+        tokenList.add(token);
+      }
+      ts.end();
+      str = text.drain();
+    }
+    tokens.add(tokenList.size());
+    Map<String,Object> preAnalyzed = new LinkedHashMap<>();
+    preAnalyzed.put("v", "1");
+    preAnalyzed.put("str", str);
+    preAnalyzed.put("tokens", tokenList);
+    return preAnalyzed;
+  }
+  
+  void report(long startNanos) {
+    double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+    System.err.printf(Locale.ROOT, "%d docs (%d skipped), %d chars, %d tokens in %.1fs: %.1f docs/s, %.0f chars/s, %.0f tokens/s%n",
+        docs.sum(), skipped.sum(), chars.sum(), tokens.sum(), seconds,
+        docs.sum() / seconds, chars.sum() / seconds, tokens.sum() / seconds);
+  }
+  
+  /** Builds the analyzer of the first &lt;analyzer&gt; element of the file. */
+  public static Analyzer buildAnalyzer(Path analyzerXml, Path confDir) throws Exception {
+    Element root = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(analyzerXml.toFile()).getDocumentElement();
+    Element analyzer = "analyzer".equals(root.getNodeName()) ? root : (Element) root.getElementsByTagName("analyzer").item(0);
+    if (analyzer == null) {
+      throw new IllegalArgumentException("No <analyzer> element in " + analyzerXml);
+    }
+    CustomAnalyzer.Builder builder = CustomAnalyzer.builder(confDir);
+    NodeList children = analyzer.getChildNodes();
+    for (int i = 0; i < children.getLength(); i++) {
+      Node node = children.item(i);
+      if (node.getNodeType() != Node.ELEMENT_NODE) {
+        continue;
+      }
+      Element element = (Element) node;
+      String className = element.getAttribute("class");
+      Map<String,String> params = new HashMap<>();
+      NamedNodeMap attributes = element.getAttributes();
+      for (int j = 0; j < attributes.getLength(); j++) {
+        Node attribute = attributes.item(j);
+        if (!"class".equals(attribute.getNodeName())) {
+          params.put(attribute.getNodeName(), attribute.getNodeValue());
+        }
+      }
+      switch (element.getNodeName()) {
+        case "charFilter":
+          builder.addCharFilter(resolve(className, CharFilterFactory.class, "CharFilterFactory"), params);
+          break;
+        case "tokenizer":
+          builder.withTokenizer(resolve(className, TokenizerFactory.class, "TokenizerFactory"), params);
+          break;
+        case "filter":
+          builder.addTokenFilter(resolve(className, TokenFilterFactory.class, "FilterFactory"), params);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown analyzer element: " + element.getNodeName());
+      }
+    }
+    return builder.build();
+  }
+  
+  static <T> Class<? extends T> resolve(String className, Class<T> type, String suffix) throws ClassNotFoundException {
+    if (!className.startsWith("solr.")) {
+      return Class.forName(className).asSubclass(type);
+    }
+    String simpleName = className.substring("solr.".length());
+    try {
+      return Class.forName("org.apache.lucene.analysis.opennlp." + simpleName).asSubclass(type);
+    } catch (ClassNotFoundException e) {
+      String spiName = simpleName.endsWith(suffix) ? simpleName.substring(0, simpleName.length() - suffix.length()) : simpleName;
+      if (type == TokenizerFactory.class) {
+        return TokenizerFactory.lookupClass(spiName).asSubclass(type);
+      } else if (type == TokenFilterFactory.class) {
+        return TokenFilterFactory.lookupClass(spiName).asSubclass(type);
+      } else {
+        return CharFilterFactory.lookupClass(spiName).asSubclass(type);
+      }
+    }
+  }
+}
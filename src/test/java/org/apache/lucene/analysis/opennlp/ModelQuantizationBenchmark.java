@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.lucene.analysis.opennlp.tools.NLPChunkerOp;
+import org.apache.lucene.analysis.opennlp.tools.NLPModelQuantizer.Quantization;
+import org.apache.lucene.analysis.opennlp.tools.NLPPOSTaggerOp;
+import org.apache.lucene.analysis.opennlp.tools.NLPRamEstimator;
+import org.apache.lucene.analysis.opennlp.tools.OpenNLPOpsFactory;
+
+/**
+ * Compares model heap usage, accuracy and throughput of the POS tagger and chunker across
+ * parameter quantizations (see quantization in {@link OpenNLPFilterFactory}).
+ * Agreement is measured against the unquantized model.
+ * <p>
+ * Usage: ModelQuantizationBenchmark modelDir [corpusDir] [iterations]
+ * <br>modelDir holds en-test-pos-maxent.bin and en-test-chunker.bin;
+ * corpusDir defaults to src/tools/test-model-data (pos.txt, chunks.txt).
+ * Pass a held-out corpus for meaningful accuracy: the bundled one is the training data of the test models.
+ */
+public class ModelQuantizationBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: ModelQuantizationBenchmark modelDir [corpusDir] [iterations]");
+      System.exit(1);
+    }
+    Path modelDir = Paths.get(args[0]);
+    Path corpusDir = Paths.get(args.length > 1 ? args[1] : "src/tools/test-model-data");
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+    String posModel = "en-test-pos-maxent.bin";
+    String chunkerModel = "en-test-chunker.bin";
+
+    TaggedCorpus posCorpus = TaggedCorpus.readPOS(corpusDir.resolve("pos.txt"));
+    System.out.println(String.format(Locale.ROOT, "POS tagger: %d sentences, %d tokens",
+        posCorpus.size(), posCorpus.tokenCount()));
+    System.out.println("quantization\tmodel bytes\taccuracy\tagreement\ttokens/sec");
+    List<String[]> reference = null;
+    for (Quantization quantization : Quantization.values()) {
+      String name = OpenNLPOpsFactory.modelName(posModel, quantization);
+      long bytes;
+      try (InputStream in = Files.newInputStream(modelDir.resolve(posModel))) {
+        bytes = NLPRamEstimator.sizeOf(OpenNLPOpsFactory.getPOSTaggerModel(name, in, quantization));
+      }
+      NLPPOSTaggerOp op = OpenNLPOpsFactory.getPOSTagger(name);
+      List<String[]> tags = tagPOS(op, posCorpus);
+      if (reference == null) {
+        reference = tags;
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        tagPOS(op, posCorpus);
+      }
+      report(quantization, bytes, TaggedCorpus.accuracy(posCorpus.posTags, tags),
+          TaggedCorpus.accuracy(reference, tags), posCorpus.tokenCount() * (long) iterations, System.nanoTime() - start);
+    }
+
+    TaggedCorpus chunkCorpus = TaggedCorpus.readChunks(corpusDir.resolve("chunks.txt"));
+    System.out.println(String.format(Locale.ROOT, "Chunker (gold POS tags): %d sentences, %d tokens",
+        chunkCorpus.size(), chunkCorpus.tokenCount()));
+    System.out.println("quantization\tmodel bytes\taccuracy\tagreement\ttokens/sec");
+    reference = null;
+    for (Quantization quantization : Quantization.values()) {
+      String name = OpenNLPOpsFactory.modelName(chunkerModel, quantization);
+      long bytes;
+      try (InputStream in = Files.newInputStream(modelDir.resolve(chunkerModel))) {
+        bytes = NLPRamEstimator.sizeOf(OpenNLPOpsFactory.getChunkerModel(name, in, quantization));
+      }
+      NLPChunkerOp op = OpenNLPOpsFactory.getChunker(name);
+      List<String[]> chunks = chunk(op, chunkCorpus);
+      if (reference == null) {
+        reference = chunks;
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        chunk(op, chunkCorpus);
+      }
+      report(quantization, bytes, TaggedCorpus.accuracy(chunkCorpus.chunkTags, chunks),
+          TaggedCorpus.accuracy(reference, chunks), chunkCorpus.tokenCount() * (long) iterations, System.nanoTime() - start);
+    }
+    OpenNLPOpsFactory.clearModels();
+  }
+
+  private static List<String[]> tagPOS(NLPPOSTaggerOp op, TaggedCorpus corpus) {
+    List<String[]> tags = new ArrayList<>(corpus.size());
+    for (String[] sentence : corpus.words) {
+      tags.add(op.getPOSTags(sentence));
+    }
+    return tags;
+  }
+
+  private static List<String[]> chunk(NLPChunkerOp op, TaggedCorpus corpus) {
+    List<String[]> chunks = new ArrayList<>(corpus.size());
+    for (int i = 0; i < corpus.size(); i++) {
+      chunks.add(op.getChunks(corpus.words.get(i), corpus.posTags.get(i), null));
+    }
+    return chunks;
+  }
+
+  private static void report(Quantization quantization, long bytes, double accuracy, double agreement, long tokens, long nanos) {
+    System.out.println(String.format(Locale.ROOT, "%s\t%d\t%.4f\t%.4f\t%.0f",
+        quantization.name().toLowerCase(Locale.ROOT), bytes, accuracy, agreement, tokens * 1e9 / nanos));
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.lucene.analysis.opennlp.tools.OpenNLPOpsFactory;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.noggit.JSONUtil;
+
+/**
+ * End-to-end benchmark: core load time, indexing throughput at several client concurrency
+ * levels and query latency percentiles, on an EmbeddedSolrServer whose schema chains
+ * {@link OpenNLPTokenizerFactory}, {@link OpenNLPFilterFactory} and {@link OpenNLPLemmatizerFilterFactory}.
+ * <p>
+ * Usage: SolrIndexingBenchmark modelDir [resultFile] [docs] [threads,threads,...] [queries]
+ * <br>modelDir holds the en-test-* models and en-test-lemmas.dict, see src/tools/bin/train-test-models.sh.
+ * The Solr home is copied from src/test/resources/solr/opennlp-bench to a temporary directory.
+ * Documents are groups of 5 lines of src/tools/test-model-data/sentences.txt.
+ * Results are printed and written as JSON to resultFile (default opennlp-bench.json), with
+ * the value of -Dbench.commit to tell runs apart.
+ */
+public class SolrIndexingBenchmark {
+  private static final String CORE = "opennlp";
+  private static final String[] MODEL_FILES = {
+      "en-test-sent.bin", "en-test-tokenizer.bin", "en-test-pos-maxent.bin",
+      "en-test-chunker.bin", "en-test-ner-person.bin", "en-test-lemmas.dict" };
+  private static final int BATCH = 100;
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: SolrIndexingBenchmark modelDir [resultFile] [docs] [threads,threads,...] [queries]");
+      System.exit(1);
+    }
+    Path modelDir = Paths.get(args[0]);
+    Path resultFile = Paths.get(args.length > 1 ? args[1] : "opennlp-bench.json");
+    int docCount = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+    int[] concurrency = Arrays.stream((args.length > 3 ? args[3] : "1,2,4,8").split(","))
+        .mapToInt(Integer::parseInt).toArray();
+    int queryCount = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+
+    Path solrHome = Files.createTempDirectory("opennlp-bench");
+    copyTree(Paths.get("src/test/resources/solr/opennlp-bench"), solrHome);
+    Path conf = solrHome.resolve(CORE).resolve("conf");
+    for (String file: MODEL_FILES) {
+      Files.copy(modelDir.resolve(file), conf.resolve(file));
+    }
+    List<String> texts = texts(Paths.get("src/tools/test-model-data/sentences.txt"), docCount);
+
+    Map<String,Object> results = new LinkedHashMap<>();
+    results.put("commit", System.getProperty("bench.commit", "unknown"));
+    results.put("docs", docCount);
+
+    // cold: models read from disk; warm: reload with the models in the static cache
+    OpenNLPOpsFactory.clearModels();
+    long start = System.nanoTime();
+    EmbeddedSolrServer server = new EmbeddedSolrServer(solrHome, CORE);
+    double coldMillis = (System.nanoTime() - start) / 1e6;
+    start = System.nanoTime();
+    server.getCoreContainer().reload(CORE);
+    double warmMillis = (System.nanoTime() - start) / 1e6;
+    Map<String,Object> coreLoad = new LinkedHashMap<>();
+    coreLoad.put("coldMillis", coldMillis);
+    coreLoad.put("warmReloadMillis", warmMillis);
+    results.put("coreLoad", coreLoad);
+    System.out.println(String.format(Locale.ROOT, "core load: %.0f ms cold, %.0f ms warm reload", coldMillis, warmMillis));
+
+    try {
+      List<Map<String,Object>> indexing = new ArrayList<>();
+      for (int threads: concurrency) {
+        server.deleteByQuery("*:*");
+        server.commit();
+        start = System.nanoTime();
+        index(server, texts, threads);
+        double indexSeconds = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        server.commit();
+        double commitSeconds = (System.nanoTime() - start) / 1e9;
+        Map<String,Object> run = new LinkedHashMap<>();
+        run.put("threads", threads);
+        run.put("docsPerSec", docCount / indexSeconds);
+        run.put("commitMillis", commitSeconds * 1000);
+        indexing.add(run);
+        System.out.println(String.format(Locale.ROOT, "indexing: %d threads, %.1f docs/s, commit %.0f ms",
+            threads, docCount / indexSeconds, commitSeconds * 1000));
+      }
+      results.put("indexing", indexing);
+      results.put("query", query(server, texts, queryCount));
+    } finally {
+      server.close();
+      OpenNLPOpsFactory.clearModels();
+    }
+    Files.write(resultFile, JSONUtil.toJSON(results).getBytes(StandardCharsets.UTF_8));
+    System.out.println("results written to " + resultFile);
+  }
+
+  private static void index(EmbeddedSolrServer server, List<String> texts, int threads) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int from = 0; from < texts.size(); from += BATCH) {
+        int batchStart = from;
+        futures.add(executor.submit(() -> {
+          List<SolrInputDocument> docs = new ArrayList<>(BATCH);
+          for (int i = batchStart; i < Math.min(batchStart + BATCH, texts.size()); i++) {
+            SolrInputDocument doc = new SolrInputDocument();
+            doc.addField("id", Integer.toString(i));
+            doc.addField("text", texts.get(i));
+            docs.add(doc);
+          }
+          server.add(docs);
+          return null;
+        }));
+      }
+      for (Future<?> future: futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  // single client: latency of term queries over the corpus vocabulary, analyzed by the same chain
+  private static Map<String,Object> query(EmbeddedSolrServer server, List<String> texts, int queryCount) throws Exception {
+    List<String> words = texts.stream().flatMap(text -> Arrays.stream(text.split("\\W+")))
+        .filter(word -> word.length() > 2).distinct().collect(Collectors.toList());
+    Random random = new Random(42);
+    long[] micros = new long[queryCount];
+    for (int i = 0; i < queryCount; i++) {
+      SolrQuery query = new SolrQuery(words.get(random.nextInt(words.size())));
+      long start = System.nanoTime();
+      server.query(query);
+      micros[i] = (System.nanoTime() - start) / 1000;
+    }
+    Arrays.sort(micros);
+    Map<String,Object> latency = new LinkedHashMap<>();
+    latency.put("queries", queryCount);
+    for (int percentile: new int[] {50, 90, 99}) {
+      latency.put("p" + percentile + "Micros", micros[Math.min(queryCount - 1, queryCount * percentile / 100)]);
+    }
+    latency.put("maxMicros", micros[queryCount - 1]);
+    System.out.println("query latency: " + latency);
+    return latency;
+  }
+
+  private static List<String> texts(Path sentenceFile, int docCount) throws IOException {
+    List<String> lines = Files.readAllLines(sentenceFile, StandardCharsets.UTF_8).stream()
+        .filter(line -> !line.trim().isEmpty()).collect(Collectors.toList());
+    List<String> texts = new ArrayList<>(docCount);
+    for (int i = 0; i < docCount; i++) {
+      StringBuilder sb = new StringBuilder();
+      for (int j = 0; j < 5; j++) {
+        sb.append(lines.get((i * 5 + j) % lines.size())).append(' ');
+      }
+      texts.add(sb.toString());
+    }
+    return texts;
+  }
+
+  private static void copyTree(Path from, Path to) throws IOException {
+    try (Stream<Path> walk = Files.walk(from)) {
+      for (Path path: walk.collect(Collectors.toList())) {
+        Path target = to.resolve(from.relativize(path).toString());
+        if (Files.isDirectory(path)) {
+          Files.createDirectories(target);
+        } else {
+          Files.copy(path, target);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gold-standard tagged sentences read from the training data in src/tools/test-model-data,
+ * for benchmarks that compare tagger output against it.
+ */
+public class TaggedCorpus {
+  public final List<String[]> words = new ArrayList<>();
+  public final List<String[]> posTags = new ArrayList<>();
+  /** empty unless read from a chunker file */
+  public final List<String[]> chunkTags = new ArrayList<>();
+
+  /** One sentence per line, tokens in the form word_TAG. Tokens without a tag are skipped. */
+  public static TaggedCorpus readPOS(Path file) throws IOException {
+    TaggedCorpus corpus = new TaggedCorpus();
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      List<String> words = new ArrayList<>();
+      List<String> tags = new ArrayList<>();
+      for (String token : line.trim().split("\\s+")) {
+        int split = token.lastIndexOf('_');
+        if (split <= 0 || split == token.length() - 1) {
+          continue;
+        }
+        words.add(token.substring(0, split));
+        tags.add(token.substring(split + 1));
+      }
+      if (!words.isEmpty()) {
+        corpus.add(words, tags, null);
+      }
+    }
+    return corpus;
+  }
+
+  /** One token per line in the form "word POS chunk", sentences separated by blank lines. */
+  public static TaggedCorpus readChunks(Path file) throws IOException {
+    TaggedCorpus corpus = new TaggedCorpus();
+    List<String> words = new ArrayList<>();
+    List<String> tags = new ArrayList<>();
+    List<String> chunks = new ArrayList<>();
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      String[] columns = line.trim().split("\\s+");
+      if (columns.length == 3) {
+        words.add(columns[0]);
+        tags.add(columns[1]);
+        chunks.add(columns[2]);
+      } else if (!words.isEmpty()) {
+        corpus.add(words, tags, chunks);
+        words.clear();
+        tags.clear();
+        chunks.clear();
+      }
+    }
+    if (!words.isEmpty()) {
+      corpus.add(words, tags, chunks);
+    }
+    return corpus;
+  }
+
+  private void add(List<String> words, List<String> tags, List<String> chunks) {
+    this.words.add(words.toArray(new String[words.size()]));
+    posTags.add(tags.toArray(new String[tags.size()]));
+    if (chunks != null) {
+      chunkTags.add(chunks.toArray(new String[chunks.size()]));
+    }
+  }
+
+  public int size() {
+    return words.size();
+  }
+
+  public int tokenCount() {
+    int count = 0;
+    for (String[] sentence : words) {
+      count += sentence.length;
+    }
+    return count;
+  }
+
+  /** Fraction of positions where the predicted tags equal the gold tags. */
+  public static double accuracy(List<String[]> gold, List<String[]> predicted) {
+    int total = 0;
+    int correct = 0;
+    for (int i = 0; i < gold.size(); i++) {
+      String[] expected = gold.get(i);
+      String[] actual = predicted.get(i);
+      for (int j = 0; j < expected.length; j++) {
+        total++;
+        if (expected[j].equals(actual[j])) {
+          correct++;
+        }
+      }
+    }
+    return total == 0 ? 0 : (double) correct / total;
+  }
+}
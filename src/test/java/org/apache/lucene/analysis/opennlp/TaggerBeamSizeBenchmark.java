@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.lucene.analysis.opennlp.tools.NLPChunkerOp;
+import org.apache.lucene.analysis.opennlp.tools.NLPPOSTaggerOp;
+import org.apache.lucene.analysis.opennlp.tools.OpenNLPOpsFactory;
+
+/**
+ * Compares accuracy and throughput of the POS tagger and chunker across beam sizes
+ * (see posTaggerBeamSize/chunkerBeamSize in {@link OpenNLPFilterFactory}).
+ * Beam size 0 is the model default, 1 is greedy decoding.
+ * <p>
+ * Usage: TaggerBeamSizeBenchmark modelDir [corpusDir] [iterations]
+ * <br>modelDir holds en-test-pos-maxent.bin and en-test-chunker.bin;
+ * corpusDir defaults to src/tools/test-model-data (pos.txt, chunks.txt).
+ * The bundled corpus is the training data of the test models, so absolute
+ * accuracy is optimistic; compare the beam sizes against each other.
+ */
+public class TaggerBeamSizeBenchmark {
+  private static final int[] BEAM_SIZES = {0, 1, 2, 3, 5, 10};
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: TaggerBeamSizeBenchmark modelDir [corpusDir] [iterations]");
+      System.exit(1);
+    }
+    Path modelDir = Paths.get(args[0]);
+    Path corpusDir = Paths.get(args.length > 1 ? args[1] : "src/tools/test-model-data");
+    int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+    String posModel = "en-test-pos-maxent.bin";
+    String chunkerModel = "en-test-chunker.bin";
+    try (InputStream in = Files.newInputStream(modelDir.resolve(posModel))) {
+      OpenNLPOpsFactory.getPOSTaggerModel(posModel, in);
+    }
+    try (InputStream in = Files.newInputStream(modelDir.resolve(chunkerModel))) {
+      OpenNLPOpsFactory.getChunkerModel(chunkerModel, in);
+    }
+
+    TaggedCorpus posCorpus = TaggedCorpus.readPOS(corpusDir.resolve("pos.txt"));
+    System.out.println(String.format(Locale.ROOT, "POS tagger: %d sentences, %d tokens",
+        posCorpus.size(), posCorpus.tokenCount()));
+    System.out.println("beam\taccuracy\tagreement\ttokens/sec");
+    List<String[]> reference = null;
+    for (int beamSize : BEAM_SIZES) {
+      NLPPOSTaggerOp op = OpenNLPOpsFactory.getPOSTagger(posModel, beamSize);
+      List<String[]> tags = tagPOS(op, posCorpus);
+      if (reference == null) {
+        reference = tags;
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        tagPOS(op, posCorpus);
+      }
+      report(beamSize, TaggedCorpus.accuracy(posCorpus.posTags, tags),
+          TaggedCorpus.accuracy(reference, tags), posCorpus.tokenCount() * (long) iterations, System.nanoTime() - start);
+    }
+
+    TaggedCorpus chunkCorpus = TaggedCorpus.readChunks(corpusDir.resolve("chunks.txt"));
+    System.out.println(String.format(Locale.ROOT, "Chunker (gold POS tags): %d sentences, %d tokens",
+        chunkCorpus.size(), chunkCorpus.tokenCount()));
+    System.out.println("beam\taccuracy\tagreement\ttokens/sec");
+    reference = null;
+    for (int beamSize : BEAM_SIZES) {
+      NLPChunkerOp op = OpenNLPOpsFactory.getChunker(chunkerModel, beamSize);
+      List<String[]> chunks = chunk(op, chunkCorpus);
+      if (reference == null) {
+        reference = chunks;
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        chunk(op, chunkCorpus);
+      }
+      report(beamSize, TaggedCorpus.accuracy(chunkCorpus.chunkTags, chunks),
+          TaggedCorpus.accuracy(reference, chunks), chunkCorpus.tokenCount() * (long) iterations, System.nanoTime() - start);
+    }
+    OpenNLPOpsFactory.clearModels();
+  }
+
+  private static List<String[]> tagPOS(NLPPOSTaggerOp op, TaggedCorpus corpus) {
+    List<String[]> tags = new ArrayList<>(corpus.size());
+    for (String[] sentence : corpus.words) {
+      tags.add(op.getPOSTags(sentence));
+    }
+    return tags;
+  }
+
+  private static List<String[]> chunk(NLPChunkerOp op, TaggedCorpus corpus) {
+    List<String[]> chunks = new ArrayList<>(corpus.size());
+    for (int i = 0; i < corpus.size(); i++) {
+      chunks.add(op.getChunks(corpus.words.get(i), corpus.posTags.get(i), null));
+    }
+    return chunks;
+  }
+
+  private static void report(int beamSize, double accuracy, double agreement, long tokens, long nanos) {
+    System.out.println(String.format(Locale.ROOT, "%s\t%.4f\t%.4f\t%.0f",
+        beamSize == 0 ? "default" : Integer.toString(beamSize), accuracy, agreement, tokens * 1e9 / nanos));
+  }
+}
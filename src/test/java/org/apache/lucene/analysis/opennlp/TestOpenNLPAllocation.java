@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.LuceneTestCase.Nightly;
+import org.apache.lucene.util.RamUsageTester;
+
+/**
+ * Measures, per analyzed document, the bytes allocated by the analyzing thread and the heap
+ * retained by the token stream once all tokens are buffered, over a range of document sizes.
+ * Fails when a chain exceeds its budget, or when allocation per token grows more than
+ * maxGrowth times from the smallest to a larger document.
+ * <p>
+ * Budgets are system properties: tests.opennlp.maxAllocatedBytesPerToken (default 65536),
+ * tests.opennlp.maxRetainedBytesPerChar (default 512) and tests.opennlp.maxGrowth (default 2).
+ * Retained heap does not count OpenNLP model objects, which are shared and constant.
+ * Documents of 1 MB and more only run with -Dtests.nightly=true.
+ */
+public class TestOpenNLPAllocation extends LuceneTestCase {
+  
+  private static final String SENTENCES = "Sentence number 1 has 6 words. Sentence number 2, 5 words. ";
+  
+  private static final long MAX_ALLOCATED_PER_TOKEN = Long.getLong("tests.opennlp.maxAllocatedBytesPerToken", 65536);
+  private static final long MAX_RETAINED_PER_CHAR = Long.getLong("tests.opennlp.maxRetainedBytesPerChar", 512);
+  private static final double MAX_GROWTH = Double.parseDouble(System.getProperty("tests.opennlp.maxGrowth", "2"));
+  
+  private static final int[] SIZES = { 1 << 10, 10 << 10, 100 << 10 };
+  private static final int[] NIGHTLY_SIZES = { 1 << 10, 1 << 20, 10 << 20 };
+  
+  // stops at OpenNLP objects (models, ME tools): shared by all streams
+  private static final RamUsageTester.Accumulator EXCLUDE_MODELS = new RamUsageTester.Accumulator() {
+    @Override
+    public long accumulateObject(Object o, long shallowSize, Map<Field,Object> fieldValues, Collection<Object> queue) {
+      if (o.getClass().getName().startsWith("opennlp.")) {
+        return 0;
+      }
+      return super.accumulateObject(o, shallowSize, fieldValues, queue);
+    }
+  };
+  
+  private com.sun.management.ThreadMXBean threadMXBean() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    assumeTrue("thread allocation counters not available", bean instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+    com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+    sunBean.setThreadAllocatedMemoryEnabled(true);
+    return sunBean;
+  }
+  
+  private CustomAnalyzer.Builder builder() {
+    return CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()));
+  }
+  
+  private Analyzer rules() throws IOException {
+    return builder().withTokenizer("opennlp", "sentenceDetectorMode", "rules", "tokenizerMode", "rules").build();
+  }
+  
+  private Analyzer tokenizer() throws IOException {
+    return builder()
+        .withTokenizer("opennlp", "sentenceModel", "en-test-sent.bin", "tokenizerModel", "en-test-tokenizer.bin")
+        .build();
+  }
+  
+  private Analyzer pos() throws IOException {
+    return builder()
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin")
+        .build();
+  }
+  
+  private Analyzer lemmatizer() throws IOException {
+    return builder()
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin")
+        .addTokenFilter("opennlplemmatizer", "dictionary", "en-test-lemmas.dict")
+        .build();
+  }
+  
+  public void testRules() throws Exception {
+    check("rules", rules(), SIZES);
+  }
+  
+  public void testTokenizer() throws Exception {
+    check("tokenizer", tokenizer(), SIZES);
+  }
+  
+  public void testPOS() throws Exception {
+    check("pos", pos(), SIZES);
+  }
+  
+  public void testLemmatizer() throws Exception {
+    check("lemmatizer", lemmatizer(), SIZES);
+  }
+  
+  @Nightly
+  public void testLargeDocuments() throws Exception {
+    check("rules", rules(), NIGHTLY_SIZES);
+    check("tokenizer", tokenizer(), NIGHTLY_SIZES);
+    check("pos", pos(), NIGHTLY_SIZES);
+    check("lemmatizer", lemmatizer(), NIGHTLY_SIZES);
+  }
+  
+  private void check(String name, Analyzer analyzer, int[] sizes) throws IOException {
+    com.sun.management.ThreadMXBean bean = threadMXBean();
+    long threadId = Thread.currentThread().getId();
+    double smallestPerToken = 0;
+    for (int size: sizes) {
+      String text = text(size);
+      // first pass creates the reused components
+      consume(analyzer, text, false);
+      long before = bean.getThreadAllocatedBytes(threadId);
+      long tokens = consume(analyzer, text, false);
+      long allocated = bean.getThreadAllocatedBytes(threadId) - before;
+      long retained = consume(analyzer, text, true);
+      
+      double perToken = (double) allocated / tokens;
+      double perChar = (double) retained / size;
+      if (VERBOSE) {
+        System.out.println(String.format(Locale.ROOT, "%s: %d chars, %d tokens, %.0f bytes allocated/token, %.1f bytes retained/char",
+            name, size, tokens, perToken, perChar));
+      }
+      assertTrue(name + ": " + perToken + " bytes allocated per token at " + size + " chars",
+          perToken <= MAX_ALLOCATED_PER_TOKEN);
+      assertTrue(name + ": " + perChar + " bytes retained per char at " + size + " chars",
+          perChar <= MAX_RETAINED_PER_CHAR);
+      if (smallestPerToken == 0) {
+        smallestPerToken = perToken;
+      } else {
+        assertTrue(name + ": allocation per token grew from " + smallestPerToken + " to " + perToken + " at " + size + " chars",
+            perToken <= MAX_GROWTH * smallestPerToken);
+      }
+    }
+    analyzer.close();
+  }
+  
+  private static String text(int size) {
+    StringBuilder sb = new StringBuilder(size + SENTENCES.length());
+    while (sb.length() < size) {
+      sb.append(SENTENCES);
+    }
+    sb.setLength(size);
+    return sb.toString();
+  }
+  
+  /** @return the token count, or the retained bytes after the last token when measureRetained */
+  private static long consume(Analyzer analyzer, String text, boolean measureRetained) throws IOException {
+    long tokens = 0;
+    long retained = 0;
+    try (TokenStream ts = analyzer.tokenStream("dummy", text)) {
+      ts.reset();
+      while (ts.incrementToken()) {
+        tokens++;
+      }
+      if (measureRetained) {
+        retained = RamUsageTester.sizeOf(ts, EXCLUDE_MODELS);
+      }
+      ts.end();
+    }
+    return measureRetained ? retained : tokens;
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.opennlp.tools.OpenNLPOpsFactory;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.lucene.util.LuceneTestCase;
+
+/**
+ * Runs the analysis chains on 1..N threads sharing one analyzer (and so the static model
+ * caches and any shared ops), and checks every output against the single-threaded one.
+ * With -Dtests.verbose=true, reports throughput and blocked time per thread count.
+ * -Dtests.opennlp.minSpeedup=x additionally fails when the throughput on the most threads
+ * is not x times the single-threaded throughput.
+ */
+public class TestOpenNLPConcurrency extends LuceneTestCase {
+  
+  private static final String[] TEXTS = {
+      "Sentence number 1 has 6 words. Sentence number 2, 5 words.",
+      "Royal Flash is a tale about Harry Flashman.",
+      "No period",
+      "Harry Flashman met Royal Flash. They talked about 3.5 words, and more words.",
+  };
+  
+  private static final int ITERATIONS = 50;
+  
+  private CustomAnalyzer.Builder builder() {
+    return CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()));
+  }
+  
+  public void testRules() throws Exception {
+    checkScaling("rules", builder()
+        .withTokenizer("opennlp", "sentenceDetectorMode", "rules", "tokenizerMode", "rules")
+        .build());
+  }
+  
+  public void testTokenizer() throws Exception {
+    checkScaling("tokenizer", builder()
+        .withTokenizer("opennlp", "sentenceModel", "en-test-sent.bin", "tokenizerModel", "en-test-tokenizer.bin")
+        .build());
+  }
+  
+  public void testPOS() throws Exception {
+    checkScaling("pos", builder()
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin")
+        .build());
+  }
+  
+  public void testBatchPOS() throws Exception {
+    try {
+      checkScaling("pos-batch", builder()
+          .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+          .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin", "batchTaggerThreads", "2")
+          .build());
+    } finally {
+      OpenNLPOpsFactory.shutdownBatchTaggers();
+    }
+  }
+  
+  public void testChunker() throws Exception {
+    checkScaling("chunker", builder()
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin", "chunkerModel", "en-test-chunker.bin")
+        .build());
+  }
+  
+  public void testNER() throws Exception {
+    checkScaling("ner", builder()
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "nerTaggerModels", "en-test-ner-person.bin,en-test-ner-person.bin",
+            "shareNERFeatures", "true", "gazetteers", "en-test-gazetteer.txt")
+        .build());
+  }
+  
+  public void testLemmatizer() throws Exception {
+    checkScaling("lemmatizer", builder()
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin")
+        .addTokenFilter("opennlplemmatizer", "dictionary", "en-test-lemmas.dict")
+        .build());
+  }
+  
+  public void testAnalysisCache() throws Exception {
+    // every analysis after the first of each text restores shared cached states
+    checkScaling("cache", builder()
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin", "analysisCacheSize", "16")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin", "keepTags", "NN,NNS,NNP,CD",
+            "analysisCacheSize", "16")
+        .build());
+  }
+  
+  private void checkScaling(String name, Analyzer analyzer) throws Exception {
+    List<List<String>> expected = new ArrayList<>();
+    for (String text: TEXTS) {
+      expected.add(analyze(analyzer, text));
+    }
+    int maxThreads = TEST_NIGHTLY ? Math.max(2, Runtime.getRuntime().availableProcessors()) : 4;
+    double singleThreaded = 0;
+    double lastThroughput = 0;
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      lastThroughput = run(name, analyzer, expected, threads);
+      if (threads == 1) {
+        singleThreaded = lastThroughput;
+      }
+    }
+    String minSpeedup = System.getProperty("tests.opennlp.minSpeedup");
+    if (minSpeedup != null) {
+      assertTrue(name + ": speedup " + (lastThroughput / singleThreaded) + " below " + minSpeedup,
+          lastThroughput >= Double.parseDouble(minSpeedup) * singleThreaded);
+    }
+    analyzer.close();
+  }
+  
+  // returns analyses per second
+  private double run(String name, Analyzer analyzer, List<List<String>> expected, int threadCount) throws Exception {
+    ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+    boolean contention = mxBean.isThreadContentionMonitoringSupported();
+    if (contention) {
+      mxBean.setThreadContentionMonitoringEnabled(true);
+    }
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    long[] blockedMillis = new long[threadCount];
+    Thread[] threads = new Thread[threadCount];
+    for (int t = 0; t < threadCount; t++) {
+      int id = t;
+      threads[t] = new Thread(() -> {
+        try {
+          start.await();
+          for (int i = 0; i < ITERATIONS; i++) {
+            for (int j = 0; j < TEXTS.length; j++) {
+              // vary the order so threads do not run in lockstep
+              int k = (j + id + i) % TEXTS.length;
+              List<String> actual = analyze(analyzer, TEXTS[k]);
+              if (!expected.get(k).equals(actual)) {
+                throw new AssertionError(name + ": thread " + id + " got " + actual + " for \"" + TEXTS[k]
+                    + "\", expected " + expected.get(k));
+              }
+            }
+          }
+          if (contention) {
+            ThreadInfo info = mxBean.getThreadInfo(Thread.currentThread().getId());
+            blockedMillis[id] = info.getBlockedTime() + info.getWaitedTime();
+          }
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        }
+      }, "opennlp-concurrency-" + t);
+      threads[t].start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread thread: threads) {
+      thread.join();
+    }
+    double seconds = (System.nanoTime() - begin) / 1e9;
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+    double throughput = threadCount * ITERATIONS * TEXTS.length / seconds;
+    if (VERBOSE) {
+      long blocked = 0;
+      for (long millis: blockedMillis) {
+        blocked += millis;
+      }
+      System.out.println(String.format(Locale.ROOT, "%s: %d threads, %.0f analyses/s, %d ms blocked or waiting%s",
+          name, threadCount, throughput, blocked, contention ? "" : " (contention monitoring not supported)"));
+    }
+    return throughput;
+  }
+  
+  private static List<String> analyze(Analyzer analyzer, String text) throws IOException {
+    List<String> tokens = new ArrayList<>();
+    try (TokenStream ts = analyzer.tokenStream("dummy", text)) {
+      CharTermAttribute termAtt = ts.addAttribute(CharTermAttribute.class);
+      OffsetAttribute offsetAtt = ts.addAttribute(OffsetAttribute.class);
+      PositionIncrementAttribute posIncAtt = ts.addAttribute(PositionIncrementAttribute.class);
+      TypeAttribute typeAtt = ts.addAttribute(TypeAttribute.class);
+      ts.reset();
+      while (ts.incrementToken()) {
+        tokens.add(termAtt + "/" + offsetAtt.startOffset() + "-" + offsetAtt.endOffset()
+            + "/" + posIncAtt.getPositionIncrement() + "/" + typeAtt.type());
+      }
+      ts.end();
+    }
+    return tokens;
+  }
+}
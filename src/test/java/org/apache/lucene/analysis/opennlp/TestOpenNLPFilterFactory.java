@@ -20,12 +20,29 @@ package org.apache.lucene.analysis.opennlp;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
+import opennlp.tools.postag.POSModel;
+
+import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.BaseTokenStreamTestCase;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.opennlp.tokenattributes.TagIdAttribute;
+import org.apache.lucene.analysis.opennlp.tools.NLPAnalysisCache;
+import org.apache.lucene.analysis.opennlp.tools.NLPBatchPOSTagger;
+import org.apache.lucene.analysis.opennlp.tools.NLPModelRegistry;
+import org.apache.lucene.analysis.opennlp.tools.NLPModelStats;
+import org.apache.lucene.analysis.opennlp.tools.NLPNERPrefilter;
+import org.apache.lucene.analysis.opennlp.tools.NLPTagVocabulary;
+import org.apache.lucene.analysis.opennlp.tools.OpenNLPOpsFactory;
 import org.apache.lucene.analysis.payloads.TypeAsPayloadTokenFilter;
 import org.apache.lucene.analysis.payloads.TypeAsPayloadTokenFilterFactory;
+import org.apache.lucene.analysis.tokenattributes.FlagsAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
 import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.lucene.util.BytesRef;
 
 /**
  * Needs the OpenNLP Tokenizer because it creates full streams of punctuation.
@@ -46,10 +63,22 @@ public class TestOpenNLPFilterFactory extends OpenNLPStreamTestCase {
       = {"NNS", "NN", "CD", "NNS", "CD", "NNS", ".", "VBD", "IN", "CD", ",", "CD", "NNS", "."};
   static private String[] SENTENCES_chunks
       = { "B-NP", "I-NP", "I-NP", "I-NP", "I-NP", "I-NP", "O", "O", "B-PP", "B-NP", "O", "B-NP", "I-NP", "O" };
+  static private String[] SENTENCES_nouns = {"Sentence", "number", "words", "number", "words"};
+  static private String[] SENTENCES_nounTags = {"NNS", "NN", "NNS", "NN", "NNS"};
+  static private int[] SENTENCES_nounPosIncrements = {1, 1, 4, 3, 4};
+  static private String[] SENTENCES_nounsAndComma = {"Sentence", "number", "words", "number", ",", "words"};
+  static private String[] SENTENCES_nounsAndCommaTags = {"NNS", "NN", "NNS", "NN", ",", "NNS"};
+  static private int[] SENTENCES_nounsAndCommaPosIncrements = {1, 1, 4, 3, 2, 2};
   static private String NAMES2 = "Royal Flash is a tale about Harry Flashman.";
   static private String[] NAMES2_punc = {"Royal", "Flash", "is", "a", "tale", "about", "Harry", "Flashman", "."};
   static private String[] NAMES2_OUT = { null, null, null, null, null, null, null, "person", null };
 
+  static private String[] NAMES2_gazetteer = { "title", "title", null, null, null, null, "person", "person", null };
+
+  static private String NAMES2_lower = "Royal flash is a tale about harry flashman.";
+  static private String[] NAMES2_lower_punc = {"Royal", "flash", "is", "a", "tale", "about", "harry", "flashman", "."};
+  static private String[] NAMES2_lower_OUT = { null, null, null, null, null, null, null, null, null };
+
   static private String NO_BREAK = "No period";
   static private String[] NO_BREAK_terms = {"No", "period"};
   static private int[] NO_BREAK_startOffsets = {0, 3};
@@ -84,6 +113,332 @@ public class TestOpenNLPFilterFactory extends OpenNLPStreamTestCase {
         null, null, null, true, toPayloads(SENTENCES_posTags));
   }
   
+  public void testPOSBeamSize() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin", "posTaggerBeamSize", "3")
+        .build();
+    assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_punc, SENTENCES_startOffsets, SENTENCES_endOffsets,
+        SENTENCES_posTags, null, null, true);
+  }
+
+  public void testWarmup() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin", "warmupIterations", "10")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin", "chunkerModel", "en-test-chunker.bin",
+            "nerTaggerModels", "en-test-ner-person.bin", "warmupIterations", "10")
+        .build();
+    assertAnalyzesTo(analyzer, NAMES2, NAMES2_punc, null, null, NAMES2_OUT, null, null, true);
+  }
+
+  public void testWarmupBypassesCaches() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin", "analysisCacheSize", "10",
+            "warmupIterations", "10")
+        .build();
+    OpenNLPFilterFactory factory = (OpenNLPFilterFactory) analyzer.getTokenFilterFactories().get(0);
+    assertEquals(0, factory.getAnalysisCache().size());
+    assertEquals(0, factory.getAnalysisCache().getHitCount());
+    assertEquals(0, factory.getAnalysisCache().getMissCount());
+
+    analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin", "sentenceCacheSize", "10",
+            "warmupIterations", "10")
+        .build();
+    factory = (OpenNLPFilterFactory) analyzer.getTokenFilterFactories().get(0);
+    assertEquals(0, factory.getSentenceCache().size());
+    assertEquals(0, factory.getSentenceCache().getHitCount());
+  }
+
+  public void testQuantization() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin", "chunkerModel", "en-test-chunker.bin",
+            "nerTaggerModels", "en-test-ner-person.bin", "quantization", "float")
+        .build();
+    assertAnalyzesTo(analyzer, NAMES2, NAMES2_punc, null, null, NAMES2_OUT, null, null, true);
+
+    analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin", "quantization", "int8")
+        .build();
+    assertAnalyzesTo(analyzer, NAMES2, NAMES2_punc);
+    CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin")
+        .build();
+    long plainBytes = -1;
+    long int8Bytes = -1;
+    for (NLPModelStats stats: OpenNLPOpsFactory.getModelStats()) {
+      if (stats.getName().equals("en-test-pos-maxent.bin")) {
+        plainBytes = stats.getRamBytesUsed();
+      } else if (stats.getName().equals("en-test-pos-maxent.bin@int8")) {
+        int8Bytes = stats.getRamBytesUsed();
+      }
+    }
+    assertTrue(int8Bytes > 0);
+    assertTrue(int8Bytes < plainBytes);
+  }
+
+  public void testLanguageModels() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "languageModels", "en-test-languages.properties", "defaultLanguage", "en")
+        .addTokenFilter("opennlp", "languageModels", "en-test-languages.properties", "defaultLanguage", "en")
+        .build();
+    OpenNLPTokenizerFactory tokenizerFactory = (OpenNLPTokenizerFactory) analyzer.getTokenizerFactory();
+    OpenNLPFilterFactory filterFactory = (OpenNLPFilterFactory) analyzer.getTokenFilterFactories().get(0);
+    NLPModelRegistry<?> tokenizerModels = tokenizerFactory.getLanguageModels();
+    NLPModelRegistry<?> taggerModels = filterFactory.getLanguageModels();
+    try {
+      assertEquals(Collections.emptyList(), tokenizerModels.getLoadedLanguages());
+      assertEquals(Collections.emptyList(), tokenizerFactory.getModelKeys());
+
+      assertAnalyzesTo(analyzer, NAMES2, NAMES2_punc, null, null, NAMES2_OUT, null, null, true);
+      assertEquals(Arrays.asList("en"), tokenizerModels.getLoadedLanguages());
+      assertEquals(Arrays.asList("en"), taggerModels.getLoadedLanguages());
+      // loaded through the ops factory: reported with the other models
+      String tokenizerKey = NLPModelStats.key(NLPModelStats.TOKENIZER,
+          OpenNLPOpsFactory.registryModelName("en-test-tokenizer.bin"));
+      assertTrue(tokenizerFactory.getModelKeys().contains(tokenizerKey));
+      assertTrue(filterFactory.getModelKeys().contains(NLPModelStats.key(NLPModelStats.POS,
+          OpenNLPOpsFactory.registryModelName("en-test-pos-maxent.bin"))));
+      assertTrue(hasStats(tokenizerKey));
+
+      // the marker is blanked out, the offsets are those of the marked text
+      String marked = "[lang=xx]" + NAMES2;
+      assertAnalyzesTo(analyzer, marked, NAMES2_punc, new int[] {9, 15, 21, 24, 26, 31, 37, 43, 51},
+          new int[] {14, 20, 23, 25, 30, 36, 42, 51, 52});
+      assertEquals(Arrays.asList("en", "xx"), tokenizerModels.getLoadedLanguages());
+      assertEquals(2, tokenizerModels.getLoadCount());
+
+      // unconfigured languages fall back to the default
+      assertAnalyzesTo(analyzer, "[lang=fr]" + NAMES2, NAMES2_punc, null, null, NAMES2_OUT, null, null, true);
+
+      // both languages share the tokenizer model, dropped once neither holds it
+      tokenizerFactory.close();
+      assertEquals(Collections.emptyList(), tokenizerModels.getLoadedLanguages());
+      assertFalse(hasStats(tokenizerKey));
+      filterFactory.close();
+      assertEquals(Collections.emptyList(), taggerModels.getLoadedLanguages());
+    } finally {
+      tokenizerModels.close();
+      taggerModels.close();
+      NLPModelRegistry.shutdownSweeper();
+    }
+  }
+
+  private static boolean hasStats(String key) {
+    for (NLPModelStats stats: OpenNLPOpsFactory.getModelStats()) {
+      if (stats.getKey().equals(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public void testAnalysisCache() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin", "chunkerModel", "en-test-chunker.bin",
+            "nerTaggerModels", "en-test-ner-person.bin", "analysisCacheSize", "10")
+        .build();
+    NLPAnalysisCache<?,?> cache = ((OpenNLPFilterFactory) analyzer.getTokenFilterFactories().get(0)).getAnalysisCache();
+    assertAnalyzesTo(analyzer, NAMES2, NAMES2_punc, null, null, NAMES2_OUT, null, null, true);
+    assertEquals(1, cache.size());
+    long hits = cache.getHitCount();
+    assertAnalyzesTo(analyzer, NAMES2, NAMES2_punc, null, null, NAMES2_OUT, null, null, true);
+    assertTrue(cache.getHitCount() > hits);
+    assertEquals(1, cache.size());
+  }
+
+  public void testSentenceCache() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "sentenceModel", "en-test-sent.bin", "tokenizerModel", "en-test-tokenizer.bin",
+            "sentenceCacheSize", "10")
+        .addTokenFilter("opennlp", "nerTaggerModels", "en-test-ner-person.bin", "sentenceCacheSize", "10")
+        .build();
+    NLPAnalysisCache<?,?> tokenizerCache = ((OpenNLPTokenizerFactory) analyzer.getTokenizerFactory()).getSentenceCache();
+    NLPAnalysisCache<?,?> filterCache = ((OpenNLPFilterFactory) analyzer.getTokenFilterFactories().get(0)).getSentenceCache();
+    assertAnalyzesTo(analyzer, NAMES2, NAMES2_punc, null, null, NAMES2_OUT, null, null, true);
+    assertEquals(1, tokenizerCache.size());
+    assertEquals(1, filterCache.size());
+    
+    // an edit appends a sentence: the first one is reused, at the same offsets
+    long tokenizerHits = tokenizerCache.getHitCount();
+    long filterHits = filterCache.getHitCount();
+    String edited = NAMES2 + " He is a cad.";
+    String[] editedTerms = {"Royal", "Flash", "is", "a", "tale", "about", "Harry", "Flashman", ".",
+        "He", "is", "a", "cad", "."};
+    assertAnalyzesTo(analyzer, edited, editedTerms);
+    assertEquals(tokenizerHits + 1, tokenizerCache.getHitCount());
+    assertEquals(filterHits + 1, filterCache.getHitCount());
+    assertEquals(2, filterCache.size());
+    assertAnalyzesTo(analyzer, NAMES2, NAMES2_punc, null, null, NAMES2_OUT, null, null, true);
+  }
+
+  public void testBatchTagger() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin",
+            "batchTaggerThreads", "2", "batchTaggerWindowMicros", "100", "batchTaggerMaxBatch", "4")
+        .build();
+    try {
+      for (int i = 0; i < 3; i++) {
+        assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_punc, SENTENCES_startOffsets, SENTENCES_endOffsets,
+            SENTENCES_posTags, null, null, true);
+      }
+    } finally {
+      // worker threads must not outlive the test
+      OpenNLPOpsFactory.shutdownBatchTaggers();
+    }
+  }
+
+  public void testBatchTaggerLoneRequestNotDelayed() throws Exception {
+    // a window far longer than the test: a lone request must not wait for it
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin",
+            "batchTaggerThreads", "1", "batchTaggerWindowMicros", "60000000", "sentenceCacheSize", "10")
+        .build();
+    NLPBatchPOSTagger batchTagger = ((OpenNLPFilterFactory) analyzer.getTokenFilterFactories().get(0)).getBatchTagger();
+    try {
+      long start = System.nanoTime();
+      assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_punc, SENTENCES_startOffsets, SENTENCES_endOffsets,
+          SENTENCES_posTags, null, null, true);
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30));
+      // one request per sentence, cached afterwards
+      assertEquals(2, batchTagger.getTaggedCount());
+    } finally {
+      OpenNLPOpsFactory.shutdownBatchTaggers();
+    }
+  }
+
+  public void testBatchTaggerReleasedOnClose() throws Exception {
+    String[] args = {"posTaggerModel", "en-test-pos-maxent.bin", "batchTaggerThreads", "1"};
+    CustomAnalyzer first = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", args)
+        .build();
+    CustomAnalyzer second = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", args)
+        .build();
+    OpenNLPFilterFactory firstFactory = (OpenNLPFilterFactory) first.getTokenFilterFactories().get(0);
+    OpenNLPFilterFactory secondFactory = (OpenNLPFilterFactory) second.getTokenFilterFactories().get(0);
+    NLPBatchPOSTagger batchTagger = firstFactory.getBatchTagger();
+    try {
+      assertSame(batchTagger, secondFactory.getBatchTagger());
+      firstFactory.close();
+      assertNull(firstFactory.getBatchTagger());
+      // still used by the second factory
+      assertAnalyzesTo(second, SENTENCES, SENTENCES_punc, SENTENCES_startOffsets, SENTENCES_endOffsets,
+          SENTENCES_posTags, null, null, true);
+      secondFactory.close();
+      expectThrows(IllegalStateException.class, () -> batchTagger.tag(new String[] {"Stopped", "."}));
+      // closed factories tag on their own
+      assertAnalyzesTo(first, SENTENCES, SENTENCES_punc, SENTENCES_startOffsets, SENTENCES_endOffsets,
+          SENTENCES_posTags, null, null, true);
+    } finally {
+      OpenNLPOpsFactory.shutdownBatchTaggers();
+    }
+  }
+
+  public void testBatchTaggerStopsIdleThreads() throws Exception {
+    POSModel model = OpenNLPOpsFactory.getPOSTaggerModel("en-test-pos-maxent.bin",
+        new ClasspathResourceLoader(getClass()).openResource("en-test-pos-maxent.bin"));
+    NLPBatchPOSTagger batchTagger = new NLPBatchPOSTagger(model, 3, 2, 0, 8, 50);
+    try {
+      assertEquals(0, batchTagger.getLiveThreadCount());
+      String[] tags = batchTagger.tag(new String[] {"Stopped", "."});
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (batchTagger.getLiveThreadCount() > 0 && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(0, batchTagger.getLiveThreadCount());
+      // workers start again on the next request
+      assertArrayEquals(tags, batchTagger.tag(new String[] {"Stopped", "."}));
+    } finally {
+      batchTagger.shutdown();
+    }
+  }
+
+  public void testTagIdPayloads() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin", "tagEncoding", "payload")
+        .build();
+    int[] tagIds = tagIds(analyzer, SENTENCES_posTags);
+    assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_punc, SENTENCES_startOffsets, SENTENCES_endOffsets,
+        SENTENCES_posTags, null, null, true);
+    assertEncodedTagIds(analyzer, SENTENCES, tagIds, OpenNLPFilter.TagEncoding.PAYLOAD);
+  }
+  
+  public void testTagIdFlags() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin", "tagEncoding", "flags")
+        .build();
+    int[] tagIds = tagIds(analyzer, SENTENCES_posTags);
+    assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_punc, SENTENCES_startOffsets, SENTENCES_endOffsets,
+        SENTENCES_posTags, null, null, true);
+    assertEncodedTagIds(analyzer, SENTENCES, tagIds, OpenNLPFilter.TagEncoding.FLAGS);
+  }
+  
+  // ids of the expected tags in the vocabulary of the analyzer's OpenNLP filter
+  private static int[] tagIds(CustomAnalyzer analyzer, String[] tags) {
+    NLPTagVocabulary vocabulary = ((OpenNLPFilterFactory) analyzer.getTokenFilterFactories().get(0)).getTagVocabulary();
+    int[] tagIds = new int[tags.length];
+    for (int i = 0; i < tags.length; i++) {
+      tagIds[i] = vocabulary.getId(tags[i]);
+      assertTrue(tagIds[i] > 0);
+      assertEquals(tags[i], vocabulary.getTag(tagIds[i]));
+    }
+    return tagIds;
+  }
+  
+  // reads the attributes directly: the payload check of OpenNLPStreamTestCase is disabled
+  private static void assertEncodedTagIds(Analyzer analyzer, String text, int[] tagIds,
+                                          OpenNLPFilter.TagEncoding encoding) throws IOException {
+    try (TokenStream ts = analyzer.tokenStream("", text)) {
+      TagIdAttribute tagIdAtt = ts.getAttribute(TagIdAttribute.class);
+      PayloadAttribute payloadAtt = encoding == OpenNLPFilter.TagEncoding.PAYLOAD ? ts.getAttribute(PayloadAttribute.class) : null;
+      FlagsAttribute flagsAtt = encoding == OpenNLPFilter.TagEncoding.FLAGS ? ts.getAttribute(FlagsAttribute.class) : null;
+      ts.reset();
+      int i = 0;
+      while (ts.incrementToken()) {
+        assertTrue("more tokens than expected", i < tagIds.length);
+        assertEquals("tag id of token " + i, tagIds[i], tagIdAtt.getTagId());
+        if (payloadAtt != null) {
+          assertEquals("payload of token " + i, new BytesRef(new byte[] { (byte) tagIds[i] }), payloadAtt.getPayload());
+        }
+        if (flagsAtt != null) {
+          assertEquals("flags of token " + i, tagIds[i], flagsAtt.getFlags());
+        }
+        i++;
+      }
+      ts.end();
+      assertEquals(tagIds.length, i);
+    }
+  }
+  
+  public void testKeepAndDropTags() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin", "keepTags", "NN,NNS")
+        .build();
+    assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_nouns, null, null,
+        SENTENCES_nounTags, SENTENCES_nounPosIncrements);
+
+    analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin", "dropTags", "CD,.,VBD,IN")
+        .build();
+    assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_nounsAndComma, null, null,
+        SENTENCES_nounsAndCommaTags, SENTENCES_nounsAndCommaPosIncrements);
+  }
+  
   public void testChunking() throws Exception {
     CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
         .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
@@ -116,6 +471,66 @@ public class TestOpenNLPFilterFactory extends OpenNLPStreamTestCase {
     assertAnalyzesTo(analyzer, NAMES2, NAMES2_punc, null, null, null, null, null, true, toPayloads(NAMES2_OUT));
   }
   
+  public void testNERPrefilter() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "nerTaggerModels", "en-test-ner-person.bin", "nerPrefilters", "capitalized")
+        .build();
+    NLPNERPrefilter prefilter = ((OpenNLPFilterFactory) analyzer.getTokenFilterFactories().get(0)).getNERPrefilters()[0];
+    assertAnalyzesTo(analyzer, NAMES2, NAMES2_punc, null, null, NAMES2_OUT, null, null, true);
+    assertEquals(1, prefilter.getEvaluatedCount());
+    assertEquals(0, prefilter.getSkippedCount());
+    // no capitalized word past the sentence start: the model is skipped, tokens stay untagged
+    assertAnalyzesTo(analyzer, NAMES2_lower, NAMES2_lower_punc, null, null, NAMES2_lower_OUT, null, null, true);
+    assertEquals(2, prefilter.getEvaluatedCount());
+    assertEquals(1, prefilter.getSkippedCount());
+  }
+
+  public void testNERPrefilterPerSentence() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "nerTaggerModels", "en-test-ner-person.bin", "nerPrefilters", "capitalized")
+        .build();
+    NLPNERPrefilter prefilter = ((OpenNLPFilterFactory) analyzer.getTokenFilterFactories().get(0)).getNERPrefilters()[0];
+    // the model is skipped on the first sentence only
+    String[] punc = concat(NAMES2_lower_punc, NAMES2_punc);
+    String[] out = concat(NAMES2_lower_OUT, NAMES2_OUT);
+    assertAnalyzesTo(analyzer, NAMES2_lower + " " + NAMES2, punc, null, null, out, null, null, true);
+    assertEquals(2, prefilter.getEvaluatedCount());
+    assertEquals(1, prefilter.getSkippedCount());
+  }
+
+  private static String[] concat(String[] first, String[] second) {
+    String[] both = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, both, first.length, second.length);
+    return both;
+  }
+
+  public void testSharedNERFeatures() throws Exception {
+    // same model twice: sharing the features must not change the tags
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "nerTaggerModels", "en-test-ner-person.bin,en-test-ner-person.bin",
+            "shareNERFeatures", "true")
+        .build();
+    assertAnalyzesTo(analyzer, NAMES2, NAMES2_punc, null, null, NAMES2_OUT, null, null, true);
+  }
+
+  public void testGazetteer() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "gazetteers", "en-test-gazetteer.txt")
+        .build();
+    assertAnalyzesTo(analyzer, NAMES2, NAMES2_punc, null, null, NAMES2_gazetteer, null, null, true);
+
+    // model and gazetteer entities are merged
+    analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "nerTaggerModels", "en-test-ner-person.bin", "gazetteers", "en-test-gazetteer.txt")
+        .build();
+    assertAnalyzesTo(analyzer, NAMES2, NAMES2_punc, null, null, NAMES2_gazetteer, null, null, true);
+  }
+  
   public void testNoBreak() throws Exception {
     CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
         .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
@@ -44,6 +44,26 @@ public class TestOpenNLPLemmatizerFilterFactory extends BaseTokenStreamTestCase
         SENTENCES_posTags, null, null, true);
   }
 
+  public void testLemmatizeInOpenNLPFilter() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin", "lemmaDictionary", "en-test-lemmas.dict")
+        .build();
+    assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_punc, null, null,
+        SENTENCES_posTags, null, null, true);
+  }
+
+  public void testPOSAttributeWithChunker() throws Exception {
+    // types are chunk labels; the lemmatizer uses the POS tags from the same tagging pass
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin",
+            "chunkerModel", "en-test-chunker.bin", "emitPOS", "true")
+        .addTokenFilter("opennlplemmatizer", "dictionary", "en-test-lemmas.dict")
+        .build();
+    assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_punc);
+  }
+
   public void testKeywordAttributeAwareness() throws Exception {
     CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
         .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.lucene.analysis.opennlp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.core.SolrResourceLoader;
+
+public class TestOpenNLPLocalFiles extends LuceneTestCase {
+
+  public void testLocalFile() throws IOException {
+    Path instanceDir = createTempDir();
+    Path conf = Files.createDirectories(instanceDir.resolve("conf"));
+    Path file = conf.resolve("lemmas.bin");
+    Files.write(file, new byte[] {1, 2, 3});
+    try (SolrResourceLoader loader = new SolrResourceLoader(instanceDir)) {
+      // relative names are mapped from the conf directory, where the Solr loader looks first
+      assertEquals(file.toRealPath(), OpenNLPLocalFiles.localFile("lemmas.bin", loader).toRealPath());
+      assertEquals(file, OpenNLPLocalFiles.localFile(file.toString(), loader));
+      assertNull(OpenNLPLocalFiles.localFile("missing.bin", loader));
+    }
+    assertNull(OpenNLPLocalFiles.localFile("lemmas.bin", new ClasspathResourceLoader(getClass())));
+    assertEquals(file, OpenNLPLocalFiles.localFile(file.toString(), new ClasspathResourceLoader(getClass())));
+  }
+}
@@ -25,6 +25,9 @@ import java.util.Map;
 import org.apache.lucene.analysis.BaseTokenStreamTestCase;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.opennlp.tools.NLPAdmissionController;
+import org.apache.lucene.analysis.opennlp.tools.NLPAnalysisCache;
+import org.apache.lucene.analysis.opennlp.tools.OpenNLPOpsFactory;
 import org.apache.lucene.analysis.util.ClasspathResourceLoader;
 import org.junit.Test;
 
@@ -41,6 +44,16 @@ public class TestOpenNLPTokenizerFactory extends BaseTokenStreamTestCase {
   static private int[] SENTENCES_startOffsets = {0, 9, 16, 18, 22, 24, 29, 31, 40, 47, 48, 50, 52, 57};
   static private int[] SENTENCES_endOffsets = {8, 15, 17, 21, 23, 29, 30, 39, 46, 48, 49, 51, 57, 58};
   
+  static private String RULES = "Dr. Watson met J. Smith (on the 3.5 mile walk). \"Why?\" he asked.\n\nNo reply";
+  static private String[] RULES_split
+      = {"Dr. Watson met J. Smith (on the 3.5 mile walk).", "\"Why?\" he asked.", "No reply"};
+  static private int[] RULES_startOffsets = {0, 48, 66};
+  static private int[] RULES_endOffsets = {47, 64, 74};
+  
+  static private String EXCEPTIONS = "Use e.g. 3.5 or 1,000 well-formed (U.S.) words...";
+  static private String[] EXCEPTIONS_punc
+      = {"Use", "e.g.", "3.5", "or", "1,000", "well-formed", "(", "U.S.", ")", "words", "..."};
+  
   static private String SENTENCE1 = "Sentence number 1 has 6 words.";
   static private String[] SENTENCE1_punc = {"Sentence", "number", "1", "has", "6", "words", "."};
 
@@ -71,6 +84,79 @@ public class TestOpenNLPTokenizerFactory extends BaseTokenStreamTestCase {
     assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_split);
   }
 
+  @Test
+  public void testRuleSentenceDetector() throws IOException {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "sentenceDetectorMode", "rules", "tokenizerModel", "en-test-tokenizer.bin")
+        .build();
+    assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_punc, SENTENCES_startOffsets, SENTENCES_endOffsets);
+
+    analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "sentenceDetectorMode", "rules")
+        .build();
+    assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_split);
+    assertAnalyzesTo(analyzer, RULES, RULES_split, RULES_startOffsets, RULES_endOffsets);
+  }
+
+  @Test
+  public void testRuleTokenizer() throws IOException {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "sentenceDetectorMode", "rules", "tokenizerMode", "rules")
+        .build();
+    assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_punc, SENTENCES_startOffsets, SENTENCES_endOffsets);
+
+    analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "tokenizerMode", "rules", "tokenizerExceptions", "en-test-tokenizer-exceptions.txt")
+        .build();
+    assertAnalyzesTo(analyzer, EXCEPTIONS, EXCEPTIONS_punc);
+  }
+
+  @Test
+  public void testHybridTokenizer() throws IOException {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "sentenceModel", "en-test-sent.bin",
+            "tokenizerModel", "en-test-tokenizer.bin", "tokenizerMode", "hybrid")
+        .build();
+    assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_punc, SENTENCES_startOffsets, SENTENCES_endOffsets);
+  }
+
+  @Test
+  public void testWarmup() throws IOException {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "sentenceModel", "en-test-sent.bin", "tokenizerModel", "en-test-tokenizer.bin",
+            "warmupIterations", "10", "warmupText", SENTENCE1)
+        .build();
+    assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_punc, SENTENCES_startOffsets, SENTENCES_endOffsets);
+  }
+
+  @Test
+  public void testWarmupBypassesCaches() throws IOException {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "sentenceDetectorMode", "rules", "tokenizerMode", "rules",
+            "analysisCacheSize", "10", "sentenceCacheSize", "10", "warmupIterations", "10")
+        .build();
+    OpenNLPTokenizerFactory factory = (OpenNLPTokenizerFactory) analyzer.getTokenizerFactory();
+    assertEquals(0, factory.getAnalysisCache().size());
+    assertEquals(0, factory.getAnalysisCache().getMissCount());
+    assertEquals(0, factory.getSentenceCache().size());
+    assertEquals(0, factory.getSentenceCache().getMissCount());
+  }
+
+  @Test
+  public void testAnalysisCache() throws IOException {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "sentenceDetectorMode", "rules", "tokenizerMode", "rules", "analysisCacheSize", "10")
+        .build();
+    NLPAnalysisCache<String,OpenNLPTokenizer.CachedSpans> cache =
+        ((OpenNLPTokenizerFactory) analyzer.getTokenizerFactory()).getAnalysisCache();
+    assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_punc, SENTENCES_startOffsets, SENTENCES_endOffsets);
+    assertEquals(1, cache.size());
+    long hits = cache.getHitCount();
+    assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_punc, SENTENCES_startOffsets, SENTENCES_endOffsets);
+    assertTrue(cache.getHitCount() > hits);
+    assertEquals(1, cache.size());
+  }
+
   @Test
   public void testLongText() throws IOException {
     Map<String,String> args = new HashMap<String,String>() {{ put("sentenceModel", "en-test-sent.bin"); }};
@@ -114,6 +200,41 @@ public class TestOpenNLPTokenizerFactory extends BaseTokenStreamTestCase {
     ts.close();
   }
   
+  @Test
+  public void testAdmissionControl() throws IOException {
+    OpenNLPOpsFactory.clearAdmissionController();
+    try {
+      CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+          .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin",
+              "maxConcurrentAnalyses", "1", "maxBufferedChars", "16")
+          .build();
+      NLPAdmissionController controller = OpenNLPOpsFactory.getAdmissionController();
+      assertEquals(1, controller.getMaxAnalyses());
+      assertEquals(16, controller.getMaxChars());
+      long admitted = controller.getAdmittedCount();
+      // text is longer than the whole budget: charged the whole budget, must not block
+      assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_punc, SENTENCES_startOffsets, SENTENCES_endOffsets);
+      assertAnalyzesTo(analyzer, SENTENCES, SENTENCES_punc, SENTENCES_startOffsets, SENTENCES_endOffsets);
+      assertTrue(controller.getAdmittedCount() > admitted);
+      assertEquals(0, controller.getActiveAnalyses());
+      assertEquals(0, controller.getBufferedChars());
+      
+      // same limits share the controller, other limits are rejected
+      CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+          .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin",
+              "maxConcurrentAnalyses", "1", "maxBufferedChars", "16")
+          .build();
+      assertSame(controller, OpenNLPOpsFactory.getAdmissionController());
+      expectThrows(IllegalArgumentException.class, () -> CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+          .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin",
+              "maxConcurrentAnalyses", "2", "maxBufferedChars", "16")
+          .build());
+      assertSame(controller, OpenNLPOpsFactory.getAdmissionController());
+    } finally {
+      OpenNLPOpsFactory.clearAdmissionController();
+    }
+  }
+  
   // test analyzer caching the tokenizer
   @Test
   public void testClose() throws IOException {
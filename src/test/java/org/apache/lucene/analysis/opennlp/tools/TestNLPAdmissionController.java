@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+public class TestNLPAdmissionController extends LuceneTestCase {
+
+  public void testIncrementalCharge() {
+    NLPAdmissionController controller = new NLPAdmissionController(0, 100);
+    int charged = controller.acquireChars(0, 30);
+    charged = controller.acquireChars(charged, 30);
+    assertEquals(60, charged);
+    assertEquals(60, controller.getBufferedChars());
+    // capped at the whole budget
+    charged = controller.acquireChars(charged, 500);
+    assertEquals(100, charged);
+    charged = controller.acquireChars(charged, 10);
+    assertEquals(100, charged);
+    controller.releaseChars(charged);
+    assertEquals(0, controller.getBufferedChars());
+  }
+
+  public void testNoLimit() {
+    NLPAdmissionController controller = new NLPAdmissionController(0, 0);
+    assertEquals(0, controller.acquireChars(0, 1000));
+    assertEquals(-1, controller.getBufferedChars());
+  }
+
+  public void testPartlyReadDocumentsDoNotDeadlock() throws Exception {
+    NLPAdmissionController controller = new NLPAdmissionController(0, 100);
+    CountDownLatch bothCharged = new CountDownLatch(2);
+    int[] results = new int[2];
+    Thread[] threads = new Thread[2];
+    for (int i = 0; i < threads.length; i++) {
+      final int thread = i;
+      threads[i] = new Thread(() -> {
+        int charged = controller.acquireChars(0, 50);
+        bothCharged.countDown();
+        try {
+          bothCharged.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        // both need more than what is left: one gives back its characters and waits
+        charged = controller.acquireChars(charged, 30);
+        results[thread] = charged;
+        controller.releaseChars(charged);
+      });
+      threads[i].start();
+    }
+    for (Thread thread: threads) {
+      thread.join(10000);
+      assertFalse(thread.isAlive());
+    }
+    assertEquals(80, results[0]);
+    assertEquals(80, results[1]);
+    assertEquals(0, controller.getBufferedChars());
+  }
+
+  public void testInterruptedWaitKeepsCharge() throws Exception {
+    NLPAdmissionController controller = new NLPAdmissionController(0, 100);
+    int held = controller.acquireChars(0, 40);
+    int other = controller.acquireChars(0, 60);
+    boolean[] interrupted = new boolean[1];
+    Thread thread = new Thread(() -> {
+      try {
+        // gives back its 40 characters and waits for 70
+        controller.acquireChars(held, 30);
+      } catch (ThreadInterruptedException e) {
+        interrupted[0] = true;
+      }
+    });
+    thread.start();
+    while (controller.getQueueLength() == 0 && thread.isAlive()) {
+      Thread.sleep(1);
+    }
+    thread.interrupt();
+    thread.join(10000);
+    assertFalse(thread.isAlive());
+    assertTrue(interrupted[0]);
+    // the interrupted caller still holds its 40 characters
+    assertEquals(100, controller.getBufferedChars());
+    controller.releaseChars(held);
+    controller.releaseChars(other);
+    assertEquals(0, controller.getBufferedChars());
+  }
+}
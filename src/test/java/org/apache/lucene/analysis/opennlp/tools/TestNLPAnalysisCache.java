@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestNLPAnalysisCache extends LuceneTestCase {
+
+  public void testBounded() {
+    for (int maxSize: new int[] {1, 3, 10, 16, 100}) {
+      NLPAnalysisCache<String,Integer> cache = new NLPAnalysisCache<>(maxSize);
+      for (int i = 0; i < 10 * maxSize; i++) {
+        cache.put("key" + i, i);
+        assertEquals(i, cache.get("key" + i).intValue());
+      }
+      assertTrue(cache.size() <= maxSize);
+      assertTrue(cache.size() > 0);
+      cache.clear();
+      assertEquals(0, cache.size());
+    }
+  }
+
+  public void testLeastRecentlyUsedOut() {
+    // a single segment below 2 entries: exact LRU
+    NLPAnalysisCache<String,Integer> cache = new NLPAnalysisCache<>(1);
+    cache.put("a", 1);
+    cache.put("b", 2);
+    assertNull(cache.get("a"));
+    assertEquals(2, cache.get("b").intValue());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(0.5, cache.getHitRate(), 0);
+  }
+
+  public void testConcurrentAccess() throws Exception {
+    NLPAnalysisCache<Integer,Integer> cache = new NLPAnalysisCache<>(64);
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 10000; i++) {
+          int key = i % 128;
+          Integer value = cache.get(key);
+          if (value == null) {
+            cache.put(key, key);
+          } else {
+            assertEquals(key, value.intValue());
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread: threads) {
+      thread.join();
+    }
+    assertTrue(cache.size() <= 64);
+    assertEquals(4 * 10000, cache.getHitCount() + cache.getMissCount());
+  }
+}
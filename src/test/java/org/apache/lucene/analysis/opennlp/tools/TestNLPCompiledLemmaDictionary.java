@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import opennlp.tools.lemmatizer.SimpleLemmatizer;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.core.SolrResourceLoader;
+
+public class TestNLPCompiledLemmaDictionary extends LuceneTestCase {
+
+  private static final String DICTIONARY = "ran\tVBD\trun\n"
+      + "running\tVBG\trun\n"
+      + "running\tNN\trunning\n"
+      + "mice\tNNS\tmouse\n"
+      + "Mice\tNNP\tMice\n"
+      + "better\tJJR\tgood\n"
+      + "better\tJJR\twell\n"
+      + "\u00e9t\u00e9s\tNNS\t\u00e9t\u00e9\n";
+
+  private static final String[][] LOOKUPS = {
+      {"ran", "VBD"}, {"Ran", "VBD"}, {"running", "NN"}, {"running", "VBG"}, {"running", "VBZ"},
+      {"mice", "NNS"}, {"Mice", "NNP"}, {"mice", "NNP"}, {"Unknown", "NN"}, {"NASA", "NN"},
+      {"better", "JJR"}, {"", "NN"}, {"zzz", "NNS"}
+  };
+
+  private static byte[] compile(String text) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    NLPCompiledLemmaDictionary.compile(new StringReader(text), out);
+    return out.toByteArray();
+  }
+
+  public void testSameLemmasAsSimpleLemmatizer() throws IOException {
+    byte[] compiled = compile(DICTIONARY);
+    NLPCompiledLemmaDictionary dictionary = NLPCompiledLemmaDictionary.read(new ByteArrayInputStream(compiled));
+    assertEquals(7, dictionary.size());
+    NLPLemmatizerOp compiledOp = new NLPLemmatizerOp(dictionary);
+    SimpleLemmatizer reference = new SimpleLemmatizer(new ByteArrayInputStream(DICTIONARY.getBytes(StandardCharsets.UTF_8)));
+    for (String[] lookup: LOOKUPS) {
+      assertEquals(lookup[0] + "/" + lookup[1], reference.lemmatize(lookup[0], lookup[1]),
+          compiledOp.lemmatize(lookup[0], lookup[1]));
+    }
+  }
+
+  public void testMemoryMapped() throws IOException {
+    Path file = createTempDir().resolve("lemmas.bin");
+    Files.write(file, compile(DICTIONARY));
+    NLPCompiledLemmaDictionary dictionary = NLPCompiledLemmaDictionary.open(file);
+    assertEquals("mouse", dictionary.get("mice", "NNS"));
+    assertEquals("well", dictionary.get("better", "JJR"));
+    assertEquals("\u00e9t\u00e9", dictionary.get("\u00e9t\u00e9s", "NNS"));
+    assertNull(dictionary.get("mice", "NN"));
+    assertNull(dictionary.get("mic", "NNS"));
+  }
+
+  public void testDetection() throws IOException {
+    assertTrue(NLPCompiledLemmaDictionary.isCompiled(new BufferedInputStream(new ByteArrayInputStream(compile(DICTIONARY)))));
+    assertFalse(NLPCompiledLemmaDictionary.isCompiled(
+        new BufferedInputStream(new ByteArrayInputStream(DICTIONARY.getBytes(StandardCharsets.UTF_8)))));
+    assertFalse(NLPCompiledLemmaDictionary.isCompiled(new BufferedInputStream(new ByteArrayInputStream(new byte[3]))));
+  }
+
+  public void testEmpty() throws IOException {
+    NLPCompiledLemmaDictionary dictionary = NLPCompiledLemmaDictionary.read(new ByteArrayInputStream(compile("")));
+    assertEquals(0, dictionary.size());
+    assertNull(dictionary.get("any", "NN"));
+  }
+
+  public void testSharedLemmatizers() throws IOException {
+    Path instanceDir = createTempDir();
+    Path conf = Files.createDirectories(instanceDir.resolve("conf"));
+    Files.write(conf.resolve("lemmas.bin"), compile(DICTIONARY));
+    Files.write(conf.resolve("lemmas.txt"), DICTIONARY.getBytes(StandardCharsets.UTF_8));
+    try (SolrResourceLoader loader = new SolrResourceLoader(instanceDir)) {
+      OpenNLPOpsFactory.loadLemmatizerDictionary("lemmas.bin", conf.resolve("lemmas.bin"), loader);
+      OpenNLPOpsFactory.loadLemmatizerDictionary("lemmas.txt", loader);
+      assertEquals("mouse", OpenNLPOpsFactory.getLemmatizer("lemmas.bin").lemmatize("mice", "NNS"));
+      // the text dictionary is parsed once, not for every op
+      NLPLemmatizerOp textOp = OpenNLPOpsFactory.getLemmatizer("lemmas.txt");
+      assertSame(textOp, OpenNLPOpsFactory.getLemmatizer("lemmas.txt"));
+      assertEquals("mouse", textOp.lemmatize("mice", "NNS"));
+    } finally {
+      OpenNLPOpsFactory.clearModels();
+    }
+  }
+}
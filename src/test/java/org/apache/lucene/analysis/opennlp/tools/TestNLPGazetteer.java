@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import opennlp.tools.util.Span;
+
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestNLPGazetteer extends LuceneTestCase {
+
+  private static final String GAZETTEER = "# comment\n"
+      + "New York\tcity\n"
+      + "New York City\tcity\n"
+      + "York\tcity\n"
+      + "Acme Corp\tbrand\n"
+      + "Corp Finance\tdepartment\n"
+      + "\n"
+      + "Acme\n";
+
+  private static NLPGazetteer gazetteer(boolean ignoreCase) throws IOException {
+    return new NLPGazetteer(new ByteArrayInputStream(GAZETTEER.getBytes(StandardCharsets.UTF_8)), ignoreCase);
+  }
+
+  public void testLeftmostLongest() throws IOException {
+    NLPGazetteer gazetteer = gazetteer(false);
+    assertEquals(6, gazetteer.size());
+    String[] words = {"I", "left", "New", "York", "City", "for", "York", "and", "Acme", "Corp", "Finance", "."};
+    Span[] spans = gazetteer.find(words);
+    assertEquals(3, spans.length);
+    assertEquals(new Span(2, 5, "city"), spans[0]);
+    assertEquals(new Span(6, 7, "city"), spans[1]);
+    assertEquals(new Span(8, 10, "brand"), spans[2]);
+  }
+
+  public void testFailureLinks() throws IOException {
+    // "New New York" must recover from the mismatch on the second "New"
+    Span[] spans = gazetteer(false).find(new String[] {"New", "New", "York"});
+    assertEquals(1, spans.length);
+    assertEquals(new Span(1, 3, "city"), spans[0]);
+  }
+
+  public void testDefaultType() throws IOException {
+    Span[] spans = gazetteer(false).find(new String[] {"Acme", "rocks"});
+    assertEquals(1, spans.length);
+    assertEquals(new Span(0, 1, "default"), spans[0]);
+  }
+
+  public void testIgnoreCase() throws IOException {
+    String[] words = {"new", "york", "city"};
+    assertEquals(0, gazetteer(false).find(words).length);
+    Span[] spans = gazetteer(true).find(words);
+    assertEquals(1, spans.length);
+    assertEquals(new Span(0, 3, "city"), spans[0]);
+  }
+
+  public void testNoMatch() throws IOException {
+    assertEquals(0, gazetteer(false).find(new String[] {"nothing", "here"}).length);
+    assertEquals(0, gazetteer(false).find(new String[0]).length);
+  }
+}
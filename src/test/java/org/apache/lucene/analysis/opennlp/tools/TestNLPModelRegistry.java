@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.lucene.analysis.opennlp.tools;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestNLPModelRegistry extends LuceneTestCase {
+
+  private static final class Models implements Closeable {
+    final AtomicInteger closed;
+
+    Models(AtomicInteger closed) {
+      this.closed = closed;
+    }
+
+    @Override
+    public void close() {
+      closed.incrementAndGet();
+    }
+  }
+
+  public void testResolve() {
+    NLPModelRegistry<Models> registry = new NLPModelRegistry<>(new HashSet<>(Arrays.asList("en", "de")), "en",
+        language -> new Models(new AtomicInteger()), 0);
+    assertEquals("de", registry.resolve("de"));
+    assertEquals("en", registry.resolve("fr"));
+    assertEquals("en", registry.resolve(null));
+
+    NLPModelRegistry<Models> strict = new NLPModelRegistry<>(new HashSet<>(Arrays.asList("en", "de")), null,
+        language -> new Models(new AtomicInteger()), 0);
+    expectThrows(IllegalArgumentException.class, () -> strict.resolve("fr"));
+  }
+
+  public void testIdleModelsDroppedInBackground() throws Exception {
+    AtomicInteger closed = new AtomicInteger();
+    NLPModelRegistry<Models> registry = new NLPModelRegistry<>(new HashSet<>(Arrays.asList("en", "de")), "en",
+        language -> new Models(closed), 10);
+    try {
+      registry.get("en");
+      registry.get("de");
+      assertEquals(Arrays.asList("de", "en"), registry.getLoadedLanguages());
+      // no further get(): only the background sweep can drop them
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (!registry.getLoadedLanguages().isEmpty() && System.nanoTime() < deadline) {
+        Thread.sleep(50);
+      }
+      assertEquals(Collections.emptyList(), registry.getLoadedLanguages());
+      assertEquals(2, registry.getEvictionCount());
+      assertEquals(2, closed.get());
+
+      registry.get("en");
+      assertEquals(3, registry.getLoadCount());
+    } finally {
+      registry.close();
+      NLPModelRegistry.shutdownSweeper();
+    }
+  }
+
+  public void testClose() throws Exception {
+    AtomicInteger closed = new AtomicInteger();
+    NLPModelRegistry<Models> registry = new NLPModelRegistry<>(new HashSet<>(Arrays.asList("en", "de")), "en",
+        language -> new Models(closed), 0);
+    try {
+      registry.get("en");
+      registry.get("de");
+      assertEquals(2, registry.getLoadedModels().size());
+      registry.close();
+      assertEquals(2, closed.get());
+      assertEquals(Collections.emptyList(), registry.getLoadedModels());
+      expectThrows(AlreadyClosedException.class, () -> registry.get("en"));
+    } finally {
+      NLPModelRegistry.shutdownSweeper();
+    }
+  }
+
+  public void testUnclosedRegistryReleased() throws Exception {
+    AtomicInteger closed = new AtomicInteger();
+    try {
+      loadAndDrop(closed);
+      // the sweeper releases the models once the registry is collected
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (closed.get() < 2 && System.nanoTime() < deadline) {
+        System.gc();
+        Thread.sleep(50);
+      }
+      assertEquals(2, closed.get());
+    } finally {
+      NLPModelRegistry.shutdownSweeper();
+    }
+  }
+
+  // in its own frame, so that no reference to the registry stays on the test's stack
+  private static void loadAndDrop(AtomicInteger closed) throws Exception {
+    // no idle timeout: only the collection of the registry can drop the models
+    NLPModelRegistry<Models> registry = new NLPModelRegistry<>(new HashSet<>(Arrays.asList("en", "de")), "en",
+        language -> new Models(closed), 0);
+    registry.get("en");
+    registry.get("de");
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.solr.handler.opennlp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.ContentStream;
+import org.apache.solr.common.util.ContentStreamBase;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.junit.BeforeClass;
+
+public class TestOpenNLPAnalysisHandler extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig.xml", "schema.xml", getFile("solr/opennlp-test").getAbsolutePath());
+  }
+
+  public void testAnalyze() throws Exception {
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(getClass()))
+        .withTokenizer("opennlp", "sentenceDetectorMode", "rules", "tokenizerMode", "rules")
+        .build();
+    NamedList<Object> annotation = OpenNLPAnalysisHandler.analyze(analyzer, new StringReader("Two words. More."));
+    assertEquals(Arrays.asList("Two", "words", ".", "More", "."), annotation.get("term"));
+    assertEquals(Arrays.asList(0, 4, 9, 11, 15), annotation.get("start"));
+    assertEquals(Arrays.asList(3, 9, 10, 15, 16), annotation.get("end"));
+    assertEquals(Arrays.asList(1, 1, 1, 1, 1), annotation.get("posInc"));
+    assertNull(annotation.get("pos"));
+  }
+  
+  public void testHandleRequestBody() throws Exception {
+    List<NamedList<Object>> annotations = annotations("/opennlp/analyze", params("text", "Two words. More.", "text", "One."));
+    assertEquals(2, annotations.size());
+    assertEquals(Arrays.asList("Two", "words", ".", "More", "."), annotations.get(0).get("term"));
+    assertEquals(Arrays.asList("One", "."), annotations.get(1).get("term"));
+    
+    // the fieldType parameter overrides the configured one
+    annotations = annotations("/opennlp/analyzeAny", params("fieldType", "text_rules", "text", "One."));
+    assertEquals(Arrays.asList("One", "."), annotations.get(0).get("term"));
+  }
+  
+  public void testResponse() throws Exception {
+    assertQ(new LocalSolrQueryRequest(h.getCore(), params("qt", "/opennlp/analyze", "text", "Two words.", "text", "One.")),
+        "//str[@name='fieldType'][.='text_rules']",
+        "count(//arr[@name='annotations']/lst)=2",
+        "//arr[@name='annotations']/lst[1]/arr[@name='term']/str[2][.='words']",
+        "//arr[@name='annotations']/lst[1]/arr[@name='end']/int[2][.='9']",
+        "//arr[@name='annotations']/lst[2]/arr[@name='term']/str[1][.='One']");
+  }
+  
+  public void testContentStreams() throws Exception {
+    List<ContentStream> streams = Arrays.asList(
+        new ContentStreamBase.StringStream("First stream."), new ContentStreamBase.StringStream("Second stream."));
+    List<NamedList<Object>> annotations = annotations("/opennlp/analyze", params("text", "Parameter."), streams);
+    assertEquals(3, annotations.size());
+    // text parameters come before the content streams
+    assertEquals(Arrays.asList("Parameter", "."), annotations.get(0).get("term"));
+    assertEquals(Arrays.asList("First", "stream", "."), annotations.get(1).get("term"));
+    assertEquals(Arrays.asList("Second", "stream", "."), annotations.get(2).get("term"));
+    
+    annotations = annotations("/opennlp/analyze", params(), streams.subList(1, 2));
+    assertEquals(1, annotations.size());
+    assertEquals(Arrays.asList("Second", "stream", "."), annotations.get(0).get("term"));
+  }
+  
+  public void testOrderUnderParallelism() throws Exception {
+    // more texts than the handler's threads and window, of varying lengths, so they finish out of order
+    int count = atLeast(100);
+    String[] pairs = new String[2 * count];
+    for (int i = 0; i < count; i++) {
+      StringBuilder text = new StringBuilder("word" + i);
+      for (int j = random().nextInt(200); j > 0; j--) {
+        text.append(" filler");
+      }
+      pairs[2 * i] = "text";
+      pairs[2 * i + 1] = text.append('.').toString();
+    }
+    List<NamedList<Object>> annotations = annotations("/opennlp/analyze", params(pairs));
+    assertEquals(count, annotations.size());
+    for (int i = 0; i < count; i++) {
+      assertEquals("word" + i, ((List<?>) annotations.get(i).get("term")).get(0));
+    }
+  }
+  
+  public void testErrors() throws Exception {
+    SolrException e = expectThrows(SolrException.class, () -> annotations("/opennlp/analyzeAny", params("text", "One.")));
+    assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    e = expectThrows(SolrException.class,
+        () -> annotations("/opennlp/analyze", params("fieldType", "text_unknown", "text", "One.")));
+    assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    e = expectThrows(SolrException.class, () -> annotations("/opennlp/analyze", params()));
+    assertEquals(SolrException.ErrorCode.BAD_REQUEST.code, e.code());
+    
+    // a text that cannot be read fails the response where it would have been written
+    ContentStream unreadable = new ContentStreamBase() {
+      @Override
+      public InputStream getStream() throws IOException {
+        throw new IOException("unreadable");
+      }
+    };
+    SolrQueryRequest req = new LocalSolrQueryRequest(h.getCore(), params("text", "One."));
+    try {
+      ((LocalSolrQueryRequest) req).setContentStreams(Arrays.asList(unreadable, new ContentStreamBase.StringStream("Two.")));
+      Iterator<NamedList<Object>> annotations = handle("/opennlp/analyze", req);
+      assertEquals(Arrays.asList("One", "."), annotations.next().get("term"));
+      e = expectThrows(SolrException.class, annotations::next);
+      assertEquals(SolrException.ErrorCode.SERVER_ERROR.code, e.code());
+      assertTrue(e.getCause() instanceof IOException);
+      assertFalse(annotations.hasNext());
+    } finally {
+      req.close();
+    }
+  }
+  
+  private static List<NamedList<Object>> annotations(String handler, SolrParams params) throws Exception {
+    return annotations(handler, params, null);
+  }
+  
+  private static List<NamedList<Object>> annotations(String handler, SolrParams params,
+                                                     List<ContentStream> streams) throws Exception {
+    LocalSolrQueryRequest req = new LocalSolrQueryRequest(h.getCore(), params);
+    try {
+      req.setContentStreams(streams);
+      List<NamedList<Object>> annotations = new ArrayList<>();
+      handle(handler, req).forEachRemaining(annotations::add);
+      return annotations;
+    } finally {
+      req.close();
+    }
+  }
+  
+  @SuppressWarnings("unchecked")
+  private static Iterator<NamedList<Object>> handle(String handler, SolrQueryRequest req) throws Exception {
+    SolrQueryResponse rsp = new SolrQueryResponse();
+    ((OpenNLPAnalysisHandler) h.getCore().getRequestHandler(handler)).handleRequestBody(req, rsp);
+    return (Iterator<NamedList<Object>>) rsp.getValues().get("annotations");
+  }
+}
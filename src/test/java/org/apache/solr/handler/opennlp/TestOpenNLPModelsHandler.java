@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.solr.handler.opennlp;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.opennlp.OpenNLPTokenizerFactory;
+import org.apache.lucene.analysis.opennlp.tools.NLPModelStats;
+import org.apache.lucene.analysis.opennlp.tools.OpenNLPOpsFactory;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.common.util.NamedList;
+
+public class TestOpenNLPModelsHandler extends LuceneTestCase {
+
+  public void testModelStats() throws Exception {
+    // test models live with the analysis tests
+    CustomAnalyzer analyzer = CustomAnalyzer.builder(new ClasspathResourceLoader(OpenNLPTokenizerFactory.class))
+        .withTokenizer("opennlp", "tokenizerModel", "en-test-tokenizer.bin")
+        .addTokenFilter("opennlp", "posTaggerModel", "en-test-pos-maxent.bin")
+        .build();
+    try {
+      String tokenizerKey = NLPModelStats.key(NLPModelStats.TOKENIZER, "en-test-tokenizer.bin");
+      String posKey = NLPModelStats.key(NLPModelStats.POS, "en-test-pos-maxent.bin");
+      Set<String> keys = OpenNLPModelsHandler.getModelKeys(analyzer);
+      assertEquals(Arrays.asList(tokenizerKey, posKey), Arrays.asList(keys.toArray()));
+      
+      analyzer.tokenStream("", "Some text.").close();
+      NLPModelStats pos = null;
+      for (NLPModelStats stats: OpenNLPOpsFactory.getModelStats()) {
+        if (stats.getKey().equals(posKey)) {
+          pos = stats;
+        }
+      }
+      assertNotNull(pos);
+      assertTrue(pos.getOpCount() >= 1);
+      // a maxent model holds at least its parameters
+      assertTrue(pos.getRamBytesUsed() > 10000);
+      
+      NamedList<Object> entry = OpenNLPModelsHandler.describe(pos, Collections.singleton("core/text"));
+      assertEquals("pos", entry.get("kind"));
+      assertEquals(1, entry.get("refCount"));
+      assertEquals(pos.getRamBytesUsed(), entry.get("ramBytes"));
+    } finally {
+      analyzer.close();
+      OpenNLPOpsFactory.clearModels();
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.solr.update.processor.opennlp;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.analysis.opennlp.OpenNLPTokenizerFactory;
+import org.apache.lucene.analysis.opennlp.tools.OpenNLPOpsFactory;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.common.SolrInputDocument;
+
+public class TestOpenNLPAsyncNERProcessorFactory extends LuceneTestCase {
+
+  public void testFindEntities() throws Exception {
+    // test models live with the analysis tests
+    ClasspathResourceLoader loader = new ClasspathResourceLoader(OpenNLPTokenizerFactory.class);
+    try {
+      try (InputStream in = loader.openResource("en-test-sent.bin")) {
+        OpenNLPOpsFactory.getSentenceModel("en-test-sent.bin", in);
+      }
+      try (InputStream in = loader.openResource("en-test-tokenizer.bin")) {
+        OpenNLPOpsFactory.getTokenizerModel("en-test-tokenizer.bin", in);
+      }
+      try (InputStream in = loader.openResource("en-test-ner-person.bin")) {
+        OpenNLPOpsFactory.getNERTaggerModel("en-test-ner-person.bin", in);
+      }
+      Map<String,Set<String>> entities = OpenNLPAsyncNERProcessorFactory.findEntities(
+          "Royal Flash is a tale about Harry Flashman. Flashman is a cad.",
+          OpenNLPOpsFactory.getSentenceDetector("en-test-sent.bin"),
+          OpenNLPOpsFactory.getTokenizer("en-test-tokenizer.bin"),
+          Collections.singletonList(OpenNLPOpsFactory.getNERTagger("en-test-ner-person.bin")));
+      assertEquals(Collections.singleton("person"), entities.keySet());
+      // distinct entities
+      assertEquals(Collections.singleton("Flashman"), entities.get("person"));
+    } finally {
+      OpenNLPOpsFactory.clearModels();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public void testEntityUpdate() {
+    SolrInputDocument doc = OpenNLPAsyncNERProcessorFactory.entityUpdate("id", "doc1", "ner_",
+        Arrays.asList("location", "person"),
+        Collections.singletonMap("person", new LinkedHashSet<>(Arrays.asList("Harry Flashman", "Elspeth"))));
+    assertEquals("doc1", doc.getFieldValue("id"));
+    assertEquals(1L, doc.getFieldValue("_version_"));
+    Map<String,Object> person = (Map<String,Object>) doc.getFieldValue("ner_person");
+    assertEquals(Arrays.asList("Harry Flashman", "Elspeth"), person.get("set"));
+    // types without entities are removed
+    Map<String,Object> location = (Map<String,Object>) doc.getFieldValue("ner_location");
+    assertTrue(location.containsKey("set"));
+    assertNull(location.get("set"));
+  }
+}
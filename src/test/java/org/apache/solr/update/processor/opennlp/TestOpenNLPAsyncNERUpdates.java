@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.solr.update.processor.opennlp;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.apache.lucene.analysis.opennlp.tools.OpenNLPOpsFactory;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+
+/** Entity updates through a core, with the test models. */
+public class TestOpenNLPAsyncNERUpdates extends SolrTestCaseJ4 {
+  private static final String TEXT = "Royal Flash is a tale about Harry Flashman. Flashman is a cad.";
+  
+  /** Entity updates wait for a permit, so closing the gate keeps the worker on its current batch. */
+  static final Semaphore GATE = new Semaphore(1);
+  
+  public static class GateProcessorFactory extends UpdateRequestProcessorFactory {
+    @Override
+    public UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
+      if (!OpenNLPAsyncNERProcessorFactory.isEntityUpdate(req)) {
+        return next;
+      }
+      return new UpdateRequestProcessor(next) {
+        @Override
+        public void processAdd(AddUpdateCommand cmd) throws IOException {
+          try {
+            while (!GATE.tryAcquire(10, TimeUnit.MILLISECONDS)) {
+              if (req.getCore().isClosed()) {
+                throw new SolrException(ErrorCode.SERVICE_UNAVAILABLE, "core closed");
+              }
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SolrException(ErrorCode.SERVICE_UNAVAILABLE, e);
+          }
+          GATE.release();
+          super.processAdd(cmd);
+        }
+      };
+    }
+  }
+  
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-ner.xml", "schema.xml", getFile("solr/opennlp-test").getAbsolutePath());
+  }
+  
+  @AfterClass
+  public static void afterClass() {
+    deleteCore();
+    OpenNLPOpsFactory.clearModels();
+  }
+  
+  @Before
+  public void clearIndex() {
+    assertU(delQ("*:*"));
+    assertU(commit());
+  }
+  
+  @After
+  public void openGate() {
+    GATE.drainPermits();
+    GATE.release();
+  }
+  
+  public void testEntityFields() throws Exception {
+    OpenNLPAsyncNERProcessorFactory factory = factory();
+    long updated = stat(factory, "updated");
+    assertU(adoc("id", "1", "text", TEXT));
+    assertU(adoc("id", "2", "text", "Nothing to see here."));
+    waitFor(() -> stat(factory, "updated") == updated + 2);
+    assertU(commit());
+    assertQ(req("qt", "/select", "q", "id:1"),
+        "//doc/arr[@name='ner_person']/str[.='Flashman']",
+        "//doc/str[@name='text'][.='" + TEXT + "']");
+    assertQ(req("qt", "/select", "q", "id:2"),
+        "count(//doc/arr[@name='ner_person'])=0");
+  }
+  
+  public void testClientCannotSkipProcessor() throws Exception {
+    UpdateRequestProcessor next = new UpdateRequestProcessor(null) {};
+    try (SolrQueryRequest req = req("opennlp.entityUpdate", "true")) {
+      assertNotSame(next, factory().getInstance(req, new SolrQueryResponse(), next));
+    }
+  }
+  
+  public void testDeleteSupersedesQueuedUpdate() throws Exception {
+    OpenNLPAsyncNERProcessorFactory factory = factory();
+    long superseded = stat(factory, "superseded");
+    long updated = stat(factory, "updated");
+    GATE.acquire();
+    assertU(adoc("id", "1", "text", TEXT));
+    // the worker holds document 1 at the gate
+    waitFor(() -> factory.getBacklog() == 0);
+    assertU(adoc("id", "2", "text", TEXT));
+    assertU(delI("2"));
+    GATE.release();
+    waitFor(() -> stat(factory, "updated") + stat(factory, "superseded") == updated + superseded + 2);
+    assertEquals(superseded + 1, stat(factory, "superseded"));
+    assertU(commit());
+    // the deleted document is not recreated by its entity update
+    assertQ(req("qt", "/select", "q", "id:2"), "//result[@numFound='0']");
+    assertQ(req("qt", "/select", "q", "id:1"), "//doc/arr[@name='ner_person']/str[.='Flashman']");
+  }
+  
+  public void testQueueFullDrops() throws Exception {
+    OpenNLPAsyncNERProcessorFactory factory = factory();
+    long dropped = stat(factory, "dropped");
+    long updated = stat(factory, "updated");
+    GATE.acquire();
+    assertU(adoc("id", "1", "text", TEXT));
+    waitFor(() -> factory.getBacklog() == 0);
+    // the queue holds two documents
+    assertU(adoc("id", "2", "text", TEXT));
+    assertU(adoc("id", "3", "text", TEXT));
+    assertU(adoc("id", "4", "text", TEXT));
+    assertEquals(2, factory.getBacklog());
+    assertEquals(dropped + 1, stat(factory, "dropped"));
+    GATE.release();
+    waitFor(() -> stat(factory, "updated") == updated + 3);
+    assertU(commit());
+    // the dropped document is indexed, without entity fields
+    assertQ(req("qt", "/select", "q", "id:4"),
+        "//result[@numFound='1']",
+        "count(//doc/arr[@name='ner_person'])=0");
+    assertQ(req("qt", "/select", "q", "id:3"), "//doc/arr[@name='ner_person']/str[.='Flashman']");
+  }
+  
+  public void testCloseHookShutsDown() throws Exception {
+    OpenNLPAsyncNERProcessorFactory factory = factory();
+    GATE.acquire();
+    try {
+      assertU(adoc("id", "1", "text", TEXT));
+      waitFor(() -> factory.getBacklog() == 0);
+      assertU(adoc("id", "2", "text", TEXT));
+      long dropped = stat(factory, "dropped");
+      // closing the core stops the worker held at the gate and drops the queued document
+      deleteCore();
+      assertEquals(0, factory.getBacklog());
+      assertEquals(dropped + 1, stat(factory, "dropped"));
+      factory.enqueue(new OpenNLPAsyncNERProcessorFactory.Task("3", TEXT));
+      assertEquals(dropped + 2, stat(factory, "dropped"));
+    } finally {
+      GATE.release();
+      initCore("solrconfig-ner.xml", "schema.xml", getFile("solr/opennlp-test").getAbsolutePath());
+    }
+  }
+  
+  private static OpenNLPAsyncNERProcessorFactory factory() {
+    for (UpdateRequestProcessorFactory factory: h.getCore().getUpdateProcessingChain(null).getProcessors()) {
+      if (factory instanceof OpenNLPAsyncNERProcessorFactory) {
+        return (OpenNLPAsyncNERProcessorFactory) factory;
+      }
+    }
+    throw new AssertionError("no " + OpenNLPAsyncNERProcessorFactory.class.getSimpleName() + " in the default chain");
+  }
+  
+  private static long stat(OpenNLPAsyncNERProcessorFactory factory, String name) {
+    return ((Number) factory.getStatistics().get(name)).longValue();
+  }
+  
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    while (!condition.getAsBoolean()) {
+      assertTrue("timed out", System.nanoTime() < deadline);
+      Thread.sleep(10);
+    }
+  }
+}
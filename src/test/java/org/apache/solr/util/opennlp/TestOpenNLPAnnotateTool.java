@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.solr.util.opennlp;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.util.LuceneTestCase;
+import org.noggit.ObjectBuilder;
+
+public class TestOpenNLPAnnotateTool extends LuceneTestCase {
+
+  @SuppressWarnings("unchecked")
+  public void testAnnotate() throws Exception {
+    Path dir = createTempDir();
+    Path analyzerXml = dir.resolve("analyzer.xml");
+    Files.write(analyzerXml, ("<fieldType name=\"text_opennlp\" class=\"solr.TextField\">"
+        + "<analyzer><tokenizer class=\"solr.OpenNLPTokenizerFactory\" sentenceDetectorMode=\"rules\" tokenizerMode=\"rules\"/>"
+        + "</analyzer></fieldType>").getBytes(StandardCharsets.UTF_8));
+    Path input = dir.resolve("doc1.txt");
+    Files.write(input, "Two words. More.".getBytes(StandardCharsets.UTF_8));
+
+    Analyzer analyzer = OpenNLPAnnotateTool.buildAnalyzer(analyzerXml, dir);
+    OpenNLPAnnotateTool tool = new OpenNLPAnnotateTool(analyzer, "text_pre");
+    StringWriter out = new StringWriter();
+    tool.annotate(Arrays.asList(input, input), 2, out);
+    analyzer.close();
+
+    List<Object> docs = (List<Object>) ObjectBuilder.fromJSON(out.toString());
+    assertEquals(2, docs.size());
+    Map<String,Object> doc = (Map<String,Object>) docs.get(0);
+    assertEquals(input.toString(), doc.get("id"));
+    Map<String,Object> preAnalyzed = (Map<String,Object>) ObjectBuilder.fromJSON((String) doc.get("text_pre"));
+    assertEquals("1", preAnalyzed.get("v"));
+    assertEquals("Two words. More.", preAnalyzed.get("str"));
+    List<Object> tokens = (List<Object>) preAnalyzed.get("tokens");
+    assertEquals(5, tokens.size());
+    Map<String,Object> token = (Map<String,Object>) tokens.get(1);
+    assertEquals("words", token.get("t"));
+    assertEquals(4L, token.get("s"));
+    assertEquals(9L, token.get("e"));
+  }
+  
+  @SuppressWarnings("unchecked")
+  public void testSkipFailedFiles() throws Exception {
+    Path dir = createTempDir();
+    Path analyzerXml = dir.resolve("analyzer.xml");
+    Files.write(analyzerXml, ("<analyzer><tokenizer class=\"solr.OpenNLPTokenizerFactory\""
+        + " sentenceDetectorMode=\"rules\" tokenizerMode=\"rules\"/></analyzer>").getBytes(StandardCharsets.UTF_8));
+    Path good = dir.resolve("good.txt");
+    Files.write(good, "Readable text.".getBytes(StandardCharsets.UTF_8));
+    Path malformed = dir.resolve("malformed.txt");
+    Files.write(malformed, new byte[] { 'B', 'a', 'd', ' ', (byte) 0xC3, (byte) 0x28, '.' });
+    Path missing = dir.resolve("missing.txt");
+
+    Analyzer analyzer = OpenNLPAnnotateTool.buildAnalyzer(analyzerXml, dir);
+    OpenNLPAnnotateTool tool = new OpenNLPAnnotateTool(analyzer, "text_pre");
+    StringWriter out = new StringWriter();
+    tool.annotate(Arrays.asList(malformed, good, missing, good), 2, out);
+    analyzer.close();
+
+    // the failed files are left out, and the array is still complete
+    assertEquals(2, tool.getSkipped());
+    List<Object> docs = (List<Object>) ObjectBuilder.fromJSON(out.toString());
+    assertEquals(2, docs.size());
+    for (Object doc: docs) {
+      assertEquals(good.toString(), ((Map<String,Object>) doc).get("id"));
+    }
+  }
+}
@@ -0,0 +1,49 @@
+#!/bin/sh
+# Licensed to the Apache Software Foundation (ASF) under one or more
+# contributor license agreements.  See the NOTICE file distributed with
+# this work for additional information regarding copyright ownership.
+# The ASF licenses this file to You under the Apache License, Version 2.0
+# (the "License"); you may not use this file except in compliance with
+# the License. You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+# Trains the en-test-* models from src/tools/test-model-data with the OpenNLP 1.6 CLI.
+# Usage: train-test-models.sh [outputDir]
+# Needs the opennlp script on the PATH, or OPENNLP_HOME set.
+# The lemma dictionary maps each word of pos.txt to its lowercased form: enough to
+# exercise the lemmatizer in benchmarks, not a real dictionary.
+
+set -e
+
+DATA=$(cd "$(dirname "$0")/../test-model-data" && pwd)
+OUT=${1:-models}
+OPENNLP=${OPENNLP_HOME:+$OPENNLP_HOME/bin/}opennlp
+mkdir -p "$OUT"
+
+$OPENNLP SentenceDetectorTrainer -model "$OUT/en-test-sent.bin" -lang en -encoding UTF-8 \
+  -data "$DATA/sentences.txt"
+$OPENNLP TokenizerTrainer -model "$OUT/en-test-tokenizer.bin" -lang en -encoding UTF-8 \
+  -data "$DATA/tockenizer.txt"
+$OPENNLP POSTaggerTrainer -type maxent -model "$OUT/en-test-pos-maxent.bin" -lang en -encoding UTF-8 \
+  -data "$DATA/pos.txt"
+$OPENNLP ChunkerTrainerME -model "$OUT/en-test-chunker.bin" -lang en -encoding UTF-8 \
+  -data "$DATA/chunks.txt"
+$OPENNLP TokenNameFinderTrainer -model "$OUT/en-test-ner-person.bin" -lang en -encoding UTF-8 \
+  -params "$DATA/ner_TrainerParams.txt" -data "$DATA/ner_flashman.txt"
+
+tr ' ' '\n' < "$DATA/pos.txt" | grep '_' | awk '{
+  i = match($0, /_[^_]+$/)
+  if (i > 1) {
+    word = substr($0, 1, i - 1); tag = substr($0, i + 1)
+    print word "\t" tag "\t" tolower(word)
+  }
+}' | sort -u > "$OUT/en-test-lemmas.dict"
+
+echo "Models written to $OUT"